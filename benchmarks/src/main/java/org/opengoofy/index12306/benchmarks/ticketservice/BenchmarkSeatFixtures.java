@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.benchmarks.ticketservice;
+
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试座位数据构造工具
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+final class BenchmarkSeatFixtures {
+
+    private BenchmarkSeatFixtures() {
+    }
+
+    /**
+     * 按已售占比随机生成单节车厢可售座位号集合，座位号有序，与 t_seat 查询结果一致
+     *
+     * @param layout    车厢座位布局
+     * @param occupancy 已售座位占比
+     * @param random    随机数生成器，固定种子保证每轮测试数据一致
+     * @return 可售座位号集合
+     */
+    static List<String> randomAvailableSeats(SeatLayoutEnum layout, double occupancy, Random random) {
+        int seatCount = layout.getSeatCount();
+        List<String> availableSeats = new ArrayList<>(seatCount);
+        for (int i = 0; i < seatCount; i++) {
+            if (random.nextDouble() >= occupancy) {
+                availableSeats.add(layout.toSeatNumber(i));
+            }
+        }
+        return availableSeats;
+    }
+}
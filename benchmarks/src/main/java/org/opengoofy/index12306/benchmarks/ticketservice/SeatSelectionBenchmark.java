@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.benchmarks.ticketservice;
+
+import cn.hutool.core.lang.Pair;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select.CarriageSeatMap;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select.SeatSelection;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.CarriageVacantSeatCalculateUtil;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.SurplusNeedMatchSeatUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单节车厢选座算法基准测试
+ * <p>
+ * 对比旧版 int[][] 座位矩阵 + {@link SeatSelection} / {@link CarriageVacantSeatCalculateUtil} / {@link SurplusNeedMatchSeatUtil}
+ * 与 {@link CarriageSeatMap} 位图选座的耗时，座位矩阵的构建开销计入每次调用，与线上选座处理器的执行路径保持一致
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeatSelectionBenchmark {
+
+    /**
+     * 车厢座位布局
+     */
+    @Param({"BUSINESS_CLASS", "FIRST_CLASS", "SECOND_CLASS"})
+    private SeatLayoutEnum layout;
+
+    /**
+     * 车厢已售座位占比
+     */
+    @Param({"0.2", "0.5", "0.8", "0.95"})
+    private double occupancy;
+
+    /**
+     * 乘车人数量
+     */
+    @Param({"1", "2", "3", "5"})
+    private int passengerCount;
+
+    private List<String> availableSeats;
+
+    private int[] selectedSeats;
+
+    @Setup
+    public void setup() {
+        availableSeats = BenchmarkSeatFixtures.randomAvailableSeats(layout, occupancy, new Random(layout.ordinal() * 31L + passengerCount));
+        selectedSeats = new int[passengerCount];
+    }
+
+    @Benchmark
+    public int[][] legacyAdjacent() {
+        return SeatSelection.adjacent(passengerCount, buildLegacySeatMatrix());
+    }
+
+    @Benchmark
+    public int[][] legacyNonAdjacent() {
+        return SeatSelection.nonAdjacent(passengerCount, buildLegacySeatMatrix());
+    }
+
+    @Benchmark
+    public List<Pair<Integer, Integer>> legacySurplusNeedMatchSeat() {
+        int[][] actualSeats = buildLegacySeatMatrix();
+        PriorityQueue<List<Pair<Integer, Integer>>> vacantSeatQueue = CarriageVacantSeatCalculateUtil.buildCarriageVacantSeatList(actualSeats, layout.getRowCount(), layout.getColumnCount());
+        return SurplusNeedMatchSeatUtil.getSurplusNeedMatchSeat(passengerCount, vacantSeatQueue);
+    }
+
+    @Benchmark
+    public List<Pair<Integer, Integer>> legacyVacantSeatList() {
+        return CarriageVacantSeatCalculateUtil.buildCarriageVacantSeatList2(buildLegacySeatMatrix(), layout.getRowCount(), layout.getColumnCount());
+    }
+
+    @Benchmark
+    public boolean seatMapAdjacent() {
+        return CarriageSeatMap.build(layout, availableSeats).selectAdjacent(passengerCount, selectedSeats, 0);
+    }
+
+    @Benchmark
+    public int seatMapRemaining() {
+        return CarriageSeatMap.build(layout, availableSeats).selectRemaining(passengerCount, selectedSeats, 0);
+    }
+
+    /**
+     * 按旧版选座处理器的方式构建座位矩阵，0 可售，1 已售
+     */
+    private int[][] buildLegacySeatMatrix() {
+        int rowCount = layout.getRowCount();
+        int columnCount = layout.getColumnCount();
+        int[][] actualSeats = new int[rowCount][columnCount];
+        for (int i = 0; i < rowCount; i++) {
+            for (int j = 0; j < columnCount; j++) {
+                actualSeats[i][j] = availableSeats.contains(layout.toSeatNumber(i * columnCount + j)) ? 0 : 1;
+            }
+        }
+        return actualSeats;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.benchmarks.ticketservice;
+
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.SeatService;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.SelectSeatDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select.TrainSeatMapSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 整车选座基准测试
+ * <p>
+ * 使用内存版 {@link SeatService} 替代 t_seat 查询，只衡量 {@link TrainSeatMapSelector} 的选座计算开销：
+ * 选座模板、邻座、同车厢不邻座以及跨车厢降级分配
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainSeatMapSelectorBenchmark {
+
+    private static final String TRAIN_ID = "1";
+    private static final String DEPARTURE = "北京南";
+    private static final String ARRIVAL = "上海虹桥";
+
+    /**
+     * 车厢座位布局
+     */
+    @Param({"BUSINESS_CLASS", "FIRST_CLASS", "SECOND_CLASS"})
+    private SeatLayoutEnum layout;
+
+    /**
+     * 车厢已售座位占比
+     */
+    @Param({"0.2", "0.5", "0.8", "0.95"})
+    private double occupancy;
+
+    /**
+     * 乘车人数量
+     */
+    @Param({"1", "2", "3", "5"})
+    private int passengerCount;
+
+    /**
+     * 同一座位类型的车厢数量
+     */
+    @Param({"8"})
+    private int carriageCount;
+
+    private TrainSeatMapSelector selector;
+
+    private SelectSeatDTO selectSeat;
+
+    private SelectSeatDTO chooseSeat;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(layout.ordinal() * 31L + passengerCount);
+        Map<String, List<String>> carriageSeats = new LinkedHashMap<>();
+        for (int i = 1; i <= carriageCount; i++) {
+            carriageSeats.put(i < 10 ? "0" + i : String.valueOf(i), BenchmarkSeatFixtures.randomAvailableSeats(layout, occupancy, random));
+        }
+        selector = new TrainSeatMapSelector(inMemorySeatService(carriageSeats));
+        selectSeat = buildSelectSeat(null);
+        // 选座模板：每位乘车人选择同一排的第一列座位，超过列数时换到下一排
+        List<String> chooseSeats = new ArrayList<>(passengerCount);
+        for (int i = 0; i < passengerCount; i++) {
+            chooseSeats.add(String.valueOf(layout.getLetters().charAt(i % layout.getColumnCount())) + (i / layout.getColumnCount() + 1));
+        }
+        chooseSeat = buildSelectSeat(chooseSeats);
+    }
+
+    @Benchmark
+    public List<TrainPurchaseTicketRespDTO> select() {
+        return selector.select(selectSeat, layout, complexPassengerSize(), complexGroupSize());
+    }
+
+    @Benchmark
+    public List<TrainPurchaseTicketRespDTO> selectWithChooseSeats() {
+        return selector.select(chooseSeat, layout, complexPassengerSize(), complexGroupSize());
+    }
+
+    /**
+     * 与各座位类型选座处理器的分组参数保持一致
+     */
+    private int complexPassengerSize() {
+        return switch (layout) {
+            case BUSINESS_CLASS -> 3;
+            case FIRST_CLASS -> 5;
+            case SECOND_CLASS -> 6;
+        };
+    }
+
+    private int complexGroupSize() {
+        return layout == SeatLayoutEnum.SECOND_CLASS ? 3 : 2;
+    }
+
+    private SelectSeatDTO buildSelectSeat(List<String> chooseSeats) {
+        List<PurchaseTicketPassengerDetailDTO> passengers = new ArrayList<>(passengerCount);
+        for (int i = 0; i < passengerCount; i++) {
+            PurchaseTicketPassengerDetailDTO passenger = new PurchaseTicketPassengerDetailDTO();
+            passenger.setPassengerId(String.valueOf(i));
+            passenger.setSeatType(layout.getSeatType());
+            passengers.add(passenger);
+        }
+        PurchaseTicketReqDTO requestParam = new PurchaseTicketReqDTO();
+        requestParam.setTrainId(TRAIN_ID);
+        requestParam.setDeparture(DEPARTURE);
+        requestParam.setArrival(ARRIVAL);
+        requestParam.setPassengers(passengers);
+        requestParam.setChooseSeats(chooseSeats);
+        return SelectSeatDTO.builder()
+                .seatType(layout.getSeatType())
+                .passengerSeatDetails(passengers)
+                .requestParam(requestParam)
+                .build();
+    }
+
+    /**
+     * 内存版座位服务，仅实现选座用到的查询方法
+     */
+    private static SeatService inMemorySeatService(Map<String, List<String>> carriageSeats) {
+        List<String> usableCarriages = new ArrayList<>();
+        List<Integer> remainingTickets = new ArrayList<>();
+        carriageSeats.forEach((carriageNumber, seats) -> {
+            if (!seats.isEmpty()) {
+                usableCarriages.add(carriageNumber);
+                remainingTickets.add(seats.size());
+            }
+        });
+        return (SeatService) Proxy.newProxyInstance(
+                SeatService.class.getClassLoader(),
+                new Class<?>[]{SeatService.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "listUsableCarriageNumber" -> usableCarriages;
+                    case "listSeatRemainingTicket" -> remainingTickets;
+                    case "listAvailableSeat" -> carriageSeats.get((String) args[1]);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemorySeatService";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
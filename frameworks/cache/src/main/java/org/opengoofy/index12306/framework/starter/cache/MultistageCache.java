@@ -17,10 +17,19 @@
 
 package org.opengoofy.index12306.framework.starter.cache;
 
+import jakarta.validation.constraints.NotBlank;
+
 /**
  * 多级缓存
+ * <p>
+ * 本地缓存保存反序列化后的对象，分布式缓存作为二级缓存，写入以及删除时广播失效其它节点本地缓存
  *
  * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
  */
-public interface MultistageCache extends Cache {
+public interface MultistageCache extends DistributedCache {
+
+    /**
+     * 仅失效当前节点本地缓存，不影响分布式缓存
+     */
+    void invalidateLocal(@NotBlank String key);
 }
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.framework.starter.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import org.opengoofy.index12306.framework.starter.cache.config.RedisDistributedProperties;
+import org.opengoofy.index12306.framework.starter.cache.core.CacheGetFilter;
+import org.opengoofy.index12306.framework.starter.cache.core.CacheGetIfAbsent;
+import org.opengoofy.index12306.framework.starter.cache.core.CacheLoader;
+import org.opengoofy.index12306.framework.starter.cache.toolkit.CacheUtil;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 多级缓存代理，本地 Caffeine 作为一级缓存，{@link DistributedCache} 作为二级缓存
+ * <p>
+ * 仅匹配 Key 前缀策略的缓存进入本地缓存，其余缓存直接访问 Redis；
+ * 本地缓存保存反序列化后的对象并与调用方共享，调用方不应修改返回结果。
+ * 通过 {@link #getInstance()} 直接操作 Redis 的写入不会触发本地缓存失效，只能依赖本地缓存过期时间兜底
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public class MultistageCacheProxy implements MultistageCache, InitializingBean {
+
+    private final DistributedCache distributedCache;
+    private final RedisDistributedProperties redisProperties;
+    private final RedissonClient redissonClient;
+
+    /**
+     * 按 Key 前缀长度倒序排列，保证最长前缀优先匹配
+     */
+    private final List<LocalCache> localCaches;
+
+    /**
+     * 本地缓存失效版本号，读取二级缓存期间发生过失效时不回填本地缓存，避免将旧值写回
+     */
+    private final AtomicLong invalidateVersion = new AtomicLong();
+
+    private RTopic invalidateTopic;
+
+    public MultistageCacheProxy(DistributedCache distributedCache, RedisDistributedProperties redisProperties, RedissonClient redissonClient) {
+        this.distributedCache = distributedCache;
+        this.redisProperties = redisProperties;
+        this.redissonClient = redissonClient;
+        this.localCaches = redisProperties.getMultistage().getPolicies().stream()
+                .sorted(Comparator.comparingInt((RedisDistributedProperties.Policy each) -> each.getKeyPrefix().length()).reversed())
+                .map(LocalCache::new)
+                .toList();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (localCaches.isEmpty()) {
+            return;
+        }
+        invalidateTopic = redissonClient.getTopic(redisProperties.getMultistage().getInvalidateTopic());
+        invalidateTopic.addListener(String.class, (channel, key) -> invalidateLocal(key));
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> clazz) {
+        return readThrough(key, clazz, () -> distributedCache.get(key, clazz));
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout) {
+        return readThrough(key, clazz, () -> distributedCache.get(key, clazz, cacheLoader, timeout));
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout, TimeUnit timeUnit) {
+        return readThrough(key, clazz, () -> distributedCache.get(key, clazz, cacheLoader, timeout, timeUnit));
+    }
+
+    @Override
+    public <T> T safeGet(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout) {
+        return readThrough(key, clazz, () -> distributedCache.safeGet(key, clazz, cacheLoader, timeout));
+    }
+
+    @Override
+    public <T> T safeGet(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout, TimeUnit timeUnit) {
+        return readThrough(key, clazz, () -> distributedCache.safeGet(key, clazz, cacheLoader, timeout, timeUnit));
+    }
+
+    @Override
+    public <T> T safeGet(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout, RBloomFilter<String> bloomFilter) {
+        return readThrough(key, clazz, () -> distributedCache.safeGet(key, clazz, cacheLoader, timeout, bloomFilter));
+    }
+
+    @Override
+    public <T> T safeGet(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout, TimeUnit timeUnit, RBloomFilter<String> bloomFilter) {
+        return readThrough(key, clazz, () -> distributedCache.safeGet(key, clazz, cacheLoader, timeout, timeUnit, bloomFilter));
+    }
+
+    @Override
+    public <T> T safeGet(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout, RBloomFilter<String> bloomFilter, CacheGetFilter<String> cacheCheckFilter) {
+        return readThrough(key, clazz, () -> distributedCache.safeGet(key, clazz, cacheLoader, timeout, bloomFilter, cacheCheckFilter));
+    }
+
+    @Override
+    public <T> T safeGet(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout, TimeUnit timeUnit, RBloomFilter<String> bloomFilter, CacheGetFilter<String> cacheCheckFilter) {
+        return readThrough(key, clazz, () -> distributedCache.safeGet(key, clazz, cacheLoader, timeout, timeUnit, bloomFilter, cacheCheckFilter));
+    }
+
+    @Override
+    public <T> T safeGet(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout,
+                         RBloomFilter<String> bloomFilter, CacheGetFilter<String> cacheCheckFilter, CacheGetIfAbsent<String> cacheGetIfAbsent) {
+        return readThrough(key, clazz, () -> distributedCache.safeGet(key, clazz, cacheLoader, timeout, bloomFilter, cacheCheckFilter, cacheGetIfAbsent));
+    }
+
+    @Override
+    public <T> T safeGet(String key, Class<T> clazz, CacheLoader<T> cacheLoader, long timeout, TimeUnit timeUnit,
+                         RBloomFilter<String> bloomFilter, CacheGetFilter<String> cacheCheckFilter, CacheGetIfAbsent<String> cacheGetIfAbsent) {
+        return readThrough(key, clazz, () -> distributedCache.safeGet(key, clazz, cacheLoader, timeout, timeUnit, bloomFilter, cacheCheckFilter, cacheGetIfAbsent));
+    }
+
+    @Override
+    public void put(String key, Object value) {
+        distributedCache.put(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void put(String key, Object value, long timeout) {
+        distributedCache.put(key, value, timeout);
+        invalidate(key);
+    }
+
+    @Override
+    public void put(String key, Object value, long timeout, TimeUnit timeUnit) {
+        distributedCache.put(key, value, timeout, timeUnit);
+        invalidate(key);
+    }
+
+    @Override
+    public void safePut(String key, Object value, long timeout, RBloomFilter<String> bloomFilter) {
+        distributedCache.safePut(key, value, timeout, bloomFilter);
+        invalidate(key);
+    }
+
+    @Override
+    public void safePut(String key, Object value, long timeout, TimeUnit timeUnit, RBloomFilter<String> bloomFilter) {
+        distributedCache.safePut(key, value, timeout, timeUnit, bloomFilter);
+        invalidate(key);
+    }
+
+    @Override
+    public Boolean putIfAllAbsent(@NotNull Collection<String> keys) {
+        return distributedCache.putIfAllAbsent(keys);
+    }
+
+    @Override
+    public Boolean delete(String key) {
+        Boolean result = distributedCache.delete(key);
+        invalidate(key);
+        return result;
+    }
+
+    @Override
+    public Long delete(Collection<String> keys) {
+        Long result = distributedCache.delete(keys);
+        keys.forEach(this::invalidate);
+        return result;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        return distributedCache.hasKey(key);
+    }
+
+    @Override
+    public Long countExistingKeys(String... keys) {
+        return distributedCache.countExistingKeys(keys);
+    }
+
+    @Override
+    public Object getInstance() {
+        return distributedCache.getInstance();
+    }
+
+    @Override
+    public void invalidateLocal(@NotBlank String key) {
+        LocalCache localCache = matchLocalCache(key);
+        if (localCache != null) {
+            invalidateVersion.incrementAndGet();
+            localCache.cache.invalidate(key);
+        }
+    }
+
+    private <T> T readThrough(String key, Class<T> clazz, Supplier<T> remoteGetter) {
+        LocalCache localCache = matchLocalCache(key);
+        if (localCache == null) {
+            return remoteGetter.get();
+        }
+        Object cached = localCache.cache.getIfPresent(key);
+        if (clazz.isInstance(cached)) {
+            return clazz.cast(cached);
+        }
+        long version = invalidateVersion.get();
+        T result = remoteGetter.get();
+        if (!CacheUtil.isNullOrBlank(result) && version == invalidateVersion.get()) {
+            localCache.cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * 失效本节点本地缓存并广播其它节点，未匹配前缀策略的 Key 不在本地缓存中，无需广播
+     */
+    private void invalidate(String key) {
+        if (matchLocalCache(key) == null) {
+            return;
+        }
+        invalidateLocal(key);
+        invalidateTopic.publish(key);
+    }
+
+    private LocalCache matchLocalCache(String key) {
+        for (LocalCache each : localCaches) {
+            if (key.startsWith(each.keyPrefix)) {
+                return each;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Key 前缀对应的本地缓存
+     */
+    private static final class LocalCache {
+
+        private final String keyPrefix;
+        private final com.github.benmanes.caffeine.cache.Cache<String, Object> cache;
+
+        private LocalCache(RedisDistributedProperties.Policy policy) {
+            this.keyPrefix = policy.getKeyPrefix();
+            this.cache = Caffeine.newBuilder()
+                    .expireAfterWrite(policy.getExpireSeconds(), TimeUnit.SECONDS)
+                    .maximumSize(policy.getMaximumSize())
+                    .build();
+        }
+    }
+}
@@ -23,18 +23,22 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import org.opengoofy.index12306.framework.starter.bases.Singleton;
+import org.opengoofy.index12306.framework.starter.cache.codec.CacheValueCodecManager;
 import org.opengoofy.index12306.framework.starter.cache.config.RedisDistributedProperties;
 import org.opengoofy.index12306.framework.starter.cache.core.CacheGetFilter;
 import org.opengoofy.index12306.framework.starter.cache.core.CacheGetIfAbsent;
 import org.opengoofy.index12306.framework.starter.cache.core.CacheLoader;
 import org.opengoofy.index12306.framework.starter.cache.toolkit.CacheUtil;
-import org.opengoofy.index12306.framework.starter.cache.toolkit.FastJson2Util;
 import org.redisson.api.RBloomFilter;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.scripting.support.ResourceScriptSource;
 
 import java.util.Collection;
@@ -43,7 +47,7 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * 分布式缓存之操作 Redis 模版代理
- * 底层通过 {@link RedissonClient}、{@link StringRedisTemplate} 完成外观接口行为
+ * 底层通过 {@link RedissonClient}、{@link StringRedisTemplate} 完成外观接口行为，缓存值编解码由 {@link CacheValueCodecManager} 完成
  *
  * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
  */
@@ -53,17 +57,16 @@ public class StringRedisTemplateProxy implements DistributedCache {
     private final StringRedisTemplate stringRedisTemplate;
     private final RedisDistributedProperties redisProperties;
     private final RedissonClient redissonClient;
+    private final CacheValueCodecManager cacheValueCodecManager;
 
     private static final String LUA_PUT_IF_ALL_ABSENT_SCRIPT_PATH = "lua/putIfAllAbsent.lua";
     private static final String SAFE_GET_DISTRIBUTED_LOCK_KEY_PREFIX = "safe_get_distributed_lock_get:";
 
     @Override
     public <T> T get(String key, Class<T> clazz) {
-        String value = stringRedisTemplate.opsForValue().get(key);
-        if (String.class.isAssignableFrom(clazz)) {
-            return (T) value;
-        }
-        return JSON.parseObject(value, FastJson2Util.buildType(clazz));
+        // 读取原始字节，由编解码管理器根据首字节识别新旧格式
+        byte[] value = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(serializeKey(key)));
+        return cacheValueCodecManager.decode(value, clazz);
     }
 
     @Override
@@ -176,6 +179,12 @@ public class StringRedisTemplateProxy implements DistributedCache {
 
     @Override
     public void put(String key, Object value, long timeout, TimeUnit timeUnit) {
+        byte[] encoded = cacheValueCodecManager.encode(key, value);
+        if (encoded != null) {
+            stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                    .set(serializeKey(key), encoded, Expiration.from(timeout, timeUnit), RedisStringCommands.SetOption.upsert()));
+            return;
+        }
         String actual = value instanceof String ? (String) value : JSON.toJSONString(value);
         stringRedisTemplate.opsForValue().set(key, actual, timeout, timeUnit);
     }
@@ -208,6 +217,10 @@ public class StringRedisTemplateProxy implements DistributedCache {
         return stringRedisTemplate.countExistingKeys(Lists.newArrayList(keys));
     }
 
+    private byte[] serializeKey(String key) {
+        return ((RedisSerializer<String>) stringRedisTemplate.getKeySerializer()).serialize(key);
+    }
+
     private <T> T loadAndSet(String key, CacheLoader<T> cacheLoader, long timeout, TimeUnit timeUnit, boolean safeFlag, RBloomFilter<String> bloomFilter) {
         T result = cacheLoader.load();
         if (CacheUtil.isNullOrBlank(result)) {
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.framework.starter.cache.codec;
+
+/**
+ * 缓存值编解码器
+ * <p>
+ * 自定义编解码器注册为 Spring Bean 即可生效，通过 {@link #name()} 在 Key 前缀策略中引用；
+ * {@link #id()} 写入缓存值首字节，用于读取时识别编码格式，取值范围 1 ~ 7，已写入缓存后不允许变更
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public interface CacheValueCodec {
+
+    /**
+     * 编解码器标识，写入缓存值首字节
+     */
+    byte id();
+
+    /**
+     * 编解码器名称，Key 前缀策略中引用
+     */
+    String name();
+
+    /**
+     * 编码缓存值
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码缓存值
+     */
+    <T> T decode(byte[] bytes, Class<T> clazz);
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.framework.starter.cache.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.opengoofy.index12306.framework.starter.cache.config.RedisDistributedProperties;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存值编解码管理器
+ * <p>
+ * 按 Key 前缀策略选择编解码器，编码结果首字节为头部：低 3 位为编解码器标识，{@link #COMPRESSED_FLAG} 位代表负载经过 LZ4 压缩，
+ * 压缩负载前 4 字节为原始长度。未开启编解码器或未匹配策略的缓存仍按原文本格式写入；
+ * 读取时首字节大于 {@link #MAX_HEADER} 的值均视为原文本格式，新旧格式可以在灰度期间共存
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public class CacheValueCodecManager {
+
+    private static final byte CODEC_ID_MASK = 0x07;
+    private static final byte COMPRESSED_FLAG = 0x08;
+    private static final byte MAX_HEADER = 0x0F;
+
+    private final boolean enabled;
+    private final CacheValueCodec legacyCodec = new JsonCacheValueCodec();
+    private final CacheValueCodec[] codecsById = new CacheValueCodec[CODEC_ID_MASK + 1];
+
+    /**
+     * 按 Key 前缀长度倒序排列，保证最长前缀优先匹配
+     */
+    private final List<CodecPolicy> policies;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    public CacheValueCodecManager(List<CacheValueCodec> codecs, RedisDistributedProperties.Codec codecProperties) {
+        Map<String, CacheValueCodec> codecsByName = new HashMap<>();
+        for (CacheValueCodec each : codecs) {
+            if (each.id() <= 0 || each.id() > CODEC_ID_MASK) {
+                throw new IllegalArgumentException(String.format("缓存值编解码器 [%s] 标识必须在 1 ~ %d 之间", each.name(), CODEC_ID_MASK));
+            }
+            if (codecsById[each.id()] != null) {
+                throw new IllegalArgumentException(String.format("缓存值编解码器 [%s] 与 [%s] 标识重复", each.name(), codecsById[each.id()].name()));
+            }
+            codecsById[each.id()] = each;
+            codecsByName.put(each.name(), each);
+        }
+        this.enabled = Boolean.TRUE.equals(codecProperties.getEnabled());
+        this.policies = codecProperties.getPolicies().stream()
+                .sorted(Comparator.comparingInt((RedisDistributedProperties.CodecPolicy each) -> each.getKeyPrefix().length()).reversed())
+                .map(each -> {
+                    CacheValueCodec codec = codecsByName.get(each.getCodec());
+                    if (codec == null) {
+                        throw new IllegalArgumentException(String.format("缓存 Key 前缀 [%s] 引用的编解码器 [%s] 不存在", each.getKeyPrefix(), each.getCodec()));
+                    }
+                    return new CodecPolicy(each.getKeyPrefix(), codec, each.getCompressThreshold());
+                })
+                .toList();
+    }
+
+    /**
+     * 编码缓存值
+     *
+     * @param key   缓存 Key
+     * @param value 缓存值
+     * @return 带头部的编码结果，未开启编解码器或未匹配 Key 前缀策略时返回空，调用方按原文本格式写入
+     */
+    public byte[] encode(String key, Object value) {
+        CodecPolicy policy = enabled ? matchPolicy(key) : null;
+        if (policy == null) {
+            return null;
+        }
+        byte[] payload = policy.codec.encode(value);
+        byte header = policy.codec.id();
+        if (policy.compressThreshold > 0 && payload.length >= policy.compressThreshold) {
+            byte[] compressed = new byte[4 + compressor.maxCompressedLength(payload.length)];
+            ByteBuffer.wrap(compressed).putInt(payload.length);
+            int compressedLength = compressor.compress(payload, 0, payload.length, compressed, 4);
+            // 压缩收益不足时保留原始负载，避免读取时无意义的解压
+            if (4 + compressedLength < payload.length) {
+                header |= COMPRESSED_FLAG;
+                payload = new byte[4 + compressedLength];
+                System.arraycopy(compressed, 0, payload, 0, payload.length);
+            }
+        }
+        byte[] result = new byte[payload.length + 1];
+        result[0] = header;
+        System.arraycopy(payload, 0, result, 1, payload.length);
+        return result;
+    }
+
+    /**
+     * 解码缓存值，兼容原文本格式
+     *
+     * @param bytes 缓存原始字节
+     * @param clazz 目标类型
+     * @return 缓存值
+     */
+    public <T> T decode(byte[] bytes, Class<T> clazz) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0 || bytes[0] > MAX_HEADER || bytes[0] <= 0) {
+            return legacyCodec.decode(bytes, clazz);
+        }
+        CacheValueCodec codec = codecsById[bytes[0] & CODEC_ID_MASK];
+        if (codec == null) {
+            throw new IllegalStateException(String.format("缓存值编解码器 [%d] 不存在", bytes[0] & CODEC_ID_MASK));
+        }
+        byte[] payload;
+        if ((bytes[0] & COMPRESSED_FLAG) != 0) {
+            int originalLength = ByteBuffer.wrap(bytes, 1, 4).getInt();
+            payload = decompressor.decompress(bytes, 5, originalLength);
+        } else {
+            payload = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, payload, 0, payload.length);
+        }
+        return codec.decode(payload, clazz);
+    }
+
+    private CodecPolicy matchPolicy(String key) {
+        for (CodecPolicy each : policies) {
+            if (key.startsWith(each.keyPrefix)) {
+                return each;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Key 前缀对应的编解码策略
+     */
+    private static final class CodecPolicy {
+
+        private final String keyPrefix;
+        private final CacheValueCodec codec;
+        private final int compressThreshold;
+
+        private CodecPolicy(String keyPrefix, CacheValueCodec codec, int compressThreshold) {
+            this.keyPrefix = keyPrefix;
+            this.codec = codec;
+            this.compressThreshold = compressThreshold;
+        }
+    }
+}
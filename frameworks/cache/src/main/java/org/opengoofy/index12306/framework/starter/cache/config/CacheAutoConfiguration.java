@@ -18,15 +18,23 @@
 package org.opengoofy.index12306.framework.starter.cache.config;
 
 import lombok.AllArgsConstructor;
+import org.opengoofy.index12306.framework.starter.cache.MultistageCacheProxy;
 import org.opengoofy.index12306.framework.starter.cache.RedisKeySerializer;
 import org.opengoofy.index12306.framework.starter.cache.StringRedisTemplateProxy;
+import org.opengoofy.index12306.framework.starter.cache.codec.CacheValueCodec;
+import org.opengoofy.index12306.framework.starter.cache.codec.CacheValueCodecManager;
+import org.opengoofy.index12306.framework.starter.cache.codec.JsonCacheValueCodec;
+import org.opengoofy.index12306.framework.starter.cache.codec.JsonbCacheValueCodec;
 import org.redisson.api.RBloomFilter;
 import org.redisson.api.RedissonClient;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.util.List;
+
 /**
  * 缓存配置自动装配
  *
@@ -59,12 +67,47 @@ public class CacheAutoConfiguration {
         return cachePenetrationBloomFilter;
     }
 
+    /**
+     * FastJson2 文本缓存值编解码器
+     */
+    @Bean
+    public JsonCacheValueCodec jsonCacheValueCodec() {
+        return new JsonCacheValueCodec();
+    }
+
+    /**
+     * FastJson2 JSONB 二进制缓存值编解码器
+     */
+    @Bean
+    public JsonbCacheValueCodec jsonbCacheValueCodec() {
+        return new JsonbCacheValueCodec();
+    }
+
+    /**
+     * 缓存值编解码管理器，自定义 {@link CacheValueCodec} Bean 一并注册
+     */
+    @Bean
+    public CacheValueCodecManager cacheValueCodecManager(List<CacheValueCodec> cacheValueCodecs) {
+        return new CacheValueCodecManager(cacheValueCodecs, redisDistributedProperties.getCodec());
+    }
+
     @Bean
     // 静态代理模式: Redis 客户端代理类增强
     public StringRedisTemplateProxy stringRedisTemplateProxy(RedisKeySerializer redisKeySerializer,
                                                              StringRedisTemplate stringRedisTemplate,
-                                                             RedissonClient redissonClient) {
+                                                             RedissonClient redissonClient,
+                                                             CacheValueCodecManager cacheValueCodecManager) {
         stringRedisTemplate.setKeySerializer(redisKeySerializer);
-        return new StringRedisTemplateProxy(stringRedisTemplate, redisDistributedProperties, redissonClient);
+        return new StringRedisTemplateProxy(stringRedisTemplate, redisDistributedProperties, redissonClient, cacheValueCodecManager);
+    }
+
+    /**
+     * 多级缓存，开启后作为首选 {@link org.opengoofy.index12306.framework.starter.cache.DistributedCache} 注入
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = RedisDistributedProperties.PREFIX + ".multistage", name = "enabled", havingValue = "true")
+    public MultistageCacheProxy multistageCacheProxy(StringRedisTemplateProxy stringRedisTemplateProxy, RedissonClient redissonClient) {
+        return new MultistageCacheProxy(stringRedisTemplateProxy, redisDistributedProperties, redissonClient);
     }
 }
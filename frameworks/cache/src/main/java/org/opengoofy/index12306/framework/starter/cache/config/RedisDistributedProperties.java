@@ -20,6 +20,8 @@ package org.opengoofy.index12306.framework.starter.cache.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -52,4 +54,97 @@ public class RedisDistributedProperties {
      * 时间单位
      */
     private TimeUnit valueTimeUnit = TimeUnit.MILLISECONDS;
+
+    /**
+     * 多级缓存配置
+     */
+    private Multistage multistage = new Multistage();
+
+    /**
+     * 缓存值编解码配置
+     */
+    private Codec codec = new Codec();
+
+    /**
+     * 多级缓存配置，本地缓存仅对匹配 Key 前缀策略的缓存生效
+     */
+    @Data
+    public static class Multistage {
+
+        /**
+         * 是否开启多级缓存
+         */
+        private Boolean enabled = false;
+
+        /**
+         * 本地缓存失效广播 Topic
+         */
+        private String invalidateTopic = "index12306_multistage_cache_invalidate_topic";
+
+        /**
+         * 本地缓存 Key 前缀策略，多个前缀同时匹配时以最长前缀为准
+         */
+        private List<Policy> policies = new ArrayList<>();
+    }
+
+    /**
+     * 本地缓存 Key 前缀策略
+     */
+    @Data
+    public static class Policy {
+
+        /**
+         * 缓存 Key 前缀，不包含 {@link RedisDistributedProperties#prefix}
+         */
+        private String keyPrefix;
+
+        /**
+         * 本地缓存写入后过期时间，单位秒
+         */
+        private Long expireSeconds = 60L;
+
+        /**
+         * 本地缓存最大条目数
+         */
+        private Long maximumSize = 1000L;
+    }
+
+    /**
+     * 缓存值编解码配置，读取时始终兼容新旧格式，开启写入前需保证全部节点已升级
+     */
+    @Data
+    public static class Codec {
+
+        /**
+         * 是否按 Key 前缀策略编码写入
+         */
+        private Boolean enabled = false;
+
+        /**
+         * 缓存值编解码 Key 前缀策略，多个前缀同时匹配时以最长前缀为准
+         */
+        private List<CodecPolicy> policies = new ArrayList<>();
+    }
+
+    /**
+     * 缓存值编解码 Key 前缀策略
+     */
+    @Data
+    public static class CodecPolicy {
+
+        /**
+         * 缓存 Key 前缀，不包含 {@link RedisDistributedProperties#prefix}
+         */
+        private String keyPrefix;
+
+        /**
+         * 编解码器名称，内置 json、jsonb
+         */
+        private String codec = "json";
+
+        /**
+         * 编码结果超过该字节数时使用 LZ4 压缩，0 代表不压缩
+         */
+        private Integer compressThreshold = 0;
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.canal;
+
+import cn.hutool.core.collection.CollUtil;
+import org.opengoofy.index12306.biz.ticketservice.mq.event.CanalBinlogEvent;
+import org.opengoofy.index12306.framework.starter.designpattern.strategy.AbstractExecuteStrategy;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 抽象列车本地缓存刷新组件，按 Binlog 变更行中的列车 ID 失效对应本地缓存
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public abstract class AbstractTrainLocalCacheRefreshHandler implements AbstractExecuteStrategy<CanalBinlogEvent, Void> {
+
+    /**
+     * 失效列车本地缓存
+     *
+     * @param trainId 列车 ID
+     */
+    protected abstract void invalidate(String trainId);
+
+    @Override
+    public void execute(CanalBinlogEvent message) {
+        if (CollUtil.isEmpty(message.getData())) {
+            return;
+        }
+        Set<String> trainIds = message.getData().stream()
+                .map(each -> each.get("train_id"))
+                .filter(Objects::nonNull)
+                .map(Object::toString)
+                .collect(Collectors.toSet());
+        trainIds.forEach(this::invalidate);
+    }
+}
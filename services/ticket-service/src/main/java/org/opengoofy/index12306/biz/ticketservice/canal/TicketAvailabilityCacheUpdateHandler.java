@@ -23,6 +23,9 @@ import lombok.RequiredArgsConstructor;
 import org.opengoofy.index12306.biz.ticketservice.common.enums.CanalExecuteStrategyMarkEnum;
 import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatStatusEnum;
 import org.opengoofy.index12306.biz.ticketservice.mq.event.CanalBinlogEvent;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.opengoofy.index12306.framework.starter.designpattern.strategy.AbstractExecuteStrategy;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -46,6 +49,8 @@ import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKe
 public class TicketAvailabilityCacheUpdateHandler implements AbstractExecuteStrategy<CanalBinlogEvent, Void> {
 
     private final DistributedCache distributedCache;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
 
     @Override
     public void execute(CanalBinlogEvent message) {
@@ -64,6 +69,10 @@ public class TicketAvailabilityCacheUpdateHandler implements AbstractExecuteStra
         if (CollUtil.isEmpty(messageDataList) || CollUtil.isEmpty(actualOldDataList)) {
             return;
         }
+        if (trainSegmentRemainingTicketCache.isEnabled() || trainPackedRemainingTicketCache.isEnabled()) {
+            updateSegmentRemainingTicket(messageDataList, actualOldDataList);
+            return;
+        }
         Map<String, Map<Integer, Integer>> cacheChangeKeyMap = new HashMap<>();
         for (int i = 0; i < messageDataList.size(); i++) {
             Map<String, Object> each = messageDataList.get(i);
@@ -71,7 +80,7 @@ public class TicketAvailabilityCacheUpdateHandler implements AbstractExecuteStra
             String seatStatus = actualOldData.get("seat_status").toString();
             int increment = Objects.equals(seatStatus, "0") ? -1 : 1;
             String trainId = each.get("train_id").toString();
-            String hashCacheKey = TRAIN_STATION_REMAINING_TICKET + trainId + "_" + each.get("start_station") + "_" + each.get("end_station");
+            String hashCacheKey = TRAIN_STATION_REMAINING_TICKET + TrainCacheKeyUtil.buildKeySuffix(trainId, each.get("start_station"), each.get("end_station"));
             Map<Integer, Integer> seatTypeMap = cacheChangeKeyMap.get(hashCacheKey);
             if (CollUtil.isEmpty(seatTypeMap)) {
                 seatTypeMap = new HashMap<>();
@@ -85,6 +94,26 @@ public class TicketAvailabilityCacheUpdateHandler implements AbstractExecuteStra
         cacheChangeKeyMap.forEach((cacheKey, cacheVal) -> cacheVal.forEach((seatType, num) -> instance.opsForHash().increment(cacheKey, String.valueOf(seatType), num)));
     }
 
+    /**
+     * 基本区间余票模式下只处理相邻站点的座位记录，非相邻站点对的余票由基本区间计算得出；
+     * 紧凑矩阵模式下按站点对汇总后每个站点对一次 Lua 脚本变更
+     */
+    private void updateSegmentRemainingTicket(List<Map<String, Object>> messageDataList, List<Map<String, Object>> actualOldDataList) {
+        Map<List<String>, Map<Integer, Integer>> segmentChangeMap = new HashMap<>();
+        for (int i = 0; i < messageDataList.size(); i++) {
+            Map<String, Object> each = messageDataList.get(i);
+            int increment = Objects.equals(actualOldDataList.get(i).get("seat_status").toString(), "0") ? -1 : 1;
+            List<String> segmentKey = List.of(each.get("train_id").toString(), each.get("start_station").toString(), each.get("end_station").toString());
+            Integer seatType = Integer.parseInt(each.get("seat_type").toString());
+            segmentChangeMap.computeIfAbsent(segmentKey, key -> new HashMap<>()).merge(seatType, increment, Integer::sum);
+        }
+        if (trainPackedRemainingTicketCache.isEnabled()) {
+            segmentChangeMap.forEach((segmentKey, seatTypeDelta) -> trainPackedRemainingTicketCache.adjustRoute(segmentKey.get(0), segmentKey.get(1), segmentKey.get(2), seatTypeDelta));
+            return;
+        }
+        segmentChangeMap.forEach((segmentKey, seatTypeDelta) -> trainSegmentRemainingTicketCache.adjustSegment(segmentKey.get(0), segmentKey.get(1), segmentKey.get(2), seatTypeDelta));
+    }
+
     @Override
     public String mark() {
         return CanalExecuteStrategyMarkEnum.T_SEAT.getActualTable();
@@ -19,6 +19,9 @@ package org.opengoofy.index12306.biz.ticketservice.common.constant;
 
 /**
  * Redis Key 定义常量类
+ * <p>
+ * 列车维度的 Key 使用 {列车ID} 作为 Redis Cluster Hash Tag，通过 {@link org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil} 拼接，
+ * 保证同一列车的令牌桶、余票等 Key 落在同一槽位
  *
  * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
  */
@@ -65,17 +68,17 @@ public final class RedisKeyConstant {
     public static final String REGION_STATION = "index12306-ticket-service:region-station:";
 
     /**
-     * 站点余票查询，Key Prefix + 列车ID_起始站点_终点
+     * 站点余票查询，Key Prefix + {列车ID}_起始站点_终点
      */
     public static final String TRAIN_STATION_REMAINING_TICKET = "index12306-ticket-service:train_station_remaining_ticket:";
 
     /**
-     * 列车车厢查询，Key Prefix + 列车ID
+     * 列车车厢查询，Key Prefix + {列车ID}
      */
     public static final String TRAIN_CARRIAGE = "index12306-ticket-service:train_carriage:";
 
     /**
-     * 车厢余票查询，Key Prefix + 列车ID_起始站点_终点
+     * 车厢余票查询，Key Prefix + {列车ID}_起始站点_终点
      */
     public static final String TRAIN_STATION_CARRIAGE_REMAINING_TICKET = "index12306-ticket-service:train_station_carriage_remaining_ticket:";
 
@@ -115,10 +118,30 @@ public final class RedisKeyConstant {
     public static final String QUERY_ALL_REGION_LIST = "index12306-ticket-service:query_all_region_list";
 
     /**
-     * 列车购买令牌桶，Key Prefix + 列车ID
+     * 列车购买令牌桶，Key Prefix + {列车ID}
      */
     public static final String TICKET_AVAILABILITY_TOKEN_BUCKET = "index12306-ticket-service:ticket_availability_token_bucket:";
 
+    /**
+     * 列车基本区间购买令牌桶，Key Prefix + {列车ID}
+     */
+    public static final String TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET = "index12306-ticket-service:ticket_availability_segment_token_bucket:";
+
+    /**
+     * 热门列车购买令牌子桶，Key Prefix + {列车ID_子桶下标}，子桶之间不共享 Hash Tag，分散到不同槽位
+     */
+    public static final String TICKET_AVAILABILITY_TOKEN_SUB_BUCKET = "index12306-ticket-service:ticket_availability_token_sub_bucket:";
+
+    /**
+     * 热门列车购买令牌子桶数量，Key Prefix + {列车ID}，存在时代表列车令牌已拆分到子桶
+     */
+    public static final String TICKET_AVAILABILITY_TOKEN_SUB_BUCKET_COUNT = "index12306-ticket-service:ticket_availability_token_sub_bucket_count:";
+
+    /**
+     * 列车余票对账上一次观测到的偏差，Key Prefix + {列车ID}，Field 为 缓存类型:出发站_到达站_座位类型，值为 实际值 - 缓存值
+     */
+    public static final String TICKET_AVAILABILITY_RECONCILE_DRIFT = "index12306-ticket-service:ticket_availability_reconcile_drift:";
+
     /**
      * 获取全部地点集合分布式锁 Key
      */
@@ -143,4 +166,84 @@ public final class RedisKeyConstant {
      * 列车购买令牌桶加载数据 Key
      */
     public static final String LOCK_TICKET_AVAILABILITY_TOKEN_BUCKET = "index12306-ticket-service:lock:ticket_availability_token_bucket:%s";
+
+    /**
+     * 列车座位区间占用位图，Key Prefix + {列车ID}_座位类型
+     */
+    public static final String TRAIN_SEAT_BITMAP = "index12306-ticket-service:train_seat_bitmap:{%s}_%s";
+
+    /**
+     * 列车座位区间占用位图加载数据 Key
+     */
+    public static final String LOCK_TRAIN_SEAT_BITMAP = "index12306-ticket-service:lock:train_seat_bitmap:%s_%s";
+
+    /**
+     * 列车相邻站点基本区间余票，Key Prefix + {列车ID}
+     */
+    public static final String TRAIN_SEGMENT_REMAINING_TICKET = "index12306-ticket-service:train_segment_remaining_ticket:";
+
+    /**
+     * 加载列车基本区间余票分布式锁 Key
+     */
+    public static final String LOCK_TRAIN_SEGMENT_REMAINING_TICKET = "index12306-ticket-service:lock:train_segment_remaining_ticket:%s";
+
+    /**
+     * 列车站点对余票紧凑矩阵，Key Prefix + {列车ID}
+     */
+    public static final String TRAIN_PACKED_REMAINING_TICKET = "index12306-ticket-service:train_packed_remaining_ticket:";
+
+    /**
+     * 加载列车站点对余票紧凑矩阵分布式锁 Key
+     */
+    public static final String LOCK_TRAIN_PACKED_REMAINING_TICKET = "index12306-ticket-service:lock:train_packed_remaining_ticket:%s";
+
+    /**
+     * 异步购票排队结果，Key Prefix + 排队号
+     */
+    public static final String PURCHASE_TICKET_WAITING_RESULT = "index12306-ticket-service:purchase_ticket_waiting_result:";
+
+    /**
+     * 异步购票排队记录处理权，Key Prefix + 排队号
+     */
+    public static final String PURCHASE_TICKET_WAITING_CLAIM = "index12306-ticket-service:purchase_ticket_waiting_claim:";
+
+    /**
+     * 列车异步购票入队序号，Key Prefix + 列车 ID
+     */
+    public static final String PURCHASE_TICKET_WAITING_ENQUEUE_SEQUENCE = "index12306-ticket-service:purchase_ticket_waiting_enqueue_sequence:";
+
+    /**
+     * 列车异步购票已处理序号，Key Prefix + 列车 ID
+     */
+    public static final String PURCHASE_TICKET_WAITING_PROCESSED_SEQUENCE = "index12306-ticket-service:purchase_ticket_waiting_processed_sequence:";
+
+    /**
+     * 异步购票完成通知频道
+     */
+    public static final String PURCHASE_TICKET_WAITING_NOTIFY_TOPIC = "index12306-ticket-service:purchase_ticket_waiting_notify";
+
+    /**
+     * 列车路线索引失效通知频道
+     */
+    public static final String TRAIN_ROUTE_INDEX_INVALIDATE_TOPIC = "index12306-ticket-service:train_route_index_invalidate";
+
+    /**
+     * 列车票价矩阵失效通知频道
+     */
+    public static final String TRAIN_FARE_MATRIX_INVALIDATE_TOPIC = "index12306-ticket-service:train_fare_matrix_invalidate";
+
+    /**
+     * 列车开售前缓存预热完成标识，Key Prefix + {列车ID}，值为预热完成时间戳
+     */
+    public static final String TRAIN_PRE_SALE_WARMUP_READY = "index12306-ticket-service:train_pre_sale_warmup_ready:";
+
+    /**
+     * 列车站点座位类型售罄通知频道
+     */
+    public static final String TICKET_SOLD_OUT_TOPIC = "index12306-ticket-service:ticket_sold_out";
+
+    /**
+     * 用户乘车人变更通知频道，由用户服务发布，需与用户服务保持一致
+     */
+    public static final String USER_PASSENGER_INVALIDATE_TOPIC = "index12306-user-service:user-passenger-invalidate";
 }
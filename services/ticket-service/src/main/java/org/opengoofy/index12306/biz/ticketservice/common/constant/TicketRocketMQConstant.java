@@ -63,4 +63,19 @@ public final class TicketRocketMQConstant {
      * 支付结果回调购票消费者组 Key
      */
     public static final String PAY_RESULT_CALLBACK_TICKET_CG_KEY = "index12306_pay-service_pay-result-callback-ticket_cg${unique-name:}";
+
+    /**
+     * 异步购票排队 Topic Key
+     */
+    public static final String PURCHASE_TICKET_WAITING_TOPIC_KEY = "index12306_ticket-service_purchase-ticket-waiting_topic${unique-name:}";
+
+    /**
+     * 异步购票排队 Tag Key
+     */
+    public static final String PURCHASE_TICKET_WAITING_TAG_KEY = "index12306_ticket-service_purchase-ticket-waiting_tag${unique-name:}";
+
+    /**
+     * 异步购票排队消费者组 Key
+     */
+    public static final String PURCHASE_TICKET_WAITING_CG_KEY = "index12306_ticket-service_purchase-ticket-waiting_cg${unique-name:}";
 }
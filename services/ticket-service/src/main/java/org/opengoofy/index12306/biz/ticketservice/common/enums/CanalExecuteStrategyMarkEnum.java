@@ -41,7 +41,17 @@ public enum CanalExecuteStrategyMarkEnum {
     /**
      * 订单表
      */
-    T_ORDER("t_order", "^t_order_([0-9]+|1[0-6])");
+    T_ORDER("t_order", "^t_order_([0-9]+|1[0-6])"),
+
+    /**
+     * 列车站点表
+     */
+    T_TRAIN_STATION("t_train_station", null),
+
+    /**
+     * 列车站点价格表
+     */
+    T_TRAIN_STATION_PRICE("t_train_station_price", null);
 
     @Getter
     private final String actualTable;
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.common.enums;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 车厢座位布局枚举
+ * <p>
+ * 座位号由两位排号 + 座位字母组成，如 01A、18F
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@RequiredArgsConstructor
+public enum SeatLayoutEnum {
+
+    /**
+     * 复兴号-商务座
+     */
+    BUSINESS_CLASS(0, 2, "ACF"),
+
+    /**
+     * 复兴号-一等座
+     */
+    FIRST_CLASS(1, 7, "ACDF"),
+
+    /**
+     * 复兴号-二等座
+     */
+    SECOND_CLASS(2, 18, "ABCDF");
+
+    /**
+     * 座位类型
+     */
+    @Getter
+    private final Integer seatType;
+
+    /**
+     * 车厢排数
+     */
+    @Getter
+    private final int rowCount;
+
+    /**
+     * 每排座位字母
+     */
+    @Getter
+    private final String letters;
+
+    /**
+     * 每排座位数
+     */
+    public int getColumnCount() {
+        return letters.length();
+    }
+
+    /**
+     * 单节车厢座位数
+     */
+    public int getSeatCount() {
+        return rowCount * letters.length();
+    }
+
+    /**
+     * 根据车厢内座位下标获取座位号
+     *
+     * @param seatIndex 车厢内座位下标，从 0 开始按排优先
+     * @return 座位号，如 01A
+     */
+    public String toSeatNumber(int seatIndex) {
+        int row = seatIndex / getColumnCount() + 1;
+        return (row < 10 ? "0" + row : String.valueOf(row)) + letters.charAt(seatIndex % getColumnCount());
+    }
+
+    /**
+     * 根据座位号获取车厢内座位下标
+     *
+     * @param seatNumber 座位号，如 01A
+     * @return 车厢内座位下标，座位号不合法返回 -1
+     */
+    public int toSeatIndex(String seatNumber) {
+        if (seatNumber == null || seatNumber.length() < 2) {
+            return -1;
+        }
+        int column = letters.indexOf(seatNumber.charAt(seatNumber.length() - 1));
+        int row;
+        try {
+            row = Integer.parseInt(seatNumber.substring(0, seatNumber.length() - 1)) - 1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+        if (column < 0 || row < 0 || row >= rowCount) {
+            return -1;
+        }
+        return row * getColumnCount() + column;
+    }
+
+    /**
+     * 根据座位类型查找座位布局
+     */
+    public static SeatLayoutEnum findBySeatType(Integer seatType) {
+        return Arrays.stream(SeatLayoutEnum.values())
+                .filter(each -> Objects.equals(each.getSeatType(), seatType))
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -36,7 +36,7 @@ import java.util.concurrent.TimeUnit;
 public class Hippo4jThreadPoolConfiguration {
 
     /**
-     * 分配一个用户购买不同类型车票的线程池
+     * 分配一个用户购买不同类型车票的线程池，有界队列满时拒绝，由 {@code SeatDistributionExecutor} 记录拒绝指标后调用线程执行
      * <a href="https://nageoffer.com/12306/question">线程池参数如何设置</>
      */
     @Bean
@@ -46,11 +46,92 @@ public class Hippo4jThreadPoolConfiguration {
         return ThreadPoolBuilder.builder()
                 .threadPoolId(threadPoolId)
                 .threadFactory(threadPoolId)
-                .workQueue(BlockingQueueTypeEnum.SYNCHRONOUS_QUEUE)
-                .corePoolSize(24)
+                .workQueue(BlockingQueueTypeEnum.LINKED_BLOCKING_QUEUE)
+                .capacity(1024)
+                .corePoolSize(36)
                 .maximumPoolSize(36)
                 .allowCoreThreadTimeOut(true)
                 .keepAliveTime(60, TimeUnit.MINUTES)
+                .rejected(new ThreadPoolExecutor.AbortPolicy())
+                .dynamicPool()
+                .build();
+    }
+
+    /**
+     * 座位内存库存异步回写数据库线程池，单线程保证同一座位状态变更顺序
+     */
+    @Bean
+    @DynamicThreadPool
+    public ThreadPoolExecutor seatInventoryPersistThreadPoolExecutor() {
+        String threadPoolId = "seat-inventory-persist-thread-pool-executor";
+        return ThreadPoolBuilder.builder()
+                .threadPoolId(threadPoolId)
+                .threadFactory(threadPoolId)
+                .workQueue(BlockingQueueTypeEnum.LINKED_BLOCKING_QUEUE)
+                .capacity(10000)
+                .corePoolSize(1)
+                .maximumPoolSize(1)
+                .keepAliveTime(60, TimeUnit.MINUTES)
+                .rejected(new ThreadPoolExecutor.CallerRunsPolicy())
+                .dynamicPool()
+                .build();
+    }
+
+    /**
+     * 购票邮箱消费线程池，同一邮箱同一时刻只会占用其中一个线程
+     */
+    @Bean
+    @DynamicThreadPool
+    public ThreadPoolExecutor purchaseTicketMailboxThreadPoolExecutor() {
+        String threadPoolId = "purchase-ticket-mailbox-thread-pool-executor";
+        return ThreadPoolBuilder.builder()
+                .threadPoolId(threadPoolId)
+                .threadFactory(threadPoolId)
+                .workQueue(BlockingQueueTypeEnum.LINKED_BLOCKING_QUEUE)
+                .capacity(4096)
+                .corePoolSize(32)
+                .maximumPoolSize(32)
+                .keepAliveTime(60, TimeUnit.MINUTES)
+                .rejected(new ThreadPoolExecutor.CallerRunsPolicy())
+                .dynamicPool()
+                .build();
+    }
+
+    /**
+     * 本地模式异步排队购票线程池，队列满时拒绝入队并提示用户稍后重试
+     */
+    @Bean
+    @DynamicThreadPool
+    public ThreadPoolExecutor purchaseTicketWaitingThreadPoolExecutor() {
+        String threadPoolId = "purchase-ticket-waiting-thread-pool-executor";
+        return ThreadPoolBuilder.builder()
+                .threadPoolId(threadPoolId)
+                .threadFactory(threadPoolId)
+                .workQueue(BlockingQueueTypeEnum.LINKED_BLOCKING_QUEUE)
+                .capacity(10000)
+                .corePoolSize(16)
+                .maximumPoolSize(16)
+                .keepAliveTime(60, TimeUnit.MINUTES)
+                .rejected(new ThreadPoolExecutor.AbortPolicy())
+                .dynamicPool()
+                .build();
+    }
+
+    /**
+     * 列车开售前缓存预热线程池，多个列车并行写入缓存，队列满时由任务线程执行
+     */
+    @Bean
+    @DynamicThreadPool
+    public ThreadPoolExecutor preSaleWarmupThreadPoolExecutor() {
+        String threadPoolId = "pre-sale-warmup-thread-pool-executor";
+        return ThreadPoolBuilder.builder()
+                .threadPoolId(threadPoolId)
+                .threadFactory(threadPoolId)
+                .workQueue(BlockingQueueTypeEnum.LINKED_BLOCKING_QUEUE)
+                .capacity(1024)
+                .corePoolSize(8)
+                .maximumPoolSize(8)
+                .keepAliveTime(60, TimeUnit.MINUTES)
                 .rejected(new ThreadPoolExecutor.CallerRunsPolicy())
                 .dynamicPool()
                 .build();
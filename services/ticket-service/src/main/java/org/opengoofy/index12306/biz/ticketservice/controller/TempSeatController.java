@@ -17,7 +17,6 @@
 
 package org.opengoofy.index12306.biz.ticketservice.controller;
 
-import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.RequiredArgsConstructor;
 import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatStatusEnum;
@@ -25,6 +24,11 @@ import org.opengoofy.index12306.biz.ticketservice.dao.entity.SeatDO;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainStationRelationDO;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainStationRelationMapper;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenSubBucketManager;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketSoldOutRegistry;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.opengoofy.index12306.framework.starter.common.toolkit.ThreadUtil;
 import org.opengoofy.index12306.framework.starter.convention.result.Result;
@@ -36,6 +40,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
 
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET;
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_AVAILABILITY_TOKEN_BUCKET;
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_REMAINING_TICKET;
 
@@ -52,6 +57,10 @@ public class TempSeatController {
     private final SeatMapper seatMapper;
     private final TrainStationRelationMapper trainStationRelationMapper;
     private final DistributedCache distributedCache;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
+    private final TicketAvailabilityTokenSubBucketManager ticketAvailabilityTokenSubBucketManager;
+    private final TicketSoldOutRegistry ticketSoldOutRegistry;
 
     /**
      * 座位重置
@@ -66,10 +75,15 @@ public class TempSeatController {
         List<TrainStationRelationDO> trainStationRelationDOList = trainStationRelationMapper.selectList(Wrappers.lambdaQuery(TrainStationRelationDO.class)
                 .eq(TrainStationRelationDO::getTrainId, trainId));
         for (TrainStationRelationDO each : trainStationRelationDOList) {
-            String keySuffix = StrUtil.join("_", each.getTrainId(), each.getDeparture(), each.getArrival());
+            String keySuffix = TrainCacheKeyUtil.buildKeySuffix(each.getTrainId(), each.getDeparture(), each.getArrival());
             stringRedisTemplate.delete(TRAIN_STATION_REMAINING_TICKET + keySuffix);
         }
-        stringRedisTemplate.delete(TICKET_AVAILABILITY_TOKEN_BUCKET + trainId);
+        stringRedisTemplate.delete(TICKET_AVAILABILITY_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId));
+        stringRedisTemplate.delete(TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId));
+        ticketAvailabilityTokenSubBucketManager.delete(trainId);
+        ticketSoldOutRegistry.clear(trainId);
+        trainSegmentRemainingTicketCache.invalidate(trainId);
+        trainPackedRemainingTicketCache.invalidate(trainId);
         return Results.success();
     }
 }
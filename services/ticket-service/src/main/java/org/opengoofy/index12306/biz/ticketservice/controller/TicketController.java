@@ -25,6 +25,7 @@ import org.opengoofy.index12306.biz.ticketservice.dto.req.TicketPageQueryReqDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.RefundTicketRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPageQueryRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseWaitingRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.remote.dto.PayInfoRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.TicketService;
 import org.opengoofy.index12306.framework.starter.convention.result.Result;
@@ -39,6 +40,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 车票控制层
  *
@@ -58,6 +61,14 @@ public class TicketController {
         return Results.success(ticketService.pageListTicketQueryV1(requestParam));
     }
 
+    /**
+     * 根据条件查询车票v3，本地物化视图
+     */
+    @GetMapping("/api/ticket-service/ticket/query/v3")
+    public Result<TicketPageQueryRespDTO> pageListTicketQueryV3(TicketPageQueryReqDTO requestParam) {
+        return Results.success(ticketService.pageListTicketQueryV3(requestParam));
+    }
+
     /**
      * 购买车票
      */
@@ -94,6 +105,33 @@ public class TicketController {
         return Results.success(ticketService.purchaseTicketsV2(requestParam));
     }
 
+    /**
+     * 购买车票v3，异步排队购票，立即返回排队号以及前方排队人数
+     */
+    @ILog
+    @Idempotent(
+            uniqueKeyPrefix = "index12306-ticket:lock_purchase-tickets:",
+            key = "T(org.opengoofy.index12306.framework.starter.bases.ApplicationContextHolder).getBean('environment').getProperty('unique-name', '')"
+                    + "+'_'+"
+                    + "T(org.opengoofy.index12306.frameworks.starter.user.core.UserContext).getUsername()",
+            message = "正在执行下单流程，请稍后...",
+            scene = IdempotentSceneEnum.RESTAPI,
+            type = IdempotentTypeEnum.SPEL
+    )
+    @PostMapping("/api/ticket-service/ticket/purchase/v3")
+    public Result<TicketPurchaseWaitingRespDTO> purchaseTicketsV3(@RequestBody PurchaseTicketReqDTO requestParam) {
+        return Results.success(ticketService.purchaseTicketsV3(requestParam));
+    }
+
+    /**
+     * 查询异步排队购票结果，waitMs 大于 0 时长轮询等待购票完成
+     */
+    @GetMapping("/api/ticket-service/ticket/purchase/v3/result")
+    public CompletableFuture<Result<TicketPurchaseWaitingRespDTO>> queryPurchaseTicketsV3Result(@RequestParam(value = "ticketId") String ticketId,
+                                                                                              @RequestParam(value = "waitMs", defaultValue = "0") Long waitMs) {
+        return ticketService.queryPurchaseTicketsV3Result(ticketId, waitMs).thenApply(Results::success);
+    }
+
     /**
      * 取消车票订单
      */
@@ -20,7 +20,10 @@ package org.opengoofy.index12306.biz.ticketservice.dao.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.SeatDO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteSeatTypeCountDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.SeatTypeCountDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.SegmentSeatTypeCountDTO;
 
 import java.util.List;
 
@@ -40,4 +43,38 @@ public interface SeatMapper extends BaseMapper<SeatDO> {
      * 获取列车 startStation 到 endStation 区间可用座位集合
      */
     List<SeatTypeCountDTO> listSeatTypeCount(@Param("trainId") Long trainId, @Param("startStation") String startStation, @Param("endStation") String endStation, @Param("seatTypes")  List<Integer> seatTypes);
+
+    /**
+     * 获取列车相邻站点基本区间的座位状态集合
+     */
+    List<SeatDO> listSeatSegmentStatus(@Param("trainId") Long trainId, @Param("segmentRoutes") List<RouteDTO> segmentRoutes);
+
+    /**
+     * 获取多个列车全部站点对各座位类型可用座位数量，一次分组查询替代逐站点对查询
+     */
+    List<RouteSeatTypeCountDTO> listRouteSeatTypeCount(@Param("trainIds") List<Long> trainIds);
+
+    /**
+     * 按主键游标分批获取列车相邻站点基本区间的座位状态集合，用于对账任务流式读取 t_seat
+     */
+    List<SeatDO> listSeatSegmentStatusAfterId(@Param("trainId") Long trainId,
+                                              @Param("segmentRoutes") List<RouteDTO> segmentRoutes,
+                                              @Param("lastId") Long lastId,
+                                              @Param("limit") Integer limit);
+
+    /**
+     * 获取列车相邻站点基本区间各座位类型可用座位数量
+     */
+    List<SegmentSeatTypeCountDTO> listSegmentSeatTypeCount(@Param("trainId") Long trainId, @Param("segmentRoutes") List<RouteDTO> segmentRoutes);
+
+    /**
+     * 批量变更座位区间状态，expectStatus 不为空时仅更新当前状态为 expectStatus 的记录
+     *
+     * @return 实际更新行数，指定 expectStatus 时小于座位数量 * 区间数量说明存在状态冲突
+     */
+    int updateSeatStatusBatch(@Param("trainId") Long trainId,
+                              @Param("seats") List<SeatDO> seats,
+                              @Param("routes") List<RouteDTO> routes,
+                              @Param("expectStatus") Integer expectStatus,
+                              @Param("targetStatus") Integer targetStatus);
 }
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.job;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.StrUtil;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatStatusEnum;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.SeatDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
+import org.opengoofy.index12306.biz.ticketservice.job.base.AbstractTrainStationJobHandlerTemplate;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenBucket;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketSoldOutRegistry;
+import org.opengoofy.index12306.biz.ticketservice.service.route.TrainRouteIndex;
+import org.opengoofy.index12306.biz.ticketservice.service.route.TrainRouteIndexManager;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
+import org.opengoofy.index12306.framework.starter.bases.Singleton;
+import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.Index12306Constant.ADVANCE_TICKET_DAY;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_AVAILABILITY_RECONCILE_DRIFT;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_AVAILABILITY_TOKEN_BUCKET;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_REMAINING_TICKET;
+
+/**
+ * 列车余量令牌桶、站点余票缓存与 t_seat 对账定时任务
+ * <p>
+ * 按主键游标分批读取 t_seat 基本区间座位状态，计算每个站点对、座位类型的实际可用座位数量；
+ * 读取座位前后各通过 Pipeline 读取一次缓存，两次读取一致且与实际值不同的 Field 视为偏差。
+ * 已扣减令牌但尚未写入 t_seat 的购票请求同样表现为偏差，因此偏差只有在连续两次对账中差值相同才通过 Lua 脚本比较并写入实际值修复，
+ * 首次观测到的偏差记录到 Redis 留待下一次对账确认。对账期间被购票或退票修改过的 Field 留到下一次对账，整个过程不获取购票分布式锁。
+ * 基本区间令牌桶、已拆分子桶的列车以及基本区间余票模式不参与对账。
+ * 任务参数为 yyyy-MM-dd 时只对账该出发日期的列车，不传时对账今天起提前购票天数内全部在售日期的列车
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+public class TicketAvailabilityReconcileJobHandler extends AbstractTrainStationJobHandlerTemplate {
+
+    private final SeatMapper seatMapper;
+    private final DistributedCache distributedCache;
+    private final TrainRouteIndexManager trainRouteIndexManager;
+    private final TicketAvailabilityTokenBucket ticketAvailabilityTokenBucket;
+    private final TicketSoldOutRegistry ticketSoldOutRegistry;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
+    private final MeterRegistry meterRegistry;
+
+    private static final String LUA_TICKET_AVAILABILITY_RECONCILE_PATH = "lua/ticket_availability_reconcile.lua";
+    private static final String TOKEN_BUCKET = "token-bucket";
+    private static final String REMAINING_TICKET = "remaining-ticket";
+
+    @Value("${ticket.reconcile.chunk-size:2000}")
+    private int chunkSize;
+    @Value("${ticket.reconcile.repair-enabled:true}")
+    private boolean repairEnabled;
+    @Value("${framework.cache.redis.prefix:}")
+    private String cacheRedisPrefix;
+
+    @XxlJob(value = "ticketAvailabilityReconcileJobHandler")
+    @GetMapping("/api/ticket-service/ticket-availability/job/reconcile/execute")
+    @Override
+    public void execute() {
+        super.execute();
+    }
+
+    @Override
+    protected List<Date> listDepartureDates(String requestParam) {
+        if (StrUtil.isNotBlank(requestParam)) {
+            return super.listDepartureDates(requestParam);
+        }
+        Date today = DateUtil.beginOfDay(new Date());
+        List<Date> departureDates = new ArrayList<>(ADVANCE_TICKET_DAY + 1);
+        for (int i = 0; i <= ADVANCE_TICKET_DAY; i++) {
+            departureDates.add(DateUtil.offsetDay(today, i));
+        }
+        return departureDates;
+    }
+
+    @Override
+    protected void actualExecute(List<TrainDO> trainDOPageRecords) {
+        for (TrainDO each : trainDOPageRecords) {
+            try {
+                reconcile(String.valueOf(each.getId()));
+            } catch (Throwable ex) {
+                log.error("列车 {} 余票对账失败", each.getId(), ex);
+            }
+        }
+    }
+
+    private void reconcile(String trainId) {
+        TrainRouteIndex routeIndex = trainRouteIndexManager.getRouteIndex(trainId);
+        List<String> stations = routeIndex.getStations();
+        int segmentCount = stations.size() - 1;
+        if (segmentCount < 1 || segmentCount > Long.SIZE) {
+            log.warn("列车 {} 站点数量 {} 不支持余票对账", trainId, stations.size());
+            return;
+        }
+        List<ReconcileTarget> targets = buildTargets(trainId, stations);
+        if (targets.isEmpty()) {
+            return;
+        }
+        List<Map<Object, Object>> before = readCache(targets);
+        if (before.stream().allMatch(CollUtil::isEmpty)) {
+            return;
+        }
+        Map<String, Integer> actualMap = countAvailableSeats(trainId, routeIndex);
+        if (actualMap == null) {
+            return;
+        }
+        List<Map<Object, Object>> after = readCache(targets);
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        String driftKey = TICKET_AVAILABILITY_RECONCILE_DRIFT + TrainCacheKeyUtil.hashTag(trainId);
+        Map<Object, Object> previousDriftMap = stringRedisTemplate.opsForHash().entries(driftKey);
+        Map<String, String> currentDriftMap = new HashMap<>();
+        // 仅包含存在偏差的 Hash 结构，脚本 KEYS 下标从 1 开始
+        Map<String, Integer> keyIndexMap = new LinkedHashMap<>();
+        List<String> args = new ArrayList<>();
+        boolean tokenIncreased = false;
+        for (int i = 0; i < targets.size(); i++) {
+            ReconcileTarget target = targets.get(i);
+            Map<Object, Object> beforeMap = before.get(i);
+            for (Map.Entry<Object, Object> entry : after.get(i).entrySet()) {
+                String field = entry.getKey().toString();
+                String cachedValue = entry.getValue().toString();
+                if (!Objects.equals(Objects.toString(beforeMap.get(field), null), cachedValue)) {
+                    continue;
+                }
+                int cached = Integer.parseInt(cachedValue);
+                int actual = actualMap.getOrDefault(target.fieldPrefix + field, 0);
+                if (cached == actual) {
+                    continue;
+                }
+                meterRegistry.counter("ticket.availability.reconcile.drift", "cache", target.cache).increment();
+                meterRegistry.summary("ticket.availability.reconcile.drift.tickets", "cache", target.cache).record(Math.abs(actual - cached));
+                log.warn("列车 {} 余票缓存偏差，缓存：{}，Key：{}，Field：{}，缓存值：{}，实际值：{}", trainId, target.cache, target.key, field, cached, actual);
+                // 购票中的请求在下一次对账前已完成，差值不会保持不变；连续两次差值相同才视为真实偏差
+                String driftField = target.cache + ":" + target.fieldPrefix + field;
+                String drift = String.valueOf(actual - cached);
+                if (!Objects.equals(Objects.toString(previousDriftMap.get(driftField), null), drift)) {
+                    currentDriftMap.put(driftField, drift);
+                    continue;
+                }
+                int keyIndex = keyIndexMap.computeIfAbsent(target.key, key -> keyIndexMap.size() + 1);
+                args.add(String.valueOf(keyIndex));
+                args.add(field);
+                args.add(cachedValue);
+                args.add(String.valueOf(actual));
+                tokenIncreased |= Objects.equals(target.cache, TOKEN_BUCKET) && actual > cached;
+            }
+        }
+        if (!previousDriftMap.isEmpty()) {
+            stringRedisTemplate.delete(driftKey);
+        }
+        if (!currentDriftMap.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(driftKey, currentDriftMap);
+            stringRedisTemplate.expire(driftKey, 1, TimeUnit.DAYS);
+        }
+        if (args.isEmpty() || !repairEnabled) {
+            return;
+        }
+        DefaultRedisScript<Long> reconcileScript = Singleton.get(LUA_TICKET_AVAILABILITY_RECONCILE_PATH, () -> {
+            DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TICKET_AVAILABILITY_RECONCILE_PATH)));
+            redisScript.setResultType(Long.class);
+            return redisScript;
+        });
+        Long repaired = stringRedisTemplate.execute(reconcileScript, new ArrayList<>(keyIndexMap.keySet()), args.toArray());
+        meterRegistry.counter("ticket.availability.reconcile.repaired").increment(repaired == null ? 0 : repaired);
+        // 令牌修复增加后清除售罄标识，避免节点继续本地拒绝已有余票的站点
+        if (tokenIncreased && repaired != null && repaired > 0) {
+            ticketSoldOutRegistry.clear(trainId);
+        }
+    }
+
+    /**
+     * 组装参与对账的缓存 Hash 结构，令牌桶 Field 为 出发站_到达站_座位类型，站点余票 Field 为座位类型
+     */
+    private List<ReconcileTarget> buildTargets(String trainId, List<String> stations) {
+        List<ReconcileTarget> targets = new ArrayList<>();
+        if (ticketAvailabilityTokenBucket.isRouteBucket(trainId)) {
+            targets.add(new ReconcileTarget(TICKET_AVAILABILITY_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId), TOKEN_BUCKET, ""));
+        }
+        if (!trainSegmentRemainingTicketCache.isEnabled() && !trainPackedRemainingTicketCache.isEnabled()) {
+            for (int i = 0; i < stations.size() - 1; i++) {
+                for (int j = i + 1; j < stations.size(); j++) {
+                    targets.add(new ReconcileTarget(
+                            TRAIN_STATION_REMAINING_TICKET + TrainCacheKeyUtil.buildKeySuffix(trainId, stations.get(i), stations.get(j)),
+                            REMAINING_TICKET,
+                            StrUtil.join("_", stations.get(i), stations.get(j)) + "_"
+                    ));
+                }
+            }
+        }
+        return targets;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<Object, Object>> readCache(List<ReconcileTarget> targets) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<String>) connection -> {
+            for (ReconcileTarget each : targets) {
+                connection.hashCommands().hGetAll((cacheRedisPrefix + each.key).getBytes());
+            }
+            return null;
+        });
+        List<Map<Object, Object>> cacheMaps = new ArrayList<>(results.size());
+        for (Object each : results) {
+            cacheMaps.add(each instanceof Map ? (Map<Object, Object>) each : Map.of());
+        }
+        return cacheMaps;
+    }
+
+    /**
+     * 分批读取列车基本区间座位状态，按座位组装基本区间占用掩码后统计各站点对、座位类型的可用座位数量
+     *
+     * @return 出发站_到达站_座位类型 -> 可用座位数量，列车没有座位数据时返回 null
+     */
+    private Map<String, Integer> countAvailableSeats(String trainId, TrainRouteIndex routeIndex) {
+        List<String> stations = routeIndex.getStations();
+        List<RouteDTO> segmentRoutes = new ArrayList<>(stations.size() - 1);
+        for (int i = 0; i < stations.size() - 1; i++) {
+            segmentRoutes.add(new RouteDTO(stations.get(i), stations.get(i + 1)));
+        }
+        Map<String, SeatSegmentState> seatStateMap = new HashMap<>();
+        long lastId = 0L;
+        while (true) {
+            List<SeatDO> seats = seatMapper.listSeatSegmentStatusAfterId(Long.parseLong(trainId), segmentRoutes, lastId, chunkSize);
+            for (SeatDO each : seats) {
+                int segment = routeIndex.ordinal(each.getStartStation());
+                if (segment < 0) {
+                    continue;
+                }
+                SeatSegmentState state = seatStateMap.computeIfAbsent(
+                        StrUtil.join("_", each.getCarriageNumber(), each.getSeatNumber()),
+                        key -> new SeatSegmentState(each.getSeatType())
+                );
+                if (!Objects.equals(each.getSeatStatus(), SeatStatusEnum.AVAILABLE.getCode())) {
+                    state.occupiedMask |= 1L << segment;
+                }
+            }
+            if (seats.size() < chunkSize) {
+                break;
+            }
+            lastId = seats.get(seats.size() - 1).getId();
+        }
+        if (seatStateMap.isEmpty()) {
+            log.warn("列车 {} 没有座位数据，跳过余票对账", trainId);
+            return null;
+        }
+        Map<String, Integer> actualMap = new HashMap<>();
+        for (SeatSegmentState each : seatStateMap.values()) {
+            for (int i = 0; i < stations.size() - 1; i++) {
+                for (int j = i + 1; j < stations.size(); j++) {
+                    // 途经区间逐站延长，出现占用后更远的到达站同样不可用
+                    if ((each.occupiedMask & (1L << (j - 1))) != 0) {
+                        break;
+                    }
+                    actualMap.merge(StrUtil.join("_", stations.get(i), stations.get(j), each.seatType), 1, Integer::sum);
+                }
+            }
+        }
+        return actualMap;
+    }
+
+    /**
+     * 参与对账的缓存 Hash 结构
+     */
+    private static final class ReconcileTarget {
+
+        private final String key;
+        private final String cache;
+
+        /**
+         * Hash Field 拼接该前缀后对应 出发站_到达站_座位类型
+         */
+        private final String fieldPrefix;
+
+        private ReconcileTarget(String key, String cache, String fieldPrefix) {
+            this.key = key;
+            this.cache = cache;
+            this.fieldPrefix = fieldPrefix;
+        }
+    }
+
+    /**
+     * 单个座位的座位类型以及基本区间占用掩码
+     */
+    private static final class SeatSegmentState {
+
+        private final Integer seatType;
+        private long occupiedMask;
+
+        private SeatSegmentState(Integer seatType) {
+            this.seatType = seatType;
+        }
+    }
+}
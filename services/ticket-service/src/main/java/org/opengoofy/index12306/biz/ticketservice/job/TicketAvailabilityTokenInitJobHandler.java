@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.job;
+
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainDO;
+import org.opengoofy.index12306.biz.ticketservice.job.base.AbstractTrainStationJobHandlerTemplate;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenBucket;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 列车余量令牌桶批量初始化定时任务
+ * 按出发日期初始化全部列车令牌桶，任务参数为 yyyy-MM-dd，不传默认明天
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+public class TicketAvailabilityTokenInitJobHandler extends AbstractTrainStationJobHandlerTemplate {
+
+    private final TicketAvailabilityTokenBucket ticketAvailabilityTokenBucket;
+
+    @XxlJob(value = "ticketAvailabilityTokenInitJobHandler")
+    @GetMapping("/api/ticket-service/ticket-availability-token/job/init/execute")
+    @Override
+    public void execute() {
+        super.execute();
+    }
+
+    @Override
+    protected void actualExecute(List<TrainDO> trainDOPageRecords) {
+        long startTime = System.currentTimeMillis();
+        int provisioned = ticketAvailabilityTokenBucket.initializeTokens(trainDOPageRecords);
+        log.info("列车令牌桶批量初始化完成，列车数量：{}，写入数量：{}，耗时：{} ms", trainDOPageRecords.size(), provisioned, System.currentTimeMillis() - startTime);
+    }
+}
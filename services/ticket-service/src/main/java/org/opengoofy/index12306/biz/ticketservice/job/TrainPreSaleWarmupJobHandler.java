@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.job;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.date.DateUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xxl.job.core.handler.IJobHandler;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainMapper;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPreSaleWarmer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 列车开售前缓存预热定时任务
+ * 建议每分钟执行一次，预热开售时间在提前量窗口内的列车，错过窗口的任务在开售后同样长度的时间内补偿执行
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+public class TrainPreSaleWarmupJobHandler extends IJobHandler {
+
+    private final TrainMapper trainMapper;
+    private final TrainPreSaleWarmer trainPreSaleWarmer;
+
+    @Value("${ticket.pre-sale-warmup.lead-minutes:10}")
+    private int leadMinutes;
+
+    @XxlJob(value = "trainPreSaleWarmupJobHandler")
+    @GetMapping("/api/ticket-service/train-pre-sale/job/warmup/execute")
+    @Override
+    public void execute() {
+        Date now = new Date();
+        var queryWrapper = Wrappers.lambdaQuery(TrainDO.class)
+                .between(TrainDO::getSaleTime, DateUtil.offsetMinute(now, -leadMinutes), DateUtil.offsetMinute(now, leadMinutes));
+        int trainCount = 0;
+        int readyCount = 0;
+        for (var currentPage = 1L; ; currentPage++) {
+            var trainDOPage = trainMapper.selectPage(new Page<>(currentPage, 1000L), queryWrapper);
+            if (trainDOPage == null || CollUtil.isEmpty(trainDOPage.getRecords())) {
+                break;
+            }
+            List<TrainDO> trainDOPageRecords = trainDOPage.getRecords();
+            trainCount += trainDOPageRecords.size();
+            readyCount += trainPreSaleWarmer.warmUp(trainDOPageRecords);
+        }
+        log.info("列车开售前缓存预热完成，窗口内列车数量：{}，本次预热完成数量：{}", trainCount, readyCount);
+    }
+}
@@ -18,7 +18,6 @@
 package org.opengoofy.index12306.biz.ticketservice.job;
 
 import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.xxl.job.core.handler.annotation.XxlJob;
@@ -28,6 +27,9 @@ import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainStationRelatio
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainMapper;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainStationRelationMapper;
 import org.opengoofy.index12306.biz.ticketservice.job.base.AbstractTrainStationJobHandlerTemplate;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -55,6 +57,8 @@ public class TrainStationRemainingTicketJobHandler extends AbstractTrainStationJ
     private final TrainStationRelationMapper trainStationRelationMapper;
     private final DistributedCache distributedCache;
     private final TrainMapper trainMapper;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
 
     /**
      * 为了方便大家使用项目启动时初始化缓存
@@ -70,6 +74,14 @@ public class TrainStationRemainingTicketJobHandler extends AbstractTrainStationJ
     @Override
     protected void actualExecute(List<TrainDO> trainDOPageRecords) {
         for (TrainDO each : trainDOPageRecords) {
+            if (trainSegmentRemainingTicketCache.isEnabled()) {
+                trainSegmentRemainingTicketCache.load(String.valueOf(each.getId()));
+                continue;
+            }
+            if (trainPackedRemainingTicketCache.isEnabled()) {
+                trainPackedRemainingTicketCache.load(String.valueOf(each.getId()));
+                continue;
+            }
             LambdaQueryWrapper<TrainStationRelationDO> relationQueryWrapper = Wrappers.lambdaQuery(TrainStationRelationDO.class)
                     .eq(TrainStationRelationDO::getTrainId, each.getId());
             List<TrainStationRelationDO> trainStationRelationDOList = trainStationRelationMapper.selectList(relationQueryWrapper);
@@ -100,7 +112,7 @@ public class TrainStationRemainingTicketJobHandler extends AbstractTrainStationJ
                     }
                 }
                 StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
-                String buildCacheKey = TRAIN_STATION_REMAINING_TICKET + StrUtil.join("_", each.getId(), item.getDeparture(), item.getArrival());
+                String buildCacheKey = TRAIN_STATION_REMAINING_TICKET + TrainCacheKeyUtil.buildKeySuffix(each.getId(), item.getDeparture(), item.getArrival());
                 stringRedisTemplate.opsForHash().putAll(buildCacheKey, trainStationRemainingTicket);
                 stringRedisTemplate.expire(buildCacheKey, ADVANCE_TICKET_DAY, TimeUnit.DAYS);
             }
@@ -31,6 +31,7 @@ import org.opengoofy.index12306.framework.starter.common.toolkit.EnvironmentUtil
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -48,22 +49,31 @@ public abstract class AbstractTrainStationJobHandlerTemplate extends IJobHandler
      */
     protected abstract void actualExecute(List<TrainDO> trainDOPageRecords);
 
+    /**
+     * 定时任务处理的列车出发日期，默认为任务参数指定的日期，不传默认明天
+     *
+     * @param requestParam 任务参数，格式 yyyy-MM-dd
+     * @return 出发日期集合
+     */
+    protected List<Date> listDepartureDates(String requestParam) {
+        return List.of(StrUtil.isNotBlank(requestParam) ? DateUtil.parse(requestParam, "yyyy-MM-dd") : DateUtil.tomorrow());
+    }
+
     @Override
     public void execute() {
-        var currentPage = 1L;
         var size = 1000L;
-        var requestParam = getJobRequestParam();
-        var dateTime = StrUtil.isNotBlank(requestParam) ? DateUtil.parse(requestParam, "yyyy-MM-dd") : DateUtil.tomorrow();
         var trainMapper = ApplicationContextHolder.getBean(TrainMapper.class);
-        for (; ; currentPage++) {
-            var queryWrapper = Wrappers.lambdaQuery(TrainDO.class)
-                    .between(TrainDO::getDepartureTime, DateUtil.beginOfDay(dateTime), DateUtil.endOfDay(dateTime));
-            var trainDOPage = trainMapper.selectPage(new Page<>(currentPage, size), queryWrapper);
-            if (trainDOPage == null || CollUtil.isEmpty(trainDOPage.getRecords())) {
-                break;
+        for (Date dateTime : listDepartureDates(getJobRequestParam())) {
+            for (var currentPage = 1L; ; currentPage++) {
+                var queryWrapper = Wrappers.lambdaQuery(TrainDO.class)
+                        .between(TrainDO::getDepartureTime, DateUtil.beginOfDay(dateTime), DateUtil.endOfDay(dateTime));
+                var trainDOPage = trainMapper.selectPage(new Page<>(currentPage, size), queryWrapper);
+                if (trainDOPage == null || CollUtil.isEmpty(trainDOPage.getRecords())) {
+                    break;
+                }
+                var trainDOPageRecords = trainDOPage.getRecords();
+                actualExecute(trainDOPageRecords);
             }
-            var trainDOPageRecords = trainDOPage.getRecords();
-            actualExecute(trainDOPageRecords);
         }
     }
 
@@ -53,6 +53,13 @@ public class CanalCommonSyncBinlogConsumer implements RocketMQListener<CanalBinl
 
     @Override
     public void onMessage(CanalBinlogEvent message) {
+        // 列车站点以及票价变更与余票更新方式无关，新增、修改以及删除均需要刷新列车路线索引以及票价矩阵
+        if (!message.getIsDdl()
+                && (Objects.equals(message.getTable(), CanalExecuteStrategyMarkEnum.T_TRAIN_STATION.getActualTable())
+                || Objects.equals(message.getTable(), CanalExecuteStrategyMarkEnum.T_TRAIN_STATION_PRICE.getActualTable()))) {
+            abstractStrategyChoose.chooseAndExecute(message.getTable(), message);
+            return;
+        }
         // 余票 Binlog 更新延迟问题如何解决？详情查看：https://nageoffer.com/12306/question
         if (message.getIsDdl()
                 || CollUtil.isEmpty(message.getOld())
@@ -33,8 +33,11 @@ import org.opengoofy.index12306.biz.ticketservice.remote.dto.TicketOrderDetailRe
 import org.opengoofy.index12306.biz.ticketservice.remote.dto.TicketOrderPassengerDetailRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.SeatService;
 import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenBucket;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.opengoofy.index12306.framework.starter.common.toolkit.BeanUtil;
 import org.opengoofy.index12306.framework.starter.convention.result.Result;
@@ -42,6 +45,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -71,6 +75,8 @@ public final class DelayCloseOrderConsumer implements RocketMQListener<MessageWr
     private final TrainStationService trainStationService;
     private final DistributedCache distributedCache;
     private final TicketAvailabilityTokenBucket ticketAvailabilityTokenBucket;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
 
     //ticket.availability.cache-update.type:需要自己配置，具体细节见https://www.yuque.com/magestack/12306/glv5e0785b2d7oag#VI9Zi
     @Value("${ticket.availability.cache-update.type:}")
@@ -117,14 +123,25 @@ public final class DelayCloseOrderConsumer implements RocketMQListener<MessageWr
                 StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
                 Map<Integer, List<TrainPurchaseTicketRespDTO>> seatTypeMap = trainPurchaseTicketResults.stream()
                         .collect(Collectors.groupingBy(TrainPurchaseTicketRespDTO::getSeatType));
-                List<RouteDTO> routeDTOList = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival);
-                routeDTOList.forEach(each -> {
-                    String keySuffix = StrUtil.join("_", trainId, each.getStartStation(), each.getEndStation());
-                    seatTypeMap.forEach((seatType, trainPurchaseTicketRespDTOList) -> {
-                        stringRedisTemplate.opsForHash()
-                                .increment(TRAIN_STATION_REMAINING_TICKET + keySuffix, String.valueOf(seatType), trainPurchaseTicketRespDTOList.size());
+                if (trainSegmentRemainingTicketCache.isEnabled()) {
+                    Map<Integer, Integer> seatTypeCount = new HashMap<>();
+                    seatTypeMap.forEach((seatType, trainPurchaseTicketRespDTOList) -> seatTypeCount.put(seatType, trainPurchaseTicketRespDTOList.size()));
+                    trainSegmentRemainingTicketCache.increase(trainId, departure, arrival, seatTypeCount);
+                } else if (trainPackedRemainingTicketCache.isEnabled()) {
+                    Map<Integer, Integer> seatTypeCount = new HashMap<>();
+                    seatTypeMap.forEach((seatType, trainPurchaseTicketRespDTOList) -> seatTypeCount.put(seatType, trainPurchaseTicketRespDTOList.size()));
+                    trainPackedRemainingTicketCache.increase(trainId, departure, arrival, seatTypeCount);
+                } else if (!ticketAvailabilityTokenBucket.isReserveRemainingTicket(trainId)) {
+                    // 开启预占站点余票时，站点余票与令牌在下方同一 Lua 脚本中回滚
+                    List<RouteDTO> routeDTOList = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival);
+                    routeDTOList.forEach(each -> {
+                        String keySuffix = TrainCacheKeyUtil.buildKeySuffix(trainId, each.getStartStation(), each.getEndStation());
+                        seatTypeMap.forEach((seatType, trainPurchaseTicketRespDTOList) -> {
+                            stringRedisTemplate.opsForHash()
+                                    .increment(TRAIN_STATION_REMAINING_TICKET + keySuffix, String.valueOf(seatType), trainPurchaseTicketRespDTOList.size());
+                        });
                     });
-                });
+                }
                 TicketOrderDetailRespDTO ticketOrderDetail = BeanUtil.convert(delayCloseOrderEvent, TicketOrderDetailRespDTO.class);
                 ticketOrderDetail.setPassengerDetails(BeanUtil.convert(delayCloseOrderEvent.getTrainPurchaseTicketResults(), TicketOrderPassengerDetailRespDTO.class));
                 ticketAvailabilityTokenBucket.rollbackInBucket(ticketOrderDetail);
@@ -17,21 +17,19 @@
 
 package org.opengoofy.index12306.biz.ticketservice.mq.consumer;
 
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
-import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.opengoofy.index12306.biz.ticketservice.common.constant.TicketRocketMQConstant;
 import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatStatusEnum;
-import org.opengoofy.index12306.biz.ticketservice.dao.entity.SeatDO;
-import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
 import org.opengoofy.index12306.biz.ticketservice.mq.domain.MessageWrapper;
 import org.opengoofy.index12306.biz.ticketservice.mq.event.PayResultCallbackTicketEvent;
 import org.opengoofy.index12306.biz.ticketservice.remote.TicketOrderRemoteService;
 import org.opengoofy.index12306.biz.ticketservice.remote.dto.TicketOrderDetailRespDTO;
-import org.opengoofy.index12306.biz.ticketservice.remote.dto.TicketOrderPassengerDetailRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.SeatService;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
+import org.opengoofy.index12306.framework.starter.common.toolkit.BeanUtil;
 import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
 import org.opengoofy.index12306.framework.starter.convention.result.Result;
 import org.opengoofy.index12306.framework.starter.idempotent.annotation.Idempotent;
@@ -58,7 +56,7 @@ import java.util.Objects;
 public class PayResultCallbackTicketConsumer implements RocketMQListener<MessageWrapper<PayResultCallbackTicketEvent>> {
 
     private final TicketOrderRemoteService ticketOrderRemoteService;
-    private final SeatMapper seatMapper;
+    private final SeatService seatService;
 
     @Idempotent(
             uniqueKeyPrefix = "index12306-ticket:pay_result_callback:",
@@ -81,17 +79,17 @@ public class PayResultCallbackTicketConsumer implements RocketMQListener<Message
             throw ex;
         }
         TicketOrderDetailRespDTO ticketOrderDetail = ticketOrderDetailResult.getData();
-        for (TicketOrderPassengerDetailRespDTO each : ticketOrderDetail.getPassengerDetails()) {
-            LambdaUpdateWrapper<SeatDO> updateWrapper = Wrappers.lambdaUpdate(SeatDO.class)
-                    .eq(SeatDO::getTrainId, ticketOrderDetail.getTrainId())
-                    .eq(SeatDO::getCarriageNumber, each.getCarriageNumber())
-                    .eq(SeatDO::getSeatNumber, each.getSeatNumber())
-                    .eq(SeatDO::getSeatType, each.getSeatType())
-                    .eq(SeatDO::getStartStation, ticketOrderDetail.getDeparture())
-                    .eq(SeatDO::getEndStation, ticketOrderDetail.getArrival());
-            SeatDO updateSeatDO = new SeatDO();
-            updateSeatDO.setSeatStatus(SeatStatusEnum.SOLD.getCode());
-            seatMapper.update(updateSeatDO, updateWrapper);
+        // 锁定座位时沿途区间均已锁定，支付成功后一并变更为已售，一条 SQL 完成全部乘车人座位区间更新
+        boolean transitResult = seatService.transitSeatStatus(
+                String.valueOf(ticketOrderDetail.getTrainId()),
+                ticketOrderDetail.getDeparture(),
+                ticketOrderDetail.getArrival(),
+                BeanUtil.convert(ticketOrderDetail.getPassengerDetails(), TrainPurchaseTicketRespDTO.class),
+                SeatStatusEnum.LOCKED,
+                SeatStatusEnum.SOLD
+        );
+        if (!transitResult) {
+            log.warn("支付结果回调座位状态存在冲突，部分座位区间未变更为已售，订单号：{}", ticketOrderDetail.getOrderSn());
         }
     }
 }
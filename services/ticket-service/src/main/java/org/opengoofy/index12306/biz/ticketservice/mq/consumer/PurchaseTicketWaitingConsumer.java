@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.mq.consumer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.opengoofy.index12306.biz.ticketservice.common.constant.TicketRocketMQConstant;
+import org.opengoofy.index12306.biz.ticketservice.mq.domain.MessageWrapper;
+import org.opengoofy.index12306.biz.ticketservice.mq.event.PurchaseTicketWaitingEvent;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.waiting.PurchaseTicketWaitingRoom;
+import org.opengoofy.index12306.framework.starter.idempotent.annotation.Idempotent;
+import org.opengoofy.index12306.framework.starter.idempotent.enums.IdempotentSceneEnum;
+import org.opengoofy.index12306.framework.starter.idempotent.enums.IdempotentTypeEnum;
+import org.springframework.stereotype.Component;
+
+/**
+ * 异步购票排队消费者
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@RocketMQMessageListener(
+        topic = TicketRocketMQConstant.PURCHASE_TICKET_WAITING_TOPIC_KEY,
+        selectorExpression = TicketRocketMQConstant.PURCHASE_TICKET_WAITING_TAG_KEY,
+        consumerGroup = TicketRocketMQConstant.PURCHASE_TICKET_WAITING_CG_KEY
+)
+public class PurchaseTicketWaitingConsumer implements RocketMQListener<MessageWrapper<PurchaseTicketWaitingEvent>> {
+
+    private final PurchaseTicketWaitingRoom purchaseTicketWaitingRoom;
+
+    @Idempotent(
+            uniqueKeyPrefix = "index12306-ticket:purchase_ticket_waiting:",
+            key = "#message.getKeys()",
+            type = IdempotentTypeEnum.SPEL,
+            scene = IdempotentSceneEnum.MQ,
+            keyTimeout = 7200L
+    )
+    @Override
+    public void onMessage(MessageWrapper<PurchaseTicketWaitingEvent> message) {
+        purchaseTicketWaitingRoom.process(message.getMessage());
+    }
+}
@@ -18,6 +18,7 @@
 package org.opengoofy.index12306.biz.ticketservice.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatStatusEnum;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.SeatDO;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
 
@@ -83,4 +84,21 @@ public interface SeatService extends IService<SeatDO> {
      * @param trainPurchaseTicketResults 乘车人以及座位信息
      */
     void unlock(String trainId, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketResults);
+
+    /**
+     * 批量变更选中以及沿途车票状态
+     * <p>
+     * 出发站到到达站之间的相邻站点基本区间只更新当前状态为 expectStatus 的记录，作为座位在本行程是否可变更的判断依据；
+     * 与行程重叠但超出行程的站点对（如 B->C 行程的 A->C）可能同时被其他行程占用，与原逻辑一致不校验状态直接变更
+     *
+     * @param trainId                    列车 ID
+     * @param departure                  出发站
+     * @param arrival                    到达站
+     * @param trainPurchaseTicketResults 乘车人以及座位信息
+     * @param expectStatus               座位当前状态
+     * @param targetStatus               座位目标状态
+     * @return 全部座位区间是否均变更成功，返回 false 说明存在重复售卖或重复解锁等状态冲突
+     */
+    boolean transitSeatStatus(String trainId, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketResults,
+                              SeatStatusEnum expectStatus, SeatStatusEnum targetStatus);
 }
@@ -26,9 +26,12 @@ import org.opengoofy.index12306.biz.ticketservice.dto.req.TicketPageQueryReqDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.RefundTicketRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPageQueryRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseWaitingRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.remote.dto.PayInfoRespDTO;
 import org.springframework.web.bind.annotation.RequestBody;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 车票接口
  *
@@ -52,6 +55,14 @@ public interface TicketService extends IService<TicketDO> {
      */
     TicketPageQueryRespDTO pageListTicketQueryV2(TicketPageQueryReqDTO requestParam);
 
+    /**
+     * 根据条件分页查询车票V3本地物化视图版本
+     *
+     * @param requestParam 分页查询车票请求参数
+     * @return 查询车票返回结果
+     */
+    TicketPageQueryRespDTO pageListTicketQueryV3(TicketPageQueryReqDTO requestParam);
+
     /**
      * 购买车票
      *
@@ -68,6 +79,32 @@ public interface TicketService extends IService<TicketDO> {
      */
     TicketPurchaseRespDTO purchaseTicketsV2(@RequestBody PurchaseTicketReqDTO requestParam);
 
+    /**
+     * 购买车票V3异步排队版本
+     * 校验购票参数并扣减令牌后入队，立即返回排队号以及前方排队人数
+     *
+     * @param requestParam 车票购买请求参数
+     * @return 排队号以及前方排队人数
+     */
+    TicketPurchaseWaitingRespDTO purchaseTicketsV3(PurchaseTicketReqDTO requestParam);
+
+    /**
+     * 查询异步排队购票结果
+     *
+     * @param ticketId 排队号
+     * @param waitMs   长轮询等待时间，单位毫秒，小于等于 0 时立即返回
+     * @return 排队结果
+     */
+    CompletableFuture<TicketPurchaseWaitingRespDTO> queryPurchaseTicketsV3Result(String ticketId, long waitMs);
+
+    /**
+     * 执行排队中的购票请求，参数校验以及令牌扣减已在入队前完成
+     *
+     * @param requestParam 车票购买请求参数
+     * @return 订单号
+     */
+    TicketPurchaseRespDTO executeWaitingPurchaseTickets(PurchaseTicketReqDTO requestParam);
+
     /**
      * 执行购买车票
      * 被对应购票版本号接口调用 {@link TicketService#purchaseTicketsV1(PurchaseTicketReqDTO)} and {@link TicketService#purchaseTicketsV2(PurchaseTicketReqDTO)}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.remote.UserRemoteService;
+import org.opengoofy.index12306.biz.ticketservice.remote.dto.PassengerRespDTO;
+import org.opengoofy.index12306.framework.starter.convention.exception.RemoteException;
+import org.opengoofy.index12306.framework.starter.convention.result.Result;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.USER_PASSENGER_INVALIDATE_TOPIC;
+
+/**
+ * 乘车人快照本地缓存
+ * <p>
+ * 购票时需要乘车人证件号、手机号以及优惠类型，首次使用时远程调用用户服务加载并按用户名缓存，后续购票直接读取本地快照；
+ * 用户服务新增、修改以及删除乘车人后通过 Redis 发布订阅通知所有节点失效对应用户的快照，过期时间兜底刷新
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PassengerSnapshotCache implements InitializingBean {
+
+    private final UserRemoteService userRemoteService;
+    private final RedissonClient redissonClient;
+
+    @Value("${ticket.passenger-cache.expire-minutes:10}")
+    private long expireMinutes;
+
+    /**
+     * 用户名 -> 乘车人 ID -> 乘车人快照
+     */
+    private Cache<String, Map<String, PassengerRespDTO>> passengerCache;
+
+    @Override
+    public void afterPropertiesSet() {
+        passengerCache = Caffeine.newBuilder()
+                .expireAfterWrite(expireMinutes, TimeUnit.MINUTES)
+                .maximumSize(100000)
+                .build();
+        redissonClient.getTopic(USER_PASSENGER_INVALIDATE_TOPIC)
+                .addListener(String.class, (channel, username) -> passengerCache.invalidate(username));
+    }
+
+    /**
+     * 根据乘车人 ID 集合获取乘车人快照，本地缺失的乘车人远程调用用户服务补齐
+     *
+     * @param username     用户名
+     * @param passengerIds 乘车人 ID 集合
+     * @return 乘车人 ID -> 乘车人快照
+     */
+    public Map<String, PassengerRespDTO> listPassenger(String username, List<String> passengerIds) {
+        Map<String, PassengerRespDTO> snapshot = passengerCache.get(username, each -> new ConcurrentHashMap<>());
+        List<String> missingIds = passengerIds.stream()
+                .filter(each -> !snapshot.containsKey(each))
+                .distinct()
+                .toList();
+        if (!missingIds.isEmpty()) {
+            loadPassenger(username, missingIds).forEach(each -> snapshot.put(each.getId(), each));
+        }
+        Map<String, PassengerRespDTO> result = new HashMap<>(passengerIds.size() * 2);
+        passengerIds.forEach(each -> {
+            PassengerRespDTO passenger = snapshot.get(each);
+            if (passenger != null) {
+                result.put(each, passenger);
+            }
+        });
+        return result;
+    }
+
+    private List<PassengerRespDTO> loadPassenger(String username, List<String> passengerIds) {
+        List<PassengerRespDTO> passengerRemoteResultList;
+        try {
+            Result<List<PassengerRespDTO>> passengerRemoteResult = userRemoteService.listPassengerQueryByIds(username, passengerIds);
+            if (!passengerRemoteResult.isSuccess() || CollUtil.isEmpty(passengerRemoteResultList = passengerRemoteResult.getData())) {
+                throw new RemoteException("用户服务远程调用查询乘车人相信信息错误");
+            }
+        } catch (Throwable ex) {
+            if (ex instanceof RemoteException) {
+                log.error("用户服务远程调用查询乘车人相信信息错误，当前用户：{}，请求参数：{}", username, passengerIds);
+            } else {
+                log.error("用户服务远程调用查询乘车人相信信息错误，当前用户：{}，请求参数：{}", username, passengerIds, ex);
+            }
+            throw ex;
+        }
+        return passengerRemoteResultList;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 列车维度本地缓存，通过 Redis 发布订阅通知所有节点失效
+ * <p>
+ * 数据只在本地缺失时加载一次，变更时由调用方发布失效通知，所有节点收到通知后删除本地数据，过期时间兜底刷新；
+ * 依赖该缓存构建的其它本地缓存通过 {@link #onInvalidate(Consumer)} 注册回调，随之一起失效
+ *
+ * @param <V> 缓存值类型
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+public final class TopicInvalidatedLocalCache<V> {
+
+    private final String name;
+    private final Function<String, V> loader;
+    private final Cache<String, V> cache;
+    private final RTopic invalidateTopic;
+    private final List<Consumer<String>> invalidateListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param name           缓存名称，用于日志
+     * @param redissonClient Redisson 客户端
+     * @param topic          失效通知频道
+     * @param expireMinutes  写入后过期时间，单位分钟
+     * @param loader         本地缺失时的加载方法，入参为列车 ID
+     */
+    public TopicInvalidatedLocalCache(String name, RedissonClient redissonClient, String topic, long expireMinutes, Function<String, V> loader) {
+        this.name = name;
+        this.loader = loader;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(expireMinutes, TimeUnit.MINUTES)
+                .maximumSize(10000)
+                .build();
+        this.invalidateTopic = redissonClient.getTopic(topic);
+        this.invalidateTopic.addListener(String.class, (channel, trainId) -> invalidateLocal(trainId));
+    }
+
+    /**
+     * 获取缓存，本地缺失时加载
+     *
+     * @param trainId 列车 ID
+     */
+    public V get(String trainId) {
+        return cache.get(trainId, loader);
+    }
+
+    /**
+     * 通知所有节点失效缓存，下次访问时重新加载
+     *
+     * @param trainId 列车 ID
+     */
+    public void invalidate(String trainId) {
+        invalidateLocal(trainId);
+        try {
+            invalidateTopic.publish(trainId);
+        } catch (Throwable ex) {
+            // 其它节点依赖过期时间兜底刷新
+            log.error("发布列车 {} {}失效通知失败", trainId, name, ex);
+        }
+    }
+
+    /**
+     * 注册本地失效回调，本节点主动失效以及收到其它节点失效通知时均会触发
+     *
+     * @param listener 回调，入参为列车 ID
+     */
+    public void onInvalidate(Consumer<String> listener) {
+        invalidateListeners.add(listener);
+    }
+
+    /**
+     * 仅失效本节点缓存，用于其它已通知所有节点的失效事件联动
+     *
+     * @param trainId 列车 ID
+     */
+    public void invalidateLocal(String trainId) {
+        cache.invalidate(trainId);
+        invalidateListeners.forEach(each -> each.accept(trainId));
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.google.common.collect.Lists;
+import lombok.RequiredArgsConstructor;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.VehicleTypeEnum;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainMapper;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteSeatTypeCountDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.TicketListDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
+import org.opengoofy.index12306.framework.starter.bases.Singleton;
+import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.opengoofy.index12306.framework.starter.common.toolkit.Assert;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.Index12306Constant.ADVANCE_TICKET_DAY;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.LOCK_TRAIN_PACKED_REMAINING_TICKET;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_INFO;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_PACKED_REMAINING_TICKET;
+
+/**
+ * 列车站点对余票紧凑矩阵缓存
+ * <p>
+ * 开启方式：ticket.remaining-ticket.mode=packed。每个列车只维护一个 String，按 BITFIELD u16 计数器存放全部 站点对 × 座位类型 余票，
+ * 下标 0 为已加载标识，站点对 (i, j) 座位类型下标 k 的计数器下标为 1 + 站点对下标 * 座位类型数量 + k，座位类型顺序与列车类型座位类型一致。
+ * 与站点对 Hash 模式语义一致，每个列车由站点数量平方个 Key 收敛为一个 Key，查询时每个列车只需一次 BITFIELD 读取
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Component
+@RequiredArgsConstructor
+public class TrainPackedRemainingTicketCache {
+
+    private final SeatMapper seatMapper;
+    private final TrainMapper trainMapper;
+    private final TrainStationService trainStationService;
+    private final DistributedCache distributedCache;
+    private final RedissonClient redissonClient;
+
+    @Value("${ticket.remaining-ticket.mode:route}")
+    private String remainingTicketMode;
+    @Value("${framework.cache.redis.prefix:}")
+    private String cacheRedisPrefix;
+
+    private static final String LUA_TRAIN_PACKED_REMAINING_TICKET_ADJUST_PATH = "lua/train_packed_remaining_ticket_adjust.lua";
+    private static final BitFieldSubCommands.BitFieldType COUNTER_TYPE = BitFieldSubCommands.BitFieldType.unsigned(16);
+    private static final int COUNTER_MAX_VALUE = 0xFFFF;
+    private static final int LOADED_FLAG = 1;
+
+    /**
+     * 是否开启站点对余票紧凑矩阵模式
+     */
+    public boolean isEnabled() {
+        return StrUtil.equals(remainingTicketMode, "packed");
+    }
+
+    /**
+     * 获取列车出发站到到达站各座位类型余票
+     *
+     * @param trainId   列车 ID
+     * @param departure 出发站
+     * @param arrival   到达站
+     * @param seatTypes 座位类型集合
+     * @return 座位类型 -> 余票数量
+     */
+    public Map<Integer, Integer> listRemainingTicket(String trainId, String departure, String arrival, List<Integer> seatTypes) {
+        List<Integer> trainSeatTypes = listTrainSeatTypes(trainId);
+        BitFieldSubCommands subCommands = buildReadCommands(trainId, departure, arrival, trainSeatTypes);
+        if (subCommands == null) {
+            return zeroRemainingTicket(seatTypes);
+        }
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        String cacheKey = TRAIN_PACKED_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trainId);
+        List<Long> values = stringRedisTemplate.opsForValue().bitField(cacheKey, subCommands);
+        if (!isLoaded(values)) {
+            load(trainId);
+            values = stringRedisTemplate.opsForValue().bitField(cacheKey, subCommands);
+        }
+        return toRemainingTicket(seatTypes, trainSeatTypes, values);
+    }
+
+    /**
+     * 批量获取列车余票，一次管道请求内每个列车一次 BITFIELD 读取，座位类型按列车类型获取
+     *
+     * @param trains 列车集合
+     * @return 与列车集合顺序一致的 座位类型 -> 余票数量
+     */
+    public List<Map<Integer, Integer>> batchListRemainingTicket(List<TicketListDTO> trains) {
+        List<List<Integer>> seatTypesList = new ArrayList<>(trains.size());
+        List<BitFieldSubCommands> subCommandsList = new ArrayList<>(trains.size());
+        for (TicketListDTO each : trains) {
+            List<Integer> seatTypes = VehicleTypeEnum.findSeatTypesByCode(each.getTrainType());
+            seatTypesList.add(seatTypes);
+            subCommandsList.add(buildReadCommands(each.getTrainId(), each.getDeparture(), each.getArrival(), seatTypes));
+        }
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<Object> pipelineResults = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < trains.size(); i++) {
+                if (subCommandsList.get(i) != null) {
+                    byte[] cacheKey = (cacheRedisPrefix + TRAIN_PACKED_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trains.get(i).getTrainId())).getBytes();
+                    connection.stringCommands().bitField(cacheKey, subCommandsList.get(i));
+                }
+            }
+            return null;
+        });
+        List<Map<Integer, Integer>> results = new ArrayList<>(trains.size());
+        int resultIndex = 0;
+        for (int i = 0; i < trains.size(); i++) {
+            TicketListDTO train = trains.get(i);
+            List<Integer> seatTypes = seatTypesList.get(i);
+            if (subCommandsList.get(i) == null) {
+                results.add(zeroRemainingTicket(seatTypes));
+                continue;
+            }
+            List<Long> values = (List<Long>) pipelineResults.get(resultIndex++);
+            if (!isLoaded(values)) {
+                // 未加载或已过期的列车单独加载
+                results.add(listRemainingTicket(train.getTrainId(), train.getDeparture(), train.getArrival(), seatTypes));
+            } else {
+                results.add(toRemainingTicket(seatTypes, seatTypes, values));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 购票后扣减与出发站到到达站重叠的全部站点对余票，一次 Lua 脚本原子完成
+     *
+     * @param trainId       列车 ID
+     * @param departure     出发站
+     * @param arrival       到达站
+     * @param seatTypeCount 座位类型 -> 购票数量
+     */
+    public void decrease(String trainId, String departure, String arrival, Map<Integer, Integer> seatTypeCount) {
+        Map<Integer, Integer> seatTypeDelta = new LinkedHashMap<>(seatTypeCount.size());
+        seatTypeCount.forEach((seatType, count) -> seatTypeDelta.put(seatType, -count));
+        adjust(trainId, departure, arrival, true, seatTypeDelta);
+    }
+
+    /**
+     * 取消订单或超时关闭后回滚与出发站到到达站重叠的全部站点对余票
+     *
+     * @param trainId       列车 ID
+     * @param departure     出发站
+     * @param arrival       到达站
+     * @param seatTypeCount 座位类型 -> 回滚数量
+     */
+    public void increase(String trainId, String departure, String arrival, Map<Integer, Integer> seatTypeCount) {
+        adjust(trainId, departure, arrival, true, seatTypeCount);
+    }
+
+    /**
+     * 按 t_seat 区间记录变更对应站点对余票，一般为 Canal 监听 Binlog 触发
+     *
+     * @param trainId       列车 ID
+     * @param startStation  区间起始站
+     * @param endStation    区间终点站
+     * @param seatTypeDelta 座位类型 -> 余票变更数量
+     */
+    public void adjustRoute(String trainId, String startStation, String endStation, Map<Integer, Integer> seatTypeDelta) {
+        adjust(trainId, startStation, endStation, false, seatTypeDelta);
+    }
+
+    /**
+     * 删除列车站点对余票紧凑矩阵，下次读取时从数据库重新加载
+     *
+     * @param trainId 列车 ID
+     */
+    public void invalidate(String trainId) {
+        distributedCache.delete(TRAIN_PACKED_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trainId));
+    }
+
+    /**
+     * 从 t_seat 加载列车全部站点对余票，整个矩阵一次 SET 写入
+     *
+     * @param trainId 列车 ID
+     */
+    public void load(String trainId) {
+        String cacheKey = TRAIN_PACKED_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trainId);
+        RLock lock = redissonClient.getLock(String.format(LOCK_TRAIN_PACKED_REMAINING_TICKET, trainId));
+        lock.lock();
+        try {
+            if (distributedCache.hasKey(cacheKey)) {
+                return;
+            }
+            List<String> stations = trainStationService.listTrainStationName(trainId);
+            List<Integer> seatTypes = listTrainSeatTypes(trainId);
+            if (stations.size() < 2 || CollUtil.isEmpty(seatTypes)) {
+                return;
+            }
+            int stationCount = stations.size();
+            byte[] matrix = new byte[(1 + pairCount(stationCount) * seatTypes.size()) * 2];
+            writeCounter(matrix, 0, LOADED_FLAG);
+            List<RouteSeatTypeCountDTO> routeSeatTypeCounts = seatMapper.listRouteSeatTypeCount(Lists.newArrayList(Long.parseLong(trainId)));
+            for (RouteSeatTypeCountDTO each : routeSeatTypeCounts) {
+                int startIndex = stations.indexOf(each.getStartStation());
+                int endIndex = stations.indexOf(each.getEndStation());
+                int seatTypeIndex = seatTypes.indexOf(each.getSeatType());
+                if (startIndex >= 0 && endIndex > startIndex && seatTypeIndex >= 0) {
+                    writeCounter(matrix, counterIndex(stationCount, seatTypes.size(), startIndex, endIndex, seatTypeIndex), each.getSeatCount());
+                }
+            }
+            byte[] actualKey = (cacheRedisPrefix + cacheKey).getBytes();
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                    .set(actualKey, matrix, Expiration.from(ADVANCE_TICKET_DAY, TimeUnit.DAYS), RedisStringCommands.SetOption.upsert()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(String trainId, String departure, String arrival, boolean overlap, Map<Integer, Integer> seatTypeDelta) {
+        if (CollUtil.isEmpty(seatTypeDelta)) {
+            return;
+        }
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        List<Integer> seatTypes = listTrainSeatTypes(trainId);
+        int startIndex = stations.indexOf(departure);
+        int endIndex = stations.indexOf(arrival);
+        if (CollUtil.isEmpty(seatTypes) || startIndex < 0 || endIndex <= startIndex) {
+            return;
+        }
+        List<String> args = new ArrayList<>(5 + seatTypeDelta.size() * 2);
+        args.add(String.valueOf(stations.size()));
+        args.add(String.valueOf(seatTypes.size()));
+        args.add(String.valueOf(startIndex));
+        args.add(String.valueOf(endIndex));
+        args.add(overlap ? "1" : "0");
+        seatTypeDelta.forEach((seatType, delta) -> {
+            int seatTypeIndex = seatTypes.indexOf(seatType);
+            if (seatTypeIndex >= 0) {
+                args.add(String.valueOf(seatTypeIndex));
+                args.add(String.valueOf(delta));
+            }
+        });
+        DefaultRedisScript<Long> actual = Singleton.get(LUA_TRAIN_PACKED_REMAINING_TICKET_ADJUST_PATH, () -> {
+            DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TRAIN_PACKED_REMAINING_TICKET_ADJUST_PATH)));
+            redisScript.setResultType(Long.class);
+            return redisScript;
+        });
+        Assert.notNull(actual);
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        stringRedisTemplate.execute(actual, Lists.newArrayList(TRAIN_PACKED_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trainId)), args.toArray());
+    }
+
+    /**
+     * 读取命令第一个计数器为已加载标识，之后按座位类型顺序读取出发站到到达站计数器，站点不合法时返回空
+     */
+    private BitFieldSubCommands buildReadCommands(String trainId, String departure, String arrival, List<Integer> trainSeatTypes) {
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        int startIndex = stations.indexOf(departure);
+        int endIndex = stations.indexOf(arrival);
+        if (CollUtil.isEmpty(trainSeatTypes) || startIndex < 0 || endIndex <= startIndex) {
+            return null;
+        }
+        BitFieldSubCommands subCommands = BitFieldSubCommands.create()
+                .get(COUNTER_TYPE).valueAt(BitFieldSubCommands.Offset.offset(0).multipliedByTypeLength());
+        for (int i = 0; i < trainSeatTypes.size(); i++) {
+            int counterIndex = counterIndex(stations.size(), trainSeatTypes.size(), startIndex, endIndex, i);
+            subCommands = subCommands.get(COUNTER_TYPE).valueAt(BitFieldSubCommands.Offset.offset(counterIndex).multipliedByTypeLength());
+        }
+        return subCommands;
+    }
+
+    private List<Integer> listTrainSeatTypes(String trainId) {
+        TrainDO trainDO = distributedCache.safeGet(
+                TRAIN_INFO + trainId,
+                TrainDO.class,
+                () -> trainMapper.selectById(trainId),
+                ADVANCE_TICKET_DAY,
+                TimeUnit.DAYS
+        );
+        return trainDO == null ? null : VehicleTypeEnum.findSeatTypesByCode(trainDO.getTrainType());
+    }
+
+    private boolean isLoaded(List<Long> values) {
+        return CollUtil.isNotEmpty(values) && values.get(0) != null && values.get(0) == LOADED_FLAG;
+    }
+
+    private Map<Integer, Integer> toRemainingTicket(List<Integer> seatTypes, List<Integer> trainSeatTypes, List<Long> values) {
+        Map<Integer, Integer> result = new LinkedHashMap<>(seatTypes.size());
+        for (Integer seatType : seatTypes) {
+            int seatTypeIndex = trainSeatTypes.indexOf(seatType);
+            result.put(seatType, seatTypeIndex < 0 ? 0 : values.get(seatTypeIndex + 1).intValue());
+        }
+        return result;
+    }
+
+    private Map<Integer, Integer> zeroRemainingTicket(List<Integer> seatTypes) {
+        Map<Integer, Integer> result = new LinkedHashMap<>();
+        if (seatTypes != null) {
+            seatTypes.forEach(each -> result.put(each, 0));
+        }
+        return result;
+    }
+
+    /**
+     * BITFIELD 按大端序存放计数器，与 Redis 位偏移顺序一致
+     */
+    private static void writeCounter(byte[] matrix, int counterIndex, int value) {
+        int actual = Math.min(Math.max(value, 0), COUNTER_MAX_VALUE);
+        matrix[counterIndex * 2] = (byte) (actual >>> 8);
+        matrix[counterIndex * 2 + 1] = (byte) actual;
+    }
+
+    private static int pairCount(int stationCount) {
+        return stationCount * (stationCount - 1) / 2;
+    }
+
+    /**
+     * 站点对 (i, j) 按出发站优先排列，与 Lua 脚本中的下标计算一致
+     */
+    private static int counterIndex(int stationCount, int seatTypeCount, int startIndex, int endIndex, int seatTypeIndex) {
+        int pairIndex = startIndex * (2 * stationCount - startIndex - 1) / 2 + (endIndex - startIndex - 1);
+        return 1 + pairIndex * seatTypeCount + seatTypeIndex;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.VehicleTypeEnum;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteSeatTypeCountDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.fare.TrainFareMatrixManager;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenBucket;
+import org.opengoofy.index12306.biz.ticketservice.service.route.TrainRouteIndexManager;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
+import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.Index12306Constant.ADVANCE_TICKET_DAY;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_INFO;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_PRE_SALE_WARMUP_READY;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_REMAINING_TICKET;
+
+/**
+ * 列车开售前缓存预热
+ * <p>
+ * 令牌桶与站点余票缓存原本在开售后首次购票、查询时加锁逐站点对查询 t_seat 构建，恰好落在流量最高的时刻。
+ * 预热按批次一次分组查询多个列车全部站点对余票，在线程池中并行写入令牌桶、站点余票（Pipeline 批量写入）、
+ * 列车信息、路线索引以及票价矩阵，完成后写入预热完成标识
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TrainPreSaleWarmer {
+
+    private final SeatMapper seatMapper;
+    private final DistributedCache distributedCache;
+    private final TrainRouteIndexManager trainRouteIndexManager;
+    private final TrainFareMatrixManager trainFareMatrixManager;
+    private final TicketAvailabilityTokenBucket ticketAvailabilityTokenBucket;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
+    private final ThreadPoolExecutor preSaleWarmupThreadPoolExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ticket.pre-sale-warmup.batch-size:50}")
+    private int batchSize;
+    @Value("${ticket.pre-sale-warmup.timeout-seconds:120}")
+    private long timeoutSeconds;
+    @Value("${framework.cache.redis.prefix:}")
+    private String cacheRedisPrefix;
+
+    /**
+     * 列车缓存是否已完成开售前预热
+     *
+     * @param trainId 列车 ID
+     */
+    public boolean isReady(String trainId) {
+        return distributedCache.hasKey(TRAIN_PRE_SALE_WARMUP_READY + TrainCacheKeyUtil.hashTag(trainId));
+    }
+
+    /**
+     * 预热列车缓存，已完成预热的列车跳过
+     *
+     * @param trains 列车集合
+     * @return 本次预热完成的列车数量
+     */
+    public int warmUp(List<TrainDO> trains) {
+        List<TrainDO> pendingTrains = filterPendingTrains(trains);
+        int readyCount = 0;
+        for (List<TrainDO> batch : Lists.partition(pendingTrains, batchSize)) {
+            List<Long> trainIds = batch.stream().map(TrainDO::getId).collect(Collectors.toList());
+            Map<Long, List<RouteSeatTypeCountDTO>> routeSeatTypeCountMap = seatMapper.listRouteSeatTypeCount(trainIds).stream()
+                    .collect(Collectors.groupingBy(RouteSeatTypeCountDTO::getTrainId));
+            List<CompletableFuture<Boolean>> futures = batch.stream()
+                    .map(each -> CompletableFuture.supplyAsync(
+                            () -> warmUp(each, routeSeatTypeCountMap.getOrDefault(each.getId(), List.of())),
+                            preSaleWarmupThreadPoolExecutor))
+                    .collect(Collectors.toList());
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(timeoutSeconds, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return readyCount;
+            } catch (Exception ex) {
+                log.error("列车开售前缓存预热批次未在 {} 秒内完成，列车：{}", timeoutSeconds, trainIds, ex);
+            }
+            readyCount += (int) futures.stream().filter(each -> Objects.equals(each.getNow(false), Boolean.TRUE)).count();
+        }
+        return readyCount;
+    }
+
+    private boolean warmUp(TrainDO trainDO, List<RouteSeatTypeCountDTO> routeSeatTypeCounts) {
+        String trainId = String.valueOf(trainDO.getId());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            distributedCache.put(TRAIN_INFO + trainId, trainDO, ADVANCE_TICKET_DAY, TimeUnit.DAYS);
+            // 路线索引以及票价矩阵为节点本地缓存，仅预热执行任务的节点
+            List<String> stations = trainRouteIndexManager.getRouteIndex(trainId).getStations();
+            trainFareMatrixManager.getFareMatrix(trainId);
+            if (stations.size() < 2) {
+                log.warn("列车 {} 经停站不足，跳过开售前缓存预热", trainId);
+                return false;
+            }
+            List<Integer> seatTypes = VehicleTypeEnum.findSeatTypesByCode(trainDO.getTrainType());
+            Map<String, Map<String, String>> remainingTicketMaps = new LinkedHashMap<>();
+            for (int i = 0; i < stations.size() - 1; i++) {
+                for (int j = i + 1; j < stations.size(); j++) {
+                    Map<String, String> remainingTicketMap = new LinkedHashMap<>();
+                    seatTypes.forEach(each -> remainingTicketMap.put(String.valueOf(each), "0"));
+                    remainingTicketMaps.put(TrainCacheKeyUtil.buildKeySuffix(trainId, stations.get(i), stations.get(j)), remainingTicketMap);
+                }
+            }
+            for (RouteSeatTypeCountDTO each : routeSeatTypeCounts) {
+                Map<String, String> remainingTicketMap = remainingTicketMaps.get(TrainCacheKeyUtil.buildKeySuffix(trainId, each.getStartStation(), each.getEndStation()));
+                if (remainingTicketMap != null) {
+                    remainingTicketMap.put(String.valueOf(each.getSeatType()), String.valueOf(each.getSeatCount()));
+                }
+            }
+            // 与令牌桶批量初始化共用写入流程，复用本批次已查询的站点对余票
+            ticketAvailabilityTokenBucket.putTokenInBucket(List.of(trainDO), Map.of(trainDO.getId(), routeSeatTypeCounts));
+            if (trainSegmentRemainingTicketCache.isEnabled()) {
+                trainSegmentRemainingTicketCache.load(trainId);
+            } else if (trainPackedRemainingTicketCache.isEnabled()) {
+                trainPackedRemainingTicketCache.load(trainId);
+            } else {
+                putRemainingTicket(remainingTicketMaps);
+            }
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            stringRedisTemplate.opsForValue().set(
+                    TRAIN_PRE_SALE_WARMUP_READY + TrainCacheKeyUtil.hashTag(trainId),
+                    String.valueOf(System.currentTimeMillis()),
+                    ADVANCE_TICKET_DAY,
+                    TimeUnit.DAYS
+            );
+            meterRegistry.counter("ticket.pre-sale.warmup", "result", "ready").increment();
+            return true;
+        } catch (Throwable ex) {
+            log.error("列车 {} 开售前缓存预热失败", trainId, ex);
+            meterRegistry.counter("ticket.pre-sale.warmup", "result", "failed").increment();
+            return false;
+        } finally {
+            sample.stop(meterRegistry.timer("ticket.pre-sale.warmup.duration"));
+        }
+    }
+
+    /**
+     * Pipeline 写入站点余票，使用 HSETNX 避免覆盖已被购票扣减的余票
+     */
+    private void putRemainingTicket(Map<String, Map<String, String>> remainingTicketMaps) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        long expireSeconds = TimeUnit.DAYS.toSeconds(ADVANCE_TICKET_DAY);
+        stringRedisTemplate.executePipelined((RedisCallback<String>) connection -> {
+            remainingTicketMaps.forEach((keySuffix, remainingTicketMap) -> {
+                byte[] cacheKey = (cacheRedisPrefix + TRAIN_STATION_REMAINING_TICKET + keySuffix).getBytes();
+                remainingTicketMap.forEach((seatType, count) -> connection.hashCommands().hSetNX(cacheKey, seatType.getBytes(), count.getBytes()));
+                connection.keyCommands().expire(cacheKey, expireSeconds);
+            });
+            return null;
+        });
+    }
+
+    private List<TrainDO> filterPendingTrains(List<TrainDO> trains) {
+        if (CollUtil.isEmpty(trains)) {
+            return List.of();
+        }
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<Object> readyResults = stringRedisTemplate.executePipelined((RedisCallback<String>) connection -> {
+            trains.forEach(each -> connection.keyCommands().exists((cacheRedisPrefix + TRAIN_PRE_SALE_WARMUP_READY + TrainCacheKeyUtil.hashTag(each.getId())).getBytes()));
+            return null;
+        });
+        List<TrainDO> pendingTrains = new ArrayList<>();
+        for (int i = 0; i < trains.size(); i++) {
+            if (!Objects.equals(readyResults.get(i), Boolean.TRUE)) {
+                pendingTrains.add(trains.get(i));
+            }
+        }
+        return pendingTrains;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.google.common.collect.Lists;
+import lombok.RequiredArgsConstructor;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.VehicleTypeEnum;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainMapper;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.SegmentSeatTypeCountDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.TicketListDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
+import org.opengoofy.index12306.framework.starter.bases.Singleton;
+import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.opengoofy.index12306.framework.starter.common.toolkit.Assert;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.Index12306Constant.ADVANCE_TICKET_DAY;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.LOCK_TRAIN_SEGMENT_REMAINING_TICKET;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_INFO;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_SEGMENT_REMAINING_TICKET;
+
+/**
+ * 列车基本区间余票缓存
+ * <p>
+ * 开启方式：ticket.remaining-ticket.mode=segment。每个列车只维护一个 Hash，Field 为 座位类型_基本区间下标，
+ * 存储量以及购票时的写放大由站点数量的平方降为线性；任意出发站到到达站的余票在读取时取途经基本区间余票的最小值。
+ * 最小值只是可售座位的上限：原站点对余票缓存按整个区间均空闲的座位计数，而座位在不同基本区间被分段占用时，
+ * 每个基本区间都可能有空座却没有一个座位在全程空闲，最小值会大于实际可售数量。读取结果用于展示以及提前拦截一定售罄的请求，
+ * 是否有票最终以选座结果为准
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Component
+@RequiredArgsConstructor
+public class TrainSegmentRemainingTicketCache {
+
+    private final SeatMapper seatMapper;
+    private final TrainMapper trainMapper;
+    private final TrainStationService trainStationService;
+    private final DistributedCache distributedCache;
+    private final RedissonClient redissonClient;
+
+    @Value("${ticket.remaining-ticket.mode:route}")
+    private String remainingTicketMode;
+    @Value("${framework.cache.redis.prefix:}")
+    private String cacheRedisPrefix;
+
+    private static final String LUA_TRAIN_SEGMENT_REMAINING_TICKET_ADJUST_PATH = "lua/train_segment_remaining_ticket_adjust.lua";
+
+    /**
+     * 是否开启基本区间余票模式
+     */
+    public boolean isEnabled() {
+        return StrUtil.equals(remainingTicketMode, "segment");
+    }
+
+    /**
+     * 获取列车出发站到到达站各座位类型余票
+     *
+     * @param trainId   列车 ID
+     * @param departure 出发站
+     * @param arrival   到达站
+     * @param seatTypes 座位类型集合
+     * @return 座位类型 -> 余票数量
+     */
+    public Map<Integer, Integer> listRemainingTicket(String trainId, String departure, String arrival, List<Integer> seatTypes) {
+        List<String> fields = buildFields(trainId, departure, arrival, seatTypes);
+        if (fields.isEmpty()) {
+            return zeroRemainingTicket(seatTypes);
+        }
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        String cacheKey = TRAIN_SEGMENT_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trainId);
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(cacheKey, new ArrayList<>(fields));
+        if (values.contains(null)) {
+            load(trainId);
+            values = stringRedisTemplate.opsForHash().multiGet(cacheKey, new ArrayList<>(fields));
+        }
+        return minBySeatType(seatTypes, values);
+    }
+
+    /**
+     * 批量获取列车余票，一次管道请求读取全部列车基本区间余票，座位类型按列车类型获取
+     *
+     * @param trains 列车集合
+     * @return 与列车集合顺序一致的 座位类型 -> 余票数量
+     */
+    public List<Map<Integer, Integer>> batchListRemainingTicket(List<TicketListDTO> trains) {
+        List<List<Integer>> seatTypesList = new ArrayList<>(trains.size());
+        List<List<String>> fieldsList = new ArrayList<>(trains.size());
+        for (TicketListDTO each : trains) {
+            List<Integer> seatTypes = VehicleTypeEnum.findSeatTypesByCode(each.getTrainType());
+            seatTypesList.add(seatTypes);
+            fieldsList.add(buildFields(each.getTrainId(), each.getDeparture(), each.getArrival(), seatTypes));
+        }
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<Object> pipelineResults = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < trains.size(); i++) {
+                byte[][] fields = fieldsList.get(i).stream().map(String::getBytes).toArray(byte[][]::new);
+                connection.hashCommands().hMGet((cacheRedisPrefix + TRAIN_SEGMENT_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trains.get(i).getTrainId())).getBytes(), fields);
+            }
+            return null;
+        });
+        List<Map<Integer, Integer>> results = new ArrayList<>(trains.size());
+        for (int i = 0; i < trains.size(); i++) {
+            TicketListDTO train = trains.get(i);
+            List<Integer> seatTypes = seatTypesList.get(i);
+            List<?> values = (List<?>) pipelineResults.get(i);
+            if (fieldsList.get(i).isEmpty()) {
+                results.add(zeroRemainingTicket(seatTypes));
+            } else if (values == null || values.contains(null)) {
+                // 未加载或已过期的列车单独加载
+                results.add(listRemainingTicket(train.getTrainId(), train.getDeparture(), train.getArrival(), seatTypes));
+            } else {
+                results.add(minBySeatType(seatTypes, values));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 购票后扣减途经基本区间余票，一次 Lua 脚本原子完成
+     *
+     * @param trainId       列车 ID
+     * @param departure     出发站
+     * @param arrival       到达站
+     * @param seatTypeCount 座位类型 -> 购票数量
+     */
+    public void decrease(String trainId, String departure, String arrival, Map<Integer, Integer> seatTypeCount) {
+        Map<Integer, Integer> seatTypeDelta = new HashMap<>(seatTypeCount.size());
+        seatTypeCount.forEach((seatType, count) -> seatTypeDelta.put(seatType, -count));
+        adjust(trainId, departure, arrival, seatTypeDelta);
+    }
+
+    /**
+     * 取消订单或超时关闭后回滚途经基本区间余票
+     *
+     * @param trainId       列车 ID
+     * @param departure     出发站
+     * @param arrival       到达站
+     * @param seatTypeCount 座位类型 -> 回滚数量
+     */
+    public void increase(String trainId, String departure, String arrival, Map<Integer, Integer> seatTypeCount) {
+        adjust(trainId, departure, arrival, seatTypeCount);
+    }
+
+    /**
+     * 按 t_seat 区间记录变更余票，非相邻站点区间记录直接忽略，一般为 Canal 监听 Binlog 触发
+     *
+     * @param trainId       列车 ID
+     * @param startStation  区间起始站
+     * @param endStation    区间终点站
+     * @param seatTypeDelta 座位类型 -> 余票变更数量
+     */
+    public void adjustSegment(String trainId, String startStation, String endStation, Map<Integer, Integer> seatTypeDelta) {
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        int startIndex = stations.indexOf(startStation);
+        if (startIndex < 0 || startIndex + 1 >= stations.size() || !StrUtil.equals(stations.get(startIndex + 1), endStation)) {
+            return;
+        }
+        executeAdjust(trainId, startIndex, startIndex + 1, seatTypeDelta);
+    }
+
+    /**
+     * 删除列车基本区间余票，下次读取时从数据库重新加载
+     *
+     * @param trainId 列车 ID
+     */
+    public void invalidate(String trainId) {
+        distributedCache.delete(TRAIN_SEGMENT_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trainId));
+    }
+
+    /**
+     * 从 t_seat 加载列车全部基本区间余票
+     *
+     * @param trainId 列车 ID
+     */
+    public void load(String trainId) {
+        String cacheKey = TRAIN_SEGMENT_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trainId);
+        RLock lock = redissonClient.getLock(String.format(LOCK_TRAIN_SEGMENT_REMAINING_TICKET, trainId));
+        lock.lock();
+        try {
+            if (distributedCache.hasKey(cacheKey)) {
+                return;
+            }
+            TrainDO trainDO = distributedCache.safeGet(
+                    TRAIN_INFO + trainId,
+                    TrainDO.class,
+                    () -> trainMapper.selectById(trainId),
+                    ADVANCE_TICKET_DAY,
+                    TimeUnit.DAYS
+            );
+            List<String> stations = trainStationService.listTrainStationName(trainId);
+            List<Integer> seatTypes = VehicleTypeEnum.findSeatTypesByCode(trainDO.getTrainType());
+            if (stations.size() < 2 || CollUtil.isEmpty(seatTypes)) {
+                return;
+            }
+            List<RouteDTO> segmentRoutes = new ArrayList<>(stations.size() - 1);
+            Map<String, Integer> stationIndexMap = new HashMap<>();
+            for (int i = 0; i < stations.size() - 1; i++) {
+                segmentRoutes.add(new RouteDTO(stations.get(i), stations.get(i + 1)));
+                stationIndexMap.put(stations.get(i), i);
+            }
+            Map<String, String> segmentRemainingTicket = new LinkedHashMap<>();
+            for (Integer seatType : seatTypes) {
+                for (int i = 0; i < segmentRoutes.size(); i++) {
+                    segmentRemainingTicket.put(buildField(seatType, i), "0");
+                }
+            }
+            List<SegmentSeatTypeCountDTO> segmentSeatTypeCounts = seatMapper.listSegmentSeatTypeCount(Long.parseLong(trainId), segmentRoutes);
+            for (SegmentSeatTypeCountDTO each : segmentSeatTypeCounts) {
+                Integer segment = stationIndexMap.get(each.getStartStation());
+                if (segment != null) {
+                    segmentRemainingTicket.put(buildField(each.getSeatType(), segment), String.valueOf(each.getSeatCount()));
+                }
+            }
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            stringRedisTemplate.opsForHash().putAll(cacheKey, segmentRemainingTicket);
+            stringRedisTemplate.expire(cacheKey, ADVANCE_TICKET_DAY, TimeUnit.DAYS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(String trainId, String departure, String arrival, Map<Integer, Integer> seatTypeDelta) {
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        int startIndex = stations.indexOf(departure);
+        int endIndex = stations.indexOf(arrival);
+        if (startIndex < 0 || endIndex <= startIndex) {
+            return;
+        }
+        executeAdjust(trainId, startIndex, endIndex, seatTypeDelta);
+    }
+
+    private void executeAdjust(String trainId, int startIndex, int endIndex, Map<Integer, Integer> seatTypeDelta) {
+        if (CollUtil.isEmpty(seatTypeDelta)) {
+            return;
+        }
+        DefaultRedisScript<Long> actual = Singleton.get(LUA_TRAIN_SEGMENT_REMAINING_TICKET_ADJUST_PATH, () -> {
+            DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TRAIN_SEGMENT_REMAINING_TICKET_ADJUST_PATH)));
+            redisScript.setResultType(Long.class);
+            return redisScript;
+        });
+        Assert.notNull(actual);
+        List<String> args = new ArrayList<>(2 + seatTypeDelta.size() * 2);
+        args.add(String.valueOf(startIndex));
+        args.add(String.valueOf(endIndex));
+        seatTypeDelta.forEach((seatType, delta) -> {
+            args.add(String.valueOf(seatType));
+            args.add(String.valueOf(delta));
+        });
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        stringRedisTemplate.execute(actual, Lists.newArrayList(TRAIN_SEGMENT_REMAINING_TICKET + TrainCacheKeyUtil.hashTag(trainId)), args.toArray());
+    }
+
+    private List<String> buildFields(String trainId, String departure, String arrival, List<Integer> seatTypes) {
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        int startIndex = stations.indexOf(departure);
+        int endIndex = stations.indexOf(arrival);
+        if (CollUtil.isEmpty(seatTypes) || startIndex < 0 || endIndex <= startIndex) {
+            return new ArrayList<>();
+        }
+        List<String> fields = new ArrayList<>(seatTypes.size() * (endIndex - startIndex));
+        for (Integer seatType : seatTypes) {
+            for (int segment = startIndex; segment < endIndex; segment++) {
+                fields.add(buildField(seatType, segment));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * 字段按座位类型分组且每组区间数量一致，按组取最小值
+     */
+    private Map<Integer, Integer> minBySeatType(List<Integer> seatTypes, List<?> values) {
+        Map<Integer, Integer> result = new LinkedHashMap<>(seatTypes.size());
+        int segmentCount = values.size() / seatTypes.size();
+        for (int i = 0; i < seatTypes.size(); i++) {
+            int min = Integer.MAX_VALUE;
+            for (int j = i * segmentCount; j < (i + 1) * segmentCount; j++) {
+                Object value = values.get(j);
+                min = Math.min(min, value == null ? 0 : Integer.parseInt(value.toString()));
+            }
+            result.put(seatTypes.get(i), Math.max(min, 0));
+        }
+        return result;
+    }
+
+    private Map<Integer, Integer> zeroRemainingTicket(List<Integer> seatTypes) {
+        Map<Integer, Integer> result = new LinkedHashMap<>();
+        if (seatTypes != null) {
+            seatTypes.forEach(each -> result.put(each, 0));
+        }
+        return result;
+    }
+
+    private static String buildField(Integer seatType, int segment) {
+        return seatType + "_" + segment;
+    }
+}
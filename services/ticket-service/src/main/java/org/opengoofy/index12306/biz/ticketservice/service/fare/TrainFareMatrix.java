@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.fare;
+
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainStationPriceDO;
+import org.opengoofy.index12306.biz.ticketservice.service.route.TrainRouteIndex;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 列车票价矩阵
+ * <p>
+ * 一个列车的全部 t_train_station_price 记录压缩为 出发站序号 × 到达站序号 × 座位类型 的 int 数组，价格单位为分；
+ * 构建完成后不可变，购票时按乘车人取价、查询时按车次列出座位类型价格均无需访问数据库以及解析 JSON
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public final class TrainFareMatrix {
+
+    /**
+     * 路线不存在该座位类型票价
+     */
+    public static final int ABSENT = -1;
+
+    /**
+     * 列车路线索引，提供站点序号
+     */
+    private final TrainRouteIndex routeIndex;
+
+    /**
+     * 列车包含的座位类型，升序
+     */
+    private final int[] seatTypes;
+
+    /**
+     * 座位类型 -> 座位类型下标，不存在为 -1
+     */
+    private final int[] seatTypeSlots;
+
+    /**
+     * (出发站序号 * 站点数量 + 到达站序号) * 座位类型数量 + 座位类型下标 -> 价格
+     */
+    private final int[] prices;
+
+    public TrainFareMatrix(TrainRouteIndex routeIndex, List<TrainStationPriceDO> trainStationPrices) {
+        this.routeIndex = routeIndex;
+        this.seatTypes = trainStationPrices.stream()
+                .mapToInt(TrainStationPriceDO::getSeatType)
+                .distinct()
+                .sorted()
+                .toArray();
+        this.seatTypeSlots = new int[seatTypes.length == 0 ? 0 : seatTypes[seatTypes.length - 1] + 1];
+        Arrays.fill(seatTypeSlots, -1);
+        for (int i = 0; i < seatTypes.length; i++) {
+            seatTypeSlots[seatTypes[i]] = i;
+        }
+        int stationSize = routeIndex.getStations().size();
+        this.prices = new int[stationSize * stationSize * seatTypes.length];
+        Arrays.fill(prices, ABSENT);
+        for (TrainStationPriceDO each : trainStationPrices) {
+            int departureOrdinal = routeIndex.ordinal(each.getDeparture());
+            int arrivalOrdinal = routeIndex.ordinal(each.getArrival());
+            if (departureOrdinal < 0 || arrivalOrdinal < 0 || each.getPrice() == null) {
+                continue;
+            }
+            prices[(departureOrdinal * stationSize + arrivalOrdinal) * seatTypes.length + seatTypeSlots[each.getSeatType()]] = each.getPrice();
+        }
+    }
+
+    /**
+     * 获取路线座位类型票价
+     *
+     * @param departure 出发站
+     * @param arrival   到达站
+     * @param seatType  座位类型
+     * @return 票价，单位分，不存在返回 {@link #ABSENT}
+     */
+    public int getPrice(String departure, String arrival, Integer seatType) {
+        int base = routeBase(departure, arrival);
+        if (base < 0 || seatType == null || seatType < 0 || seatType >= seatTypeSlots.length || seatTypeSlots[seatType] < 0) {
+            return ABSENT;
+        }
+        return prices[base + seatTypeSlots[seatType]];
+    }
+
+    /**
+     * 获取路线存在票价的座位类型
+     *
+     * @param departure 出发站
+     * @param arrival   到达站
+     * @return 座位类型集合，升序
+     */
+    public int[] listSeatType(String departure, String arrival) {
+        int base = routeBase(departure, arrival);
+        if (base < 0) {
+            return new int[0];
+        }
+        int count = 0;
+        int[] result = new int[seatTypes.length];
+        for (int i = 0; i < seatTypes.length; i++) {
+            if (prices[base + i] != ABSENT) {
+                result[count++] = seatTypes[i];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private int routeBase(String departure, String arrival) {
+        int departureOrdinal = routeIndex.ordinal(departure);
+        int arrivalOrdinal = routeIndex.ordinal(arrival);
+        if (departureOrdinal < 0 || arrivalOrdinal < 0) {
+            return -1;
+        }
+        return (departureOrdinal * routeIndex.getStations().size() + arrivalOrdinal) * seatTypes.length;
+    }
+}
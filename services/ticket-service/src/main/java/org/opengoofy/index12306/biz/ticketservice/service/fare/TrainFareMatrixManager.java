@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.fare;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import lombok.RequiredArgsConstructor;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainStationPriceDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainStationPriceMapper;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TopicInvalidatedLocalCache;
+import org.opengoofy.index12306.biz.ticketservice.service.route.TrainRouteIndexManager;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_FARE_MATRIX_INVALIDATE_TOPIC;
+
+/**
+ * 列车票价矩阵管理器
+ * <p>
+ * 每个列车的票价只查询一次数据库，构建票价矩阵后缓存在本地，购票与车票查询共用；
+ * 票价变更时由 Canal 监听 t_train_station_price Binlog 通过 Redis 发布订阅通知所有节点失效，过期时间兜底刷新。
+ * 票价矩阵按路线索引的站点下标存储，路线索引失效时同时失效，避免经停站变更后按旧下标读取票价
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Component
+@RequiredArgsConstructor
+public class TrainFareMatrixManager implements InitializingBean {
+
+    private final TrainStationPriceMapper trainStationPriceMapper;
+    private final TrainRouteIndexManager trainRouteIndexManager;
+    private final RedissonClient redissonClient;
+
+    @Value("${ticket.fare-matrix.expire-minutes:30}")
+    private long expireMinutes;
+
+    /**
+     * 列车 ID -> 列车票价矩阵
+     */
+    private TopicInvalidatedLocalCache<TrainFareMatrix> fareMatrixCache;
+
+    @Override
+    public void afterPropertiesSet() {
+        fareMatrixCache = new TopicInvalidatedLocalCache<>("票价矩阵", redissonClient, TRAIN_FARE_MATRIX_INVALIDATE_TOPIC, expireMinutes, this::loadFareMatrix);
+        // 路线索引失效通知已发送到所有节点，票价矩阵只需失效本地
+        trainRouteIndexManager.onInvalidate(fareMatrixCache::invalidateLocal);
+    }
+
+    /**
+     * 获取列车票价矩阵
+     *
+     * @param trainId 列车 ID
+     * @return 列车票价矩阵
+     */
+    public TrainFareMatrix getFareMatrix(String trainId) {
+        return fareMatrixCache.get(trainId);
+    }
+
+    /**
+     * 通知所有节点失效列车票价矩阵，下次访问时重新从数据库加载
+     *
+     * @param trainId 列车 ID
+     */
+    public void invalidate(String trainId) {
+        fareMatrixCache.invalidate(trainId);
+    }
+
+    private TrainFareMatrix loadFareMatrix(String trainId) {
+        LambdaQueryWrapper<TrainStationPriceDO> queryWrapper = Wrappers.lambdaQuery(TrainStationPriceDO.class)
+                .eq(TrainStationPriceDO::getTrainId, trainId)
+                .select(TrainStationPriceDO::getDeparture, TrainStationPriceDO::getArrival, TrainStationPriceDO::getSeatType, TrainStationPriceDO::getPrice);
+        List<TrainStationPriceDO> trainStationPriceDOList = trainStationPriceMapper.selectList(queryWrapper);
+        return new TrainFareMatrix(trainRouteIndexManager.getRouteIndex(trainId), trainStationPriceDOList);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.admission;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.TicketPurchaseErrorCodeEnum;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenBucket;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 购票准入控制器
+ * <p>
+ * 按列车 ID + 座位类型统计进行中的购票请求以及请求耗时，在获取购票锁之前提前拒绝超出容量的请求：
+ * 1. 同时进行中的请求数量上限为剩余令牌的若干倍，并限制在 [minWaiters, maxWaiters] 区间
+ * 2. 请求平均耗时超过 maxQueueWaitMs 时说明锁排队已经积压，超过 minWaiters 的新请求直接拒绝
+ * 被拒绝的请求返回 {@link TicketPurchaseErrorCodeEnum#PURCHASE_BUSY}，与余票不足区分，前端可提示用户稍后重试
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PurchaseTicketAdmissionController implements InitializingBean {
+
+    private final TicketAvailabilityTokenBucket ticketAvailabilityTokenBucket;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ticket.admission.enabled:false}")
+    private boolean enabled;
+    @Value("${ticket.admission.waiter-multiplier:2}")
+    private int waiterMultiplier;
+    @Value("${ticket.admission.min-waiters:8}")
+    private int minWaiters;
+    @Value("${ticket.admission.max-waiters:256}")
+    private int maxWaiters;
+    @Value("${ticket.admission.max-queue-wait-ms:3000}")
+    private long maxQueueWaitMs;
+    @Value("${ticket.admission.token-refresh-ms:500}")
+    private long tokenRefreshMs;
+
+    /**
+     * 列车 ID_座位类型 -> 准入状态
+     */
+    private final Cache<String, AdmissionState> admissionStates = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .build();
+
+    /**
+     * 列车 ID_出发站_到达站_座位类型 -> 剩余令牌，短时间缓存避免每个请求读取一次 Redis
+     */
+    private Cache<String, Optional<Integer>> remainingTokenCache;
+
+    private Counter rejectedCounter;
+
+    @Override
+    public void afterPropertiesSet() {
+        remainingTokenCache = Caffeine.newBuilder()
+                .expireAfterWrite(tokenRefreshMs, TimeUnit.MILLISECONDS)
+                .maximumSize(10000)
+                .build();
+        rejectedCounter = meterRegistry.counter("ticket.purchase.admission", "result", "rejected");
+    }
+
+    /**
+     * 申请购票准入，多个座位类型需要全部准入成功
+     *
+     * @param requestParam 购票请求参数
+     * @return 准入凭证，购票结束后必须关闭
+     */
+    public Admission tryAdmit(PurchaseTicketReqDTO requestParam) {
+        if (!enabled) {
+            return Admission.NOOP;
+        }
+        List<Integer> seatTypes = requestParam.getPassengers().stream()
+                .map(PurchaseTicketPassengerDetailDTO::getSeatType)
+                .distinct()
+                .sorted()
+                .toList();
+        List<AdmissionState> admitted = new ArrayList<>(seatTypes.size());
+        for (Integer seatType : seatTypes) {
+            String key = requestParam.getTrainId() + "_" + seatType;
+            AdmissionState state = admissionStates.get(key, each -> new AdmissionState());
+            if (!state.tryAcquire(capacity(requestParam, seatType))) {
+                admitted.forEach(AdmissionState::release);
+                rejectedCounter.increment();
+                log.warn("列车 {} 座位类型 {} 购票请求积压，拒绝准入，进行中请求：{}，平均耗时：{}ms",
+                        requestParam.getTrainId(), seatType, state.inFlight.get(), TimeUnit.NANOSECONDS.toMillis(state.averageNanos));
+                throw new ServiceException(TicketPurchaseErrorCodeEnum.PURCHASE_BUSY);
+            }
+            admitted.add(state);
+        }
+        return new Admission(admitted, System.nanoTime());
+    }
+
+    /**
+     * 计算同时进行中的请求容量，剩余令牌以本次请求的出发站与到达站估算
+     */
+    private int capacity(PurchaseTicketReqDTO requestParam, Integer seatType) {
+        // 剩余令牌与站点相关，缓存 Key 需包含出发站与到达站，避免同一车次不同站点的请求共用首个请求的令牌数量
+        String tokenKey = StrUtil.join("_", requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), seatType);
+        Optional<Integer> remainingToken = remainingTokenCache.get(tokenKey, each -> {
+            try {
+                return Optional.ofNullable(ticketAvailabilityTokenBucket.getRemainingToken(requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), seatType));
+            } catch (Throwable ex) {
+                log.warn("查询列车 {} 剩余令牌失败，按最大容量准入", requestParam.getTrainId(), ex);
+                return Optional.empty();
+            }
+        });
+        return remainingToken
+                .map(each -> Math.max(minWaiters, Math.min(maxWaiters, (long) each * waiterMultiplier)))
+                .map(Long::intValue)
+                .orElse(maxWaiters);
+    }
+
+    /**
+     * 列车 ID + 座位类型维度的准入状态
+     */
+    private final class AdmissionState {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * 请求耗时指数移动平均值，并发更新时允许丢失个别样本
+         */
+        private volatile long averageNanos;
+
+        private boolean tryAcquire(int capacity) {
+            if (averageNanos > TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMs) && inFlight.get() >= minWaiters) {
+                return false;
+            }
+            while (true) {
+                int current = inFlight.get();
+                if (current >= capacity) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            inFlight.decrementAndGet();
+        }
+
+        private void record(long elapsedNanos) {
+            long average = averageNanos;
+            averageNanos = average + (elapsedNanos - average) / 8;
+        }
+    }
+
+    /**
+     * 准入凭证
+     */
+    public static final class Admission implements AutoCloseable {
+
+        private static final Admission NOOP = new Admission(List.of(), 0L);
+
+        private final List<AdmissionState> states;
+        private final long admittedNanos;
+
+        private Admission(List<AdmissionState> states, long admittedNanos) {
+            this.states = states;
+            this.admittedNanos = admittedNanos;
+        }
+
+        @Override
+        public void close() {
+            long elapsedNanos = System.nanoTime() - admittedNanos;
+            for (AdmissionState each : states) {
+                each.record(elapsedNanos);
+                each.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.allocation;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.google.common.collect.Lists;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatStatusEnum;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.SeatDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.CarriageService;
+import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.SelectSeatDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
+import org.opengoofy.index12306.framework.starter.bases.Singleton;
+import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.opengoofy.index12306.framework.starter.common.toolkit.Assert;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.Index12306Constant.ADVANCE_TICKET_DAY;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.LOCK_TRAIN_SEAT_BITMAP;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_SEAT_BITMAP;
+
+/**
+ * 列车座位位图分配器，在 Redis 中通过一次 Lua 脚本原子完成选座以及座位区间占用
+ * <p>
+ * 开启方式：ticket.seat-allocation.mode=redis，座位选择不再依赖列车维度的分布式公平锁，
+ * 多个购票节点可以同时为同一车次分配座位；t_seat 依然由购票事务负责落库
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public final class SeatBitmapAllocator {
+
+    private final SeatMapper seatMapper;
+    private final CarriageService carriageService;
+    private final TrainStationService trainStationService;
+    private final DistributedCache distributedCache;
+    private final RedissonClient redissonClient;
+
+    @Value("${ticket.seat-allocation.mode:local}")
+    private String seatAllocationMode;
+    @Value("${framework.cache.redis.prefix:}")
+    private String cacheRedisPrefix;
+
+    private static final String LUA_TICKET_SEAT_ALLOCATION_PATH = "lua/ticket_seat_allocation.lua";
+
+    /**
+     * 是否开启 Redis 位图选座模式
+     */
+    public boolean isEnabled() {
+        return StrUtil.equals(seatAllocationMode, "redis");
+    }
+
+    /**
+     * 当前座位类型是否由位图分配器选座
+     *
+     * @param seatType 座位类型
+     * @return 是否支持
+     */
+    public boolean supports(Integer seatType) {
+        return isEnabled() && SeatLayoutEnum.findBySeatType(seatType) != null;
+    }
+
+    /**
+     * 分配座位，选座以及占用座位区间在 Redis 中原子完成
+     *
+     * @param requestParam 选择座位实体
+     * @return 乘车人座位
+     */
+    public List<TrainPurchaseTicketRespDTO> allocate(SelectSeatDTO requestParam) {
+        PurchaseTicketReqDTO purchaseTicketReqDTO = requestParam.getRequestParam();
+        String trainId = purchaseTicketReqDTO.getTrainId();
+        Integer seatType = requestParam.getSeatType();
+        SeatLayoutEnum seatLayout = SeatLayoutEnum.findBySeatType(seatType);
+        List<PurchaseTicketPassengerDetailDTO> passengerSeatDetails = requestParam.getPassengerSeatDetails();
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        int startIndex = stations.indexOf(purchaseTicketReqDTO.getDeparture());
+        int endIndex = stations.indexOf(purchaseTicketReqDTO.getArrival());
+        List<String> carriageNumbers = carriageService.listCarriageNumber(trainId, seatType);
+        if (seatLayout == null || startIndex < 0 || endIndex <= startIndex || CollUtil.isEmpty(carriageNumbers)) {
+            throw new ServiceException("站点余票不足，请尝试更换座位类型或选择其它站点");
+        }
+        String bitmapKey = String.format(TRAIN_SEAT_BITMAP, trainId, seatType);
+        ensureSeatBitmap(trainId, seatType, bitmapKey, stations, carriageNumbers, seatLayout);
+        DefaultRedisScript<List> actual = Singleton.get(LUA_TICKET_SEAT_ALLOCATION_PATH, () -> {
+            DefaultRedisScript<List> redisScript = new DefaultRedisScript<>();
+            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TICKET_SEAT_ALLOCATION_PATH)));
+            redisScript.setResultType(List.class);
+            return redisScript;
+        });
+        Assert.notNull(actual);
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<?> selectSeatIndexes = stringRedisTemplate.execute(
+                actual,
+                Lists.newArrayList(bitmapKey),
+                String.valueOf(stations.size() - 1),
+                String.valueOf(startIndex),
+                String.valueOf(endIndex),
+                String.valueOf(passengerSeatDetails.size()),
+                String.valueOf(carriageNumbers.size()),
+                String.valueOf(seatLayout.getRowCount()),
+                String.valueOf(seatLayout.getColumnCount()),
+                buildChooseSeatPattern(purchaseTicketReqDTO.getChooseSeats(), seatLayout)
+        );
+        if (CollUtil.isEmpty(selectSeatIndexes) || selectSeatIndexes.size() != passengerSeatDetails.size()) {
+            throw new ServiceException("站点余票不足，请尝试更换座位类型或选择其它站点");
+        }
+        List<TrainPurchaseTicketRespDTO> actualResult = new ArrayList<>(passengerSeatDetails.size());
+        for (int i = 0; i < selectSeatIndexes.size(); i++) {
+            int globalSeatIndex = ((Number) selectSeatIndexes.get(i)).intValue();
+            PurchaseTicketPassengerDetailDTO currentTicketPassenger = passengerSeatDetails.get(i);
+            TrainPurchaseTicketRespDTO result = new TrainPurchaseTicketRespDTO();
+            result.setCarriageNumber(carriageNumbers.get(globalSeatIndex / seatLayout.getSeatCount()));
+            result.setSeatNumber(seatLayout.toSeatNumber(globalSeatIndex % seatLayout.getSeatCount()));
+            result.setSeatType(currentTicketPassenger.getSeatType());
+            result.setPassengerId(currentTicketPassenger.getPassengerId());
+            actualResult.add(result);
+        }
+        // 脚本执行成功即已占用座位区间，组装完座位后立即登记补偿动作，购票事务未提交时释放
+        requestParam.getCompensations().add(() -> release(trainId, purchaseTicketReqDTO.getDeparture(), purchaseTicketReqDTO.getArrival(), actualResult));
+        return actualResult;
+    }
+
+    /**
+     * 释放座位区间占用，一般为购票失败、订单取消或长时间未支付触发
+     *
+     * @param trainId                    列车 ID
+     * @param departure                  出发站
+     * @param arrival                    到达站
+     * @param trainPurchaseTicketResults 乘车人以及座位信息
+     */
+    public void release(String trainId, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketResults) {
+        if (!isEnabled()) {
+            return;
+        }
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        int segmentCount = stations.size() - 1;
+        int startIndex = stations.indexOf(departure);
+        int endIndex = stations.indexOf(arrival);
+        if (startIndex < 0 || endIndex <= startIndex) {
+            return;
+        }
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        Map<Integer, List<TrainPurchaseTicketRespDTO>> seatTypeMap = trainPurchaseTicketResults.stream()
+                .filter(each -> SeatLayoutEnum.findBySeatType(each.getSeatType()) != null)
+                .collect(Collectors.groupingBy(TrainPurchaseTicketRespDTO::getSeatType));
+        seatTypeMap.forEach((seatType, seatTypeResults) -> {
+            String bitmapKey = String.format(TRAIN_SEAT_BITMAP, trainId, seatType);
+            SeatLayoutEnum seatLayout = SeatLayoutEnum.findBySeatType(seatType);
+            List<String> carriageNumbers = carriageService.listCarriageNumber(trainId, seatType);
+            BitFieldSubCommands subCommands = BitFieldSubCommands.create();
+            for (TrainPurchaseTicketRespDTO each : seatTypeResults) {
+                int carriageIndex = carriageNumbers.indexOf(each.getCarriageNumber());
+                int seatIndex = seatLayout.toSeatIndex(each.getSeatNumber());
+                if (carriageIndex < 0 || seatIndex < 0) {
+                    continue;
+                }
+                long base = ((long) carriageIndex * seatLayout.getSeatCount() + seatIndex) * segmentCount;
+                for (int segment = startIndex; segment < endIndex; segment++) {
+                    subCommands = subCommands.set(BitFieldSubCommands.BitFieldType.unsigned(1)).valueAt(base + segment).to(0);
+                }
+            }
+            if (!subCommands.getSubCommands().isEmpty() && distributedCache.hasKey(bitmapKey)) {
+                stringRedisTemplate.opsForValue().bitField(bitmapKey, subCommands);
+            }
+        });
+    }
+
+    /**
+     * 位图不存在时，从 t_seat 相邻站点基本区间加载座位占用状态
+     */
+    private void ensureSeatBitmap(String trainId, Integer seatType, String bitmapKey, List<String> stations, List<String> carriageNumbers, SeatLayoutEnum seatLayout) {
+        if (distributedCache.hasKey(bitmapKey)) {
+            return;
+        }
+        RLock lock = redissonClient.getLock(String.format(LOCK_TRAIN_SEAT_BITMAP, trainId, seatType));
+        lock.lock();
+        try {
+            if (distributedCache.hasKey(bitmapKey)) {
+                return;
+            }
+            int segmentCount = stations.size() - 1;
+            List<RouteDTO> segmentRoutes = new ArrayList<>(segmentCount);
+            Map<String, Integer> stationIndexMap = new HashMap<>();
+            for (int i = 0; i < segmentCount; i++) {
+                segmentRoutes.add(new RouteDTO(stations.get(i), stations.get(i + 1)));
+                stationIndexMap.put(stations.get(i), i);
+            }
+            long bitSize = (long) carriageNumbers.size() * seatLayout.getSeatCount() * segmentCount;
+            byte[] bitmap = new byte[(int) ((bitSize + 7) / 8)];
+            // 默认全部占用，数据库中可售的基本区间再置为 0，兼容布局中不存在的座位（如商务座 01C）
+            Arrays.fill(bitmap, (byte) 0xFF);
+            List<SeatDO> segmentSeats = seatMapper.listSeatSegmentStatus(Long.parseLong(trainId), segmentRoutes);
+            for (SeatDO each : segmentSeats) {
+                if (!Objects.equals(each.getSeatType(), seatType) || !Objects.equals(each.getSeatStatus(), SeatStatusEnum.AVAILABLE.getCode())) {
+                    continue;
+                }
+                int carriageIndex = carriageNumbers.indexOf(each.getCarriageNumber());
+                int seatIndex = seatLayout.toSeatIndex(each.getSeatNumber());
+                Integer segment = stationIndexMap.get(each.getStartStation());
+                if (carriageIndex < 0 || seatIndex < 0 || segment == null) {
+                    continue;
+                }
+                long offset = ((long) carriageIndex * seatLayout.getSeatCount() + seatIndex) * segmentCount + segment;
+                // Redis 位图高位在前
+                bitmap[(int) (offset >> 3)] &= (byte) ~(0x80 >>> (offset & 7));
+            }
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            // 二进制位图无法通过字符串序列化器写入，直接使用连接写入，需要手动拼接 Key 前缀
+            stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands().set(
+                    (cacheRedisPrefix + bitmapKey).getBytes(),
+                    bitmap,
+                    Expiration.from(ADVANCE_TICKET_DAY, TimeUnit.DAYS),
+                    RedisStringCommands.SetOption.SET_IF_ABSENT
+            ));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将用户选座转换为相对第一个座位的选座模板，格式：相对排号:列下标
+     */
+    private String buildChooseSeatPattern(List<String> chooseSeats, SeatLayoutEnum seatLayout) {
+        if (CollUtil.isEmpty(chooseSeats)) {
+            return "";
+        }
+        int firstRow = Integer.parseInt(chooseSeats.get(0).substring(1));
+        List<String> pattern = new ArrayList<>(chooseSeats.size());
+        for (String each : chooseSeats) {
+            int column = seatLayout.getLetters().indexOf(each.charAt(0));
+            if (column < 0) {
+                continue;
+            }
+            pattern.add((Integer.parseInt(each.substring(1)) - firstRow) + ":" + column);
+        }
+        return StrUtil.join(StrUtil.COMMA, pattern);
+    }
+}
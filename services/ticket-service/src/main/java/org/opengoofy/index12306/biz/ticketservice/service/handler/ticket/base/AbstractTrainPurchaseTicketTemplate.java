@@ -22,8 +22,13 @@ import cn.hutool.core.util.StrUtil;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.TrainSeatBaseDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.allocation.SeatBitmapAllocator;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.SelectSeatDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenBucket;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.bases.ApplicationContextHolder;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.opengoofy.index12306.framework.starter.designpattern.strategy.AbstractExecuteStrategy;
@@ -32,6 +37,7 @@ import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_REMAINING_TICKET;
 
@@ -45,6 +51,10 @@ public abstract class AbstractTrainPurchaseTicketTemplate implements IPurchaseTi
     private DistributedCache distributedCache;
     private String ticketAvailabilityCacheUpdateType;
     private TrainStationService trainStationService;
+    private SeatBitmapAllocator seatBitmapAllocator;
+    private TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
+    private TicketAvailabilityTokenBucket ticketAvailabilityTokenBucket;
 
     /**
      * 选择座位
@@ -66,18 +76,41 @@ public abstract class AbstractTrainPurchaseTicketTemplate implements IPurchaseTi
 
     @Override
     public List<TrainPurchaseTicketRespDTO> executeResp(SelectSeatDTO requestParam) {
-        List<TrainPurchaseTicketRespDTO> actualResult = selectSeats(requestParam);
+        // Redis 位图选座模式下，选座以及座位占用在一次 Lua 脚本中原子完成
+        List<TrainPurchaseTicketRespDTO> actualResult = seatBitmapAllocator.supports(requestParam.getSeatType())
+                ? seatBitmapAllocator.allocate(requestParam)
+                : selectSeats(requestParam);
         // 扣减车厢余票缓存，扣减站点余票缓存
         if (CollUtil.isNotEmpty(actualResult) && !StrUtil.equals(ticketAvailabilityCacheUpdateType, "binlog")) {
             String trainId = requestParam.getRequestParam().getTrainId();
             String departure = requestParam.getRequestParam().getDeparture();
             String arrival = requestParam.getRequestParam().getArrival();
+            Map<Integer, Integer> seatTypeCount = Map.of(requestParam.getSeatType(), actualResult.size());
+            // 基本区间余票模式下只需一次 Lua 脚本扣减途经基本区间
+            if (trainSegmentRemainingTicketCache.isEnabled()) {
+                trainSegmentRemainingTicketCache.decrease(trainId, departure, arrival, seatTypeCount);
+                // 余票扣减后立即登记补偿，购票事务未提交时恢复
+                requestParam.getCompensations().add(() -> trainSegmentRemainingTicketCache.increase(trainId, departure, arrival, seatTypeCount));
+                return actualResult;
+            }
+            // 紧凑矩阵模式下一次 Lua 脚本扣减全部重叠站点对
+            if (trainPackedRemainingTicketCache.isEnabled()) {
+                trainPackedRemainingTicketCache.decrease(trainId, departure, arrival, seatTypeCount);
+                requestParam.getCompensations().add(() -> trainPackedRemainingTicketCache.increase(trainId, departure, arrival, seatTypeCount));
+                return actualResult;
+            }
+            // 站点余票已在扣减令牌的 Lua 脚本中预占
+            if (ticketAvailabilityTokenBucket.isReserveRemainingTicket(trainId)) {
+                return actualResult;
+            }
             StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
             //获取购票的所有经过站
             List<RouteDTO> routeDTOList = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival);
             routeDTOList.forEach(each -> {
-                String keySuffix = StrUtil.join("_", trainId, each.getStartStation(), each.getEndStation());
+                String keySuffix = TrainCacheKeyUtil.buildKeySuffix(trainId, each.getStartStation(), each.getEndStation());
                 stringRedisTemplate.opsForHash().increment(TRAIN_STATION_REMAINING_TICKET + keySuffix, String.valueOf(requestParam.getSeatType()), -actualResult.size());
+                requestParam.getCompensations().add(() -> stringRedisTemplate.opsForHash()
+                        .increment(TRAIN_STATION_REMAINING_TICKET + keySuffix, String.valueOf(requestParam.getSeatType()), actualResult.size()));
             });
         }
         return actualResult;
@@ -87,6 +120,10 @@ public abstract class AbstractTrainPurchaseTicketTemplate implements IPurchaseTi
     public void run(String... args) throws Exception {
         distributedCache = ApplicationContextHolder.getBean(DistributedCache.class);
         trainStationService = ApplicationContextHolder.getBean(TrainStationService.class);
+        seatBitmapAllocator = ApplicationContextHolder.getBean(SeatBitmapAllocator.class);
+        trainSegmentRemainingTicketCache = ApplicationContextHolder.getBean(TrainSegmentRemainingTicketCache.class);
+        trainPackedRemainingTicketCache = ApplicationContextHolder.getBean(TrainPackedRemainingTicketCache.class);
+        ticketAvailabilityTokenBucket = ApplicationContextHolder.getBean(TicketAvailabilityTokenBucket.class);
         ConfigurableEnvironment configurableEnvironment = ApplicationContextHolder.getBean(ConfigurableEnvironment.class);
         ticketAvailabilityCacheUpdateType = configurableEnvironment.getProperty("ticket.availability.cache-update.type", "");
     }
@@ -23,6 +23,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select.SelectSeatCompensation;
 
 import java.util.List;
 
@@ -51,4 +52,10 @@ public final class SelectSeatDTO {
      * 购票原始入参
      */
     private PurchaseTicketReqDTO requestParam;
+
+    /**
+     * 选座过程中产生的 Redis 副作用补偿动作，同一次购票的多个座位类型共享，事务未提交时统一执行
+     */
+    @Builder.Default
+    private SelectSeatCompensation compensations = new SelectSeatCompensation();
 }
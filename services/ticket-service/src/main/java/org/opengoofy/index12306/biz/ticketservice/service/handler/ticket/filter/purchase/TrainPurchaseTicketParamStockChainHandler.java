@@ -17,16 +17,19 @@
 
 package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.filter.purchase;
 
-import cn.hutool.core.util.StrUtil;
 import lombok.RequiredArgsConstructor;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.cache.SeatMarginCacheLoader;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.opengoofy.index12306.framework.starter.convention.exception.ClientException;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -45,17 +48,33 @@ public class TrainPurchaseTicketParamStockChainHandler implements TrainPurchaseT
 
     private final SeatMarginCacheLoader seatMarginCacheLoader;
     private final DistributedCache distributedCache;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
 
     @Override
     public void handler(PurchaseTicketReqDTO requestParam) {
         // 车次站点是否还有余票。如果用户提交多个乘车人非同一座位类型，拆分验证 test
         //形成如1_北京南_杭州东
-        String keySuffix = StrUtil.join("_", requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival());
+        String keySuffix = TrainCacheKeyUtil.buildKeySuffix(requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival());
         StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
         List<PurchaseTicketPassengerDetailDTO> passengerDetails = requestParam.getPassengers();
         //根据作为类别分成不同的map，如商务座（key为0）的passenger和二等座（key为2）的
         Map<Integer, List<PurchaseTicketPassengerDetailDTO>> seatTypeMap = passengerDetails.stream()
                 .collect(Collectors.groupingBy(PurchaseTicketPassengerDetailDTO::getSeatType));
+        if (trainSegmentRemainingTicketCache.isEnabled() || trainPackedRemainingTicketCache.isEnabled()) {
+            // 基本区间模式下余票为可售座位的上限，仅拦截一定无票的请求，校验通过不代表一定能选到座位
+            Map<Integer, Integer> remainingTicket = trainPackedRemainingTicketCache.isEnabled()
+                    ? trainPackedRemainingTicketCache.listRemainingTicket(
+                    requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), new ArrayList<>(seatTypeMap.keySet()))
+                    : trainSegmentRemainingTicketCache.listRemainingTicket(
+                    requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), new ArrayList<>(seatTypeMap.keySet()));
+            seatTypeMap.forEach((seatType, passengerSeatDetails) -> {
+                if (remainingTicket.getOrDefault(seatType, 0) < passengerSeatDetails.size()) {
+                    throw new ClientException("列车站点已无余票");
+                }
+            });
+            return;
+        }
         seatTypeMap.forEach((seatType, passengerSeatDetails) -> {
             //获取该座位下的余票数
             Object stockObj = stringRedisTemplate.opsForHash().get(TRAIN_STATION_REMAINING_TICKET + keySuffix, String.valueOf(seatType));
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.mailbox;
+
+import com.alibaba.ttl.TtlCallable;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseRespDTO;
+import org.opengoofy.index12306.framework.starter.convention.exception.AbstractException;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 购票邮箱分发器
+ * <p>
+ * 每个列车 ID + 座位类型对应一个邮箱，同一时刻最多只有一个线程消费该邮箱，购票请求入队后串行执行，替代本地公平锁。
+ * 邮箱每次最多批量取出 maxDrainSize 个请求，批次内只获取一次分布式锁，将多节点之间的加锁开销从每个请求一次降低为每批一次。
+ * 批次只分摊加锁开销，批次内请求仍逐个选座、写入车票并远程创建订单，各自独立事务：
+ * 每个请求都要远程调用订单服务，无法纳入同一事务，合并选座与批量写入后单个请求失败的回滚无法与其它请求隔离
+ * <p>
+ * 邮箱只保证本节点内串行，网关不会把同一列车 ID + 座位类型的请求路由到固定节点，邮箱没有跨节点的唯一归属。
+ * 因此每批仍获取与非邮箱购票相同 Key 的分布式公平锁作为跨节点兜底，它同时串行化：
+ * 1. 其它节点上同一 Key 的邮箱批次
+ * 2. 不进入邮箱的购票请求：包含多个座位类型的订单跨多个 Key，按原流程逐座位类型获取本地锁以及分布式公平锁
+ * 该锁不能在引入按 Key 归属的节点路由（一致性哈希转发或按 Key 分区的顺序消息）之前移除
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PurchaseTicketMailboxDispatcher {
+
+    private final RedissonClient redissonClient;
+    private final ThreadPoolExecutor purchaseTicketMailboxThreadPoolExecutor;
+
+    @Value("${ticket.purchase-mailbox.enabled:false}")
+    private boolean enabled;
+    @Value("${ticket.purchase-mailbox.max-drain-size:16}")
+    private int maxDrainSize;
+    @Value("${ticket.purchase-mailbox.wait-timeout-ms:10000}")
+    private long waitTimeoutMs;
+
+    /**
+     * 邮箱 Key 为购票分布式锁 Key，长时间无请求的邮箱自动清理
+     */
+    private final Cache<String, Mailbox> mailboxes = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .build();
+
+    /**
+     * 是否开启购票邮箱
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 将购票请求投递到邮箱并等待执行结果
+     *
+     * @param lockKey    购票分布式锁 Key，列车 ID + 座位类型维度
+     * @param action     购票执行逻辑
+     * @param onRejected 请求未执行即被拒绝时的回调，一般用于归还令牌
+     * @return 购票结果
+     */
+    public TicketPurchaseRespDTO dispatch(String lockKey, Callable<TicketPurchaseRespDTO> action, Runnable onRejected) {
+        Mailbox mailbox = mailboxes.get(lockKey, Mailbox::new);
+        // 用户上下文存放在 TransmittableThreadLocal 中，投递时捕获，邮箱线程执行时还原
+        MailboxTask task = new MailboxTask(TtlCallable.get(action), onRejected);
+        mailbox.queue.offer(task);
+        schedule(mailbox);
+        try {
+            return task.future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            if (task.state.compareAndSet(MailboxTask.NEW, MailboxTask.CANCELLED)) {
+                task.rejected();
+                throw new ServiceException("当前车次购票人数过多，请稍后重试");
+            }
+            // 请求已开始执行，必须等待执行结果，避免用户已占座但收到失败响应
+            return awaitQuietly(task);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (task.state.compareAndSet(MailboxTask.NEW, MailboxTask.CANCELLED)) {
+                task.rejected();
+            }
+            throw new ServiceException("购票请求被中断");
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    private TicketPurchaseRespDTO awaitQuietly(MailboxTask task) {
+        try {
+            return task.future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("购票请求被中断");
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    private RuntimeException unwrap(ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof AbstractException abstractException) {
+            return abstractException;
+        }
+        log.error("购票邮箱执行购票请求失败", cause);
+        return new ServiceException("购票失败，请稍后重试");
+    }
+
+    private void schedule(Mailbox mailbox) {
+        if (mailbox.scheduled.compareAndSet(false, true)) {
+            purchaseTicketMailboxThreadPoolExecutor.execute(() -> drain(mailbox));
+        }
+    }
+
+    private void drain(Mailbox mailbox) {
+        try {
+            List<MailboxTask> batch = new ArrayList<>(maxDrainSize);
+            MailboxTask task;
+            while (batch.size() < maxDrainSize && (task = mailbox.queue.poll()) != null) {
+                if (task.state.compareAndSet(MailboxTask.NEW, MailboxTask.RUNNING)) {
+                    batch.add(task);
+                }
+            }
+            if (!batch.isEmpty()) {
+                executeBatch(mailbox, batch);
+            }
+        } finally {
+            mailbox.scheduled.set(false);
+            // 释放调度标识后再次检查，避免与投递线程之间出现请求滞留
+            if (!mailbox.queue.isEmpty()) {
+                schedule(mailbox);
+            }
+        }
+    }
+
+    private void executeBatch(Mailbox mailbox, List<MailboxTask> batch) {
+        // 跨节点兜底，与其它节点邮箱以及多座位类型购票请求互斥
+        RLock distributedLock = redissonClient.getFairLock(mailbox.lockKey);
+        try {
+            distributedLock.lock();
+        } catch (Throwable ex) {
+            // 批次内请求均未执行
+            batch.forEach(each -> {
+                each.rejected();
+                each.future.completeExceptionally(ex);
+            });
+            return;
+        }
+        try {
+            for (MailboxTask each : batch) {
+                try {
+                    each.future.complete(each.action.call());
+                } catch (Throwable ex) {
+                    each.future.completeExceptionally(ex);
+                }
+            }
+        } finally {
+            try {
+                distributedLock.unlock();
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
+    /**
+     * 列车 ID + 座位类型维度的购票邮箱
+     */
+    private static final class Mailbox {
+
+        private final String lockKey;
+        private final Queue<MailboxTask> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private Mailbox(String lockKey) {
+            this.lockKey = lockKey;
+        }
+    }
+
+    /**
+     * 邮箱中的购票请求
+     */
+    private static final class MailboxTask {
+
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int CANCELLED = 2;
+
+        private final Callable<TicketPurchaseRespDTO> action;
+        private final Runnable onRejected;
+        private final CompletableFuture<TicketPurchaseRespDTO> future = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        private MailboxTask(Callable<TicketPurchaseRespDTO> action, Runnable onRejected) {
+            this.action = action;
+            this.onRejected = onRejected;
+        }
+
+        private void rejected() {
+            try {
+                onRejected.run();
+            } catch (Throwable ex) {
+                log.error("购票邮箱拒绝请求后执行回调失败", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
+
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+
+import java.util.List;
+
+/**
+ * 车厢座位位图
+ * <p>
+ * 每排座位使用一个 long 位图表示，第 i 位为 1 代表该排第 i 列座位可售；
+ * 邻座、选座模板偏移匹配以及剩余座位补齐均通过位运算完成，选座过程不创建座位对象，结果以车厢内座位下标返回，最终再转换为座位号
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public final class CarriageSeatMap {
+
+    private final int rowCount;
+    private final int columnCount;
+
+    /**
+     * 车厢初始可售座位位图
+     */
+    private final long[] availableRows;
+
+    /**
+     * 选座过程中的可售座位位图，已选中的座位清除对应位，可通过 {@link #reset()} 还原
+     */
+    private final long[] freeRows;
+
+    private final int availableCount;
+    private int freeCount;
+
+    private CarriageSeatMap(SeatLayoutEnum layout, long[] availableRows, int availableCount) {
+        this.rowCount = layout.getRowCount();
+        this.columnCount = layout.getColumnCount();
+        this.availableRows = availableRows;
+        this.freeRows = availableRows.clone();
+        this.availableCount = availableCount;
+        this.freeCount = availableCount;
+    }
+
+    /**
+     * 根据车厢可售座位号构建座位位图
+     *
+     * @param layout         车厢座位布局
+     * @param availableSeats 可售座位号集合，如 01A、18F
+     * @return 车厢座位位图
+     */
+    public static CarriageSeatMap build(SeatLayoutEnum layout, List<String> availableSeats) {
+        long[] rows = new long[layout.getRowCount()];
+        int count = 0;
+        for (String each : availableSeats) {
+            int seatIndex = layout.toSeatIndex(each);
+            if (seatIndex < 0) {
+                continue;
+            }
+            long bit = 1L << (seatIndex % layout.getColumnCount());
+            int row = seatIndex / layout.getColumnCount();
+            if ((rows[row] & bit) == 0L) {
+                rows[row] |= bit;
+                count++;
+            }
+        }
+        return new CarriageSeatMap(layout, rows, count);
+    }
+
+    /**
+     * 当前可售座位数量
+     */
+    public int getFreeCount() {
+        return freeCount;
+    }
+
+    /**
+     * 还原为车厢初始可售状态，撤销本次选座过程中的全部占用
+     */
+    public void reset() {
+        System.arraycopy(availableRows, 0, freeRows, 0, rowCount);
+        freeCount = availableCount;
+    }
+
+    /**
+     * 查找同一排相邻的可售座位并占用，按排号、列号升序取第一组
+     *
+     * @param size   相邻座位数量
+     * @param out    选中座位下标输出数组
+     * @param offset 输出数组写入起始位置
+     * @return 是否找到
+     */
+    public boolean selectAdjacent(int size, int[] out, int offset) {
+        if (size <= 0 || size > columnCount || size > freeCount) {
+            return false;
+        }
+        for (int row = 0; row < rowCount; row++) {
+            // 连续 size 位均为 1 的起始位保留为 1
+            long runs = freeRows[row];
+            for (int i = 1; i < size && runs != 0L; i++) {
+                runs &= freeRows[row] >>> i;
+            }
+            if (runs != 0L) {
+                int column = Long.numberOfTrailingZeros(runs);
+                for (int i = 0; i < size; i++) {
+                    out[offset + i] = row * columnCount + column + i;
+                }
+                occupy(row, ((1L << size) - 1) << column, size);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按选座模板匹配座位并占用，模板内各座位之间的相对排距以及列保持不变，按起始排升序取第一组
+     *
+     * @param pattern 选座模板
+     * @param out     选中座位下标输出数组
+     * @param offset  输出数组写入起始位置
+     * @return 是否匹配成功
+     */
+    public boolean selectPattern(SeatChoosePattern pattern, int[] out, int offset) {
+        int[] rowOffsets = pattern.getRowOffsets();
+        long[] columnMasks = pattern.getColumnMasks();
+        if (pattern.getSeatCount() > freeCount) {
+            return false;
+        }
+        for (int baseRow = 0; baseRow + pattern.getRowSpan() <= rowCount; baseRow++) {
+            boolean matched = true;
+            for (int i = 0; i < rowOffsets.length && matched; i++) {
+                long mask = columnMasks[i];
+                matched = (freeRows[baseRow + rowOffsets[i]] & mask) == mask;
+            }
+            if (!matched) {
+                continue;
+            }
+            int index = offset;
+            for (int i = 0; i < rowOffsets.length; i++) {
+                int row = baseRow + rowOffsets[i];
+                long mask = columnMasks[i];
+                for (long bits = mask; bits != 0L; bits &= bits - 1) {
+                    out[index++] = row * columnCount + Long.numberOfTrailingZeros(bits);
+                }
+                occupy(row, mask, Long.bitCount(mask));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 按排号、列号升序占用前 size 个可售座位，座位之间不要求相邻
+     *
+     * @param size   座位数量
+     * @param out    选中座位下标输出数组
+     * @param offset 输出数组写入起始位置
+     * @return 实际占用的座位数量
+     */
+    public int selectRemaining(int size, int[] out, int offset) {
+        int selected = 0;
+        for (int row = 0; row < rowCount && selected < size; row++) {
+            long taken = 0L;
+            for (long bits = freeRows[row]; bits != 0L && selected < size; bits &= bits - 1) {
+                long lowest = bits & -bits;
+                taken |= lowest;
+                out[offset + selected++] = row * columnCount + Long.numberOfTrailingZeros(lowest);
+            }
+            if (taken != 0L) {
+                occupy(row, taken, Long.bitCount(taken));
+            }
+        }
+        return selected;
+    }
+
+    private void occupy(int row, long mask, int count) {
+        freeRows[row] &= ~mask;
+        freeCount -= count;
+    }
+}
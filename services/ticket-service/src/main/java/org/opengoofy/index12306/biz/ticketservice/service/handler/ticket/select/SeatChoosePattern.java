@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
+
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 选座模板
+ * <p>
+ * 用户选座格式为 座位字母 + 排序号，如 A0、F1，排序号代表选座面板中的第几排；
+ * 模板按相对排距归一化后，每个相对排对应一个列位图，匹配时只需对车厢每排位图做一次与运算
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public final class SeatChoosePattern {
+
+    /**
+     * 相对起始排的排距，升序
+     */
+    private final int[] rowOffsets;
+
+    /**
+     * 与相对排距一一对应的列位图
+     */
+    private final long[] columnMasks;
+
+    /**
+     * 模板跨越的排数
+     */
+    private final int rowSpan;
+
+    /**
+     * 模板座位数量
+     */
+    private final int seatCount;
+
+    private SeatChoosePattern(int[] rowOffsets, long[] columnMasks, int seatCount) {
+        this.rowOffsets = rowOffsets;
+        this.columnMasks = columnMasks;
+        this.rowSpan = rowOffsets[rowOffsets.length - 1] + 1;
+        this.seatCount = seatCount;
+    }
+
+    /**
+     * 解析用户选座
+     *
+     * @param layout      车厢座位布局
+     * @param chooseSeats 用户选座集合，如 A0、F1
+     * @return 选座模板，选座为空或不属于该座位布局时返回 null
+     */
+    public static SeatChoosePattern parse(SeatLayoutEnum layout, List<String> chooseSeats) {
+        if (chooseSeats == null || chooseSeats.isEmpty()) {
+            return null;
+        }
+        TreeMap<Integer, Long> rowColumnMasks = new TreeMap<>();
+        for (String each : chooseSeats) {
+            if (each == null || each.length() < 2) {
+                return null;
+            }
+            int column = layout.getLetters().indexOf(each.charAt(0));
+            int row;
+            try {
+                row = Integer.parseInt(each.substring(1));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+            if (column < 0 || row < 0) {
+                return null;
+            }
+            rowColumnMasks.merge(row, 1L << column, (a, b) -> a | b);
+        }
+        int firstRow = rowColumnMasks.firstKey();
+        int[] rowOffsets = new int[rowColumnMasks.size()];
+        long[] columnMasks = new long[rowColumnMasks.size()];
+        int index = 0;
+        int seatCount = 0;
+        for (var entry : rowColumnMasks.entrySet()) {
+            rowOffsets[index] = entry.getKey() - firstRow;
+            columnMasks[index++] = entry.getValue();
+            seatCount += Long.bitCount(entry.getValue());
+        }
+        return new SeatChoosePattern(rowOffsets, columnMasks, seatCount);
+    }
+
+    public int[] getRowOffsets() {
+        return rowOffsets;
+    }
+
+    public long[] getColumnMasks() {
+        return columnMasks;
+    }
+
+    public int getRowSpan() {
+        return rowSpan;
+    }
+
+    public int getSeatCount() {
+        return seatCount;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
+
+import com.alibaba.ttl.TtlCallable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.framework.starter.convention.exception.AbstractException;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多座位类型分配执行器
+ * <p>
+ * 一个订单包含多个座位类型时，每个座位类型的选座任务并行执行后汇总：
+ * 1. 整个请求共用一个截止时间，超时后不再启动未开始的任务
+ * 2. 任一任务失败立即抛出原始异常，不再统一转换为余票不足；失败后最多等待到请求截止时间让已开始的任务结束，
+ *    截止时间后仍在执行的任务直接放弃，不中断执行线程，避免 Redis 命令已执行但补偿未登记；
+ *    放弃的任务产生的 Redis 副作用（位图占座、余票扣减）登记补偿时若购票事务已回滚，补偿动作立即执行，见 {@link SelectSeatCompensation}
+ * 3. 线程池使用有界队列，队列满时记录拒绝指标并由调用线程执行，不阻塞其它请求
+ * 4. 可选使用虚拟线程执行，运行环境不支持时回退线程池
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SeatDistributionExecutor implements InitializingBean, DisposableBean {
+
+    private final ThreadPoolExecutor selectSeatThreadPoolExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ticket.seat-distribution.timeout-ms:3000}")
+    private long timeoutMs;
+    @Value("${ticket.seat-distribution.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    private ExecutorService virtualThreadExecutor;
+    private Counter rejectedCounter;
+    private Counter timeoutCounter;
+    private Counter failureCounter;
+
+    @Override
+    public void afterPropertiesSet() {
+        rejectedCounter = meterRegistry.counter("ticket.seat.distribution", "result", "rejected");
+        timeoutCounter = meterRegistry.counter("ticket.seat.distribution", "result", "timeout");
+        failureCounter = meterRegistry.counter("ticket.seat.distribution", "result", "failure");
+        if (virtualThreads) {
+            try {
+                // 项目基于 JDK 17 编译，虚拟线程需要 JDK 21 运行环境，通过反射按需开启
+                virtualThreadExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                log.warn("当前运行环境不支持虚拟线程，多座位类型分配回退线程池执行");
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 并行执行全部任务并按任务顺序返回结果
+     *
+     * @param tasks 任务集合
+     * @return 任务结果集合，与任务顺序一致
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        Executor executor = virtualThreadExecutor != null ? virtualThreadExecutor : selectSeatThreadPoolExecutor;
+        ExecutorCompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        TaskGate gate = new TaskGate();
+        int submitted = 0;
+        try {
+            for (Callable<T> each : tasks) {
+                // 用户上下文存放在 TransmittableThreadLocal 中，提交时捕获，执行线程还原
+                Callable<T> task = TtlCallable.get(gate.wrap(each));
+                try {
+                    futures.add(completionService.submit(task));
+                    submitted++;
+                } catch (RejectedExecutionException ex) {
+                    rejectedCounter.increment();
+                    FutureTask<T> futureTask = new FutureTask<>(task);
+                    futures.add(futureTask);
+                    futureTask.run();
+                    // 调用线程执行失败时立即结束，已提交的任务在 finally 中取消
+                    getResult(futureTask);
+                }
+            }
+            for (int i = 0; i < submitted; i++) {
+                long remaining = deadline - System.nanoTime();
+                Future<T> completed = remaining > 0 ? completionService.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (completed == null) {
+                    timeoutCounter.increment();
+                    throw new ServiceException("当前车次购票人数过多，请稍后重试");
+                }
+                getResult(completed);
+            }
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> each : futures) {
+                results.add(getResult(each));
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("购票请求被中断");
+        } finally {
+            // 任一任务失败或超时后阻止未开始的任务执行，截止时间内等待已开始的任务结束，超过截止时间直接放弃
+            if (!gate.closeAndAwait(deadline)) {
+                log.warn("多座位类型分配任务超过截止时间仍未结束，已放弃等待，由选座补偿回收副作用");
+            }
+            futures.forEach(each -> each.cancel(false));
+        }
+    }
+
+    private <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("购票请求被中断");
+        } catch (CancellationException ex) {
+            throw new ServiceException("购票请求已取消");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof AbstractException abstractException) {
+                throw abstractException;
+            }
+            failureCounter.increment();
+            log.error("多座位类型分配任务执行失败", cause);
+            throw new ServiceException("选座失败，请稍后重试");
+        }
+    }
+
+    /**
+     * 单次请求的任务闸门，关闭后未开始的任务直接取消，关闭方在截止时间内等待已开始的任务执行结束
+     */
+    private static final class TaskGate {
+
+        private int running;
+        private boolean closed;
+
+        private <T> Callable<T> wrap(Callable<T> task) {
+            return () -> {
+                if (!enter()) {
+                    throw new CancellationException("购票请求已结束");
+                }
+                try {
+                    return task.call();
+                } finally {
+                    exit();
+                }
+            };
+        }
+
+        private synchronized boolean enter() {
+            if (closed) {
+                return false;
+            }
+            running++;
+            return true;
+        }
+
+        private synchronized void exit() {
+            if (--running == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * @param deadlineNanos 截止时间，{@link System#nanoTime()} 时间基准
+         * @return 已开始的任务是否全部执行结束
+         */
+        private synchronized boolean closeAndAwait(long deadlineNanos) {
+            closed = true;
+            boolean interrupted = false;
+            long remaining;
+            while (running > 0 && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return running == 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单次购票选座过程的补偿动作集合
+ * <p>
+ * 多座位类型并行选座时超时的选座任务会被放弃而不是等待结束，补偿执行后被放弃的任务仍可能登记新的补偿动作，
+ * 此时不再暂存而是立即执行，保证选座产生的 Redis 副作用不会因登记晚于补偿执行而被遗留
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+public final class SelectSeatCompensation {
+
+    private final List<Runnable> actions = new ArrayList<>();
+    private boolean compensated;
+
+    /**
+     * 登记补偿动作，补偿已执行时立即执行该动作
+     *
+     * @param action 补偿动作，需在副作用完整产生后登记
+     */
+    public void add(Runnable action) {
+        synchronized (this) {
+            if (!compensated) {
+                actions.add(action);
+                return;
+            }
+        }
+        runQuietly(action);
+    }
+
+    /**
+     * 执行已登记的补偿动作，之后登记的补偿动作立即执行；单个动作执行失败不影响其它动作
+     */
+    public void compensate() {
+        List<Runnable> snapshot;
+        synchronized (this) {
+            compensated = true;
+            snapshot = new ArrayList<>(actions);
+            actions.clear();
+        }
+        snapshot.forEach(this::runQuietly);
+    }
+
+    private void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (Throwable ex) {
+            log.error("购票失败执行选座补偿失败", ex);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
+
+import lombok.RequiredArgsConstructor;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.SeatService;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.SelectSeatDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 列车座位位图选座器，高铁各座位类型购票组件共用
+ * <p>
+ * 选座优先级：
+ * 1. 用户选座：同一车厢匹配选座模板，剩余乘车人同车厢补齐
+ * 2. 邻座：乘车人少于 complexPassengerSize 时同一排相邻，否则按 complexGroupSize 分组后每组同排相邻且位于同一车厢
+ * 3. 同车厢不邻座
+ * 4. 不同车厢不邻座
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Component
+@RequiredArgsConstructor
+public class TrainSeatMapSelector {
+
+    private final SeatService seatService;
+
+    /**
+     * 选择座位
+     *
+     * @param requestParam         选座入参
+     * @param layout               车厢座位布局
+     * @param complexPassengerSize 乘车人数量达到该值时按分组分配邻座
+     * @param complexGroupSize     分组分配邻座时每组乘车人数量
+     * @return 乘车人座位，无法分配时返回空集合
+     */
+    public List<TrainPurchaseTicketRespDTO> select(SelectSeatDTO requestParam, SeatLayoutEnum layout, int complexPassengerSize, int complexGroupSize) {
+        String trainId = requestParam.getRequestParam().getTrainId();
+        String departure = requestParam.getRequestParam().getDeparture();
+        String arrival = requestParam.getRequestParam().getArrival();
+        List<PurchaseTicketPassengerDetailDTO> passengerSeatDetails = requestParam.getPassengerSeatDetails();
+        List<String> trainCarriageList = seatService.listUsableCarriageNumber(trainId, requestParam.getSeatType(), departure, arrival);
+        List<Integer> trainStationCarriageRemainingTicket = seatService.listSeatRemainingTicket(trainId, departure, arrival, trainCarriageList);
+        int remainingTicketSum = trainStationCarriageRemainingTicket.stream().mapToInt(Integer::intValue).sum();
+        int passengerSize = passengerSeatDetails.size();
+        if (remainingTicketSum < passengerSize) {
+            throw new ServiceException("站点余票不足，请尝试更换座位类型或选择其它站点");
+        }
+        SeatChoosePattern pattern = SeatChoosePattern.parse(layout, requestParam.getRequestParam().getChooseSeats());
+        if (pattern != null && pattern.getSeatCount() > passengerSize) {
+            pattern = null;
+        }
+        int[] selectedSeats = new int[passengerSize];
+        String[] selectedCarriages = new String[passengerSize];
+        List<CarriageSeatMap> seatMaps = new ArrayList<>(trainCarriageList.size());
+        for (String carriageNumber : trainCarriageList) {
+            List<String> availableSeats = seatService.listAvailableSeat(trainId, carriageNumber, requestParam.getSeatType(), departure, arrival);
+            CarriageSeatMap seatMap = CarriageSeatMap.build(layout, availableSeats);
+            seatMaps.add(seatMap);
+            if (seatMap.getFreeCount() < passengerSize) {
+                continue;
+            }
+            if (selectInCarriage(seatMap, pattern, passengerSize, complexPassengerSize, complexGroupSize, selectedSeats)) {
+                return buildResult(passengerSeatDetails, layout, carriageNumber, selectedSeats);
+            }
+        }
+        // 如果邻座算法无法匹配，尝试对用户进行降级分配：同车厢不邻座
+        for (int i = 0; i < seatMaps.size(); i++) {
+            CarriageSeatMap seatMap = seatMaps.get(i);
+            if (seatMap.getFreeCount() >= passengerSize) {
+                seatMap.selectRemaining(passengerSize, selectedSeats, 0);
+                return buildResult(passengerSeatDetails, layout, trainCarriageList.get(i), selectedSeats);
+            }
+        }
+        // 如果同车厢也已无法匹配，则对用户座位再次降级：不同车厢不邻座
+        int selected = 0;
+        for (int i = 0; i < seatMaps.size() && selected < passengerSize; i++) {
+            int count = seatMaps.get(i).selectRemaining(passengerSize - selected, selectedSeats, selected);
+            for (int j = selected; j < selected + count; j++) {
+                selectedCarriages[j] = trainCarriageList.get(i);
+            }
+            selected += count;
+        }
+        if (selected < passengerSize) {
+            return new ArrayList<>();
+        }
+        List<TrainPurchaseTicketRespDTO> actualResult = new ArrayList<>(passengerSize);
+        for (int i = 0; i < passengerSize; i++) {
+            actualResult.add(buildPassengerSeat(passengerSeatDetails.get(i), selectedCarriages[i], layout.toSeatNumber(selectedSeats[i])));
+        }
+        return actualResult;
+    }
+
+    private boolean selectInCarriage(CarriageSeatMap seatMap, SeatChoosePattern pattern, int passengerSize, int complexPassengerSize, int complexGroupSize, int[] selectedSeats) {
+        if (pattern != null) {
+            if (!seatMap.selectPattern(pattern, selectedSeats, 0)) {
+                return false;
+            }
+            // 选座数量少于乘车人数量时，剩余乘车人同车厢补齐
+            int chooseSeatCount = pattern.getSeatCount();
+            seatMap.selectRemaining(passengerSize - chooseSeatCount, selectedSeats, chooseSeatCount);
+            return true;
+        }
+        if (passengerSize < complexPassengerSize) {
+            return seatMap.selectAdjacent(passengerSize, selectedSeats, 0);
+        }
+        // 多人分组分配同一车厢邻座
+        for (int offset = 0; offset < passengerSize; offset += complexGroupSize) {
+            if (!seatMap.selectAdjacent(Math.min(complexGroupSize, passengerSize - offset), selectedSeats, offset)) {
+                seatMap.reset();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<TrainPurchaseTicketRespDTO> buildResult(List<PurchaseTicketPassengerDetailDTO> passengerSeatDetails, SeatLayoutEnum layout, String carriageNumber, int[] selectedSeats) {
+        List<TrainPurchaseTicketRespDTO> actualResult = new ArrayList<>(passengerSeatDetails.size());
+        for (int i = 0; i < passengerSeatDetails.size(); i++) {
+            actualResult.add(buildPassengerSeat(passengerSeatDetails.get(i), carriageNumber, layout.toSeatNumber(selectedSeats[i])));
+        }
+        return actualResult;
+    }
+
+    private TrainPurchaseTicketRespDTO buildPassengerSeat(PurchaseTicketPassengerDetailDTO passenger, String carriageNumber, String seatNumber) {
+        TrainPurchaseTicketRespDTO result = new TrainPurchaseTicketRespDTO();
+        result.setSeatNumber(seatNumber);
+        result.setSeatType(passenger.getSeatType());
+        result.setCarriageNumber(carriageNumber);
+        result.setPassengerId(passenger.getPassengerId());
+        return result;
+    }
+}
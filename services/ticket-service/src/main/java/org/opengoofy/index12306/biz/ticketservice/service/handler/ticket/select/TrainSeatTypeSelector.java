@@ -18,35 +18,34 @@
 package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
 
 import cn.hutool.core.collection.CollUtil;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.opengoofy.index12306.biz.ticketservice.common.enums.VehicleSeatTypeEnum;
 import org.opengoofy.index12306.biz.ticketservice.common.enums.VehicleTypeEnum;
-import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainStationPriceDO;
-import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainStationPriceMapper;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
-import org.opengoofy.index12306.biz.ticketservice.remote.UserRemoteService;
 import org.opengoofy.index12306.biz.ticketservice.remote.dto.PassengerRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.SeatService;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.PassengerSnapshotCache;
+import org.opengoofy.index12306.biz.ticketservice.service.fare.TrainFareMatrix;
+import org.opengoofy.index12306.biz.ticketservice.service.fare.TrainFareMatrixManager;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.SelectSeatDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
-import org.opengoofy.index12306.framework.starter.convention.exception.RemoteException;
 import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
-import org.opengoofy.index12306.framework.starter.convention.result.Result;
+import org.opengoofy.index12306.framework.starter.designpattern.strategy.AbstractExecuteStrategy;
 import org.opengoofy.index12306.framework.starter.designpattern.strategy.AbstractStrategyChoose;
 import org.opengoofy.index12306.frameworks.starter.user.core.UserContext;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
 
 /**
@@ -60,12 +59,27 @@ import java.util.stream.Collectors;
 public final class TrainSeatTypeSelector {
 
     private final SeatService seatService;
-    private final UserRemoteService userRemoteService;
-    private final TrainStationPriceMapper trainStationPriceMapper;
+    private final PassengerSnapshotCache passengerSnapshotCache;
+    private final TrainFareMatrixManager trainFareMatrixManager;
     private final AbstractStrategyChoose abstractStrategyChoose;
-    private final ThreadPoolExecutor selectSeatThreadPoolExecutor;
+    private final SeatDistributionExecutor seatDistributionExecutor;
 
     public List<TrainPurchaseTicketRespDTO> select(Integer trainType, PurchaseTicketReqDTO requestParam) {
+        // 选座过程中写入 Redis 的副作用（位图占用、余票扣减）在产生时登记补偿动作，多座位类型并行选座共用
+        SelectSeatCompensation compensations = new SelectSeatCompensation();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            registerCompensationOnRollback(compensations);
+            return doSelect(trainType, requestParam, compensations);
+        }
+        try {
+            return doSelect(trainType, requestParam, compensations);
+        } catch (RuntimeException ex) {
+            compensations.compensate();
+            throw ex;
+        }
+    }
+
+    private List<TrainPurchaseTicketRespDTO> doSelect(Integer trainType, PurchaseTicketReqDTO requestParam, SelectSeatCompensation compensations) {
         List<PurchaseTicketPassengerDetailDTO> passengerDetails = requestParam.getPassengers();
         //根据座位类型将乘车人分组,.collect(Collectors.groupingBy(...))，它的作用是将流中的元素按照指定的条件进行分组。具体来说，Collectors.groupingBy(...) 是一个分类收集器，它会根据提供的分类函数将流中的元素分组。
         Map<Integer, List<PurchaseTicketPassengerDetailDTO>> seatTypeMap = passengerDetails.stream()
@@ -73,24 +87,13 @@ public final class TrainSeatTypeSelector {
         //CopyOnWriteArrayList 是 Java 中并发编程领域中的一种线程安全的列表实现。它是 ArrayList 的线程安全版本，
         List<TrainPurchaseTicketRespDTO> actualResult = new CopyOnWriteArrayList<>();
         if (seatTypeMap.size() > 1) {
-            List<Future<List<TrainPurchaseTicketRespDTO>>> futureResults = new ArrayList<>();
-            seatTypeMap.forEach((seatType, passengerSeatDetails) -> {
-                // 线程池参数如何设置？详情查看：https://nageoffer.com/12306/question
-                Future<List<TrainPurchaseTicketRespDTO>> completableFuture = selectSeatThreadPoolExecutor
-                        .submit(() -> distributeSeats(trainType, seatType, requestParam, passengerSeatDetails));
-                futureResults.add(completableFuture);
-            });
-            // 并行流极端情况下有坑，详情参考：https://nageoffer.com/12306/question
-            futureResults.parallelStream().forEach(completableFuture -> {
-                try {
-                    actualResult.addAll(completableFuture.get());
-                } catch (Exception e) {
-                    throw new ServiceException("站点余票不足，请尝试更换座位类型或选择其它站点");
-                }
-            });
+            // 不同座位类型并行选座，共用请求截止时间，任一座位类型失败时取消其它座位类型的选座任务
+            List<Callable<List<TrainPurchaseTicketRespDTO>>> tasks = new ArrayList<>(seatTypeMap.size());
+            seatTypeMap.forEach((seatType, passengerSeatDetails) -> tasks.add(() -> distributeSeats(trainType, seatType, requestParam, passengerSeatDetails, compensations)));
+            seatDistributionExecutor.invokeAll(tasks).forEach(actualResult::addAll);
         } else {
             seatTypeMap.forEach((seatType, passengerSeatDetails) -> {
-                List<TrainPurchaseTicketRespDTO> aggregationResult = distributeSeats(trainType, seatType, requestParam, passengerSeatDetails);
+                List<TrainPurchaseTicketRespDTO> aggregationResult = distributeSeats(trainType, seatType, requestParam, passengerSeatDetails, compensations);
                 actualResult.addAll(aggregationResult);
             });
         }
@@ -100,26 +103,13 @@ public final class TrainSeatTypeSelector {
         List<String> passengerIds = actualResult.stream()
                 .map(TrainPurchaseTicketRespDTO::getPassengerId)
                 .collect(Collectors.toList());
-        Result<List<PassengerRespDTO>> passengerRemoteResult;
-        List<PassengerRespDTO> passengerRemoteResultList;
-        try {
-            passengerRemoteResult = userRemoteService.listPassengerQueryByIds(UserContext.getUsername(), passengerIds);
-            if (!passengerRemoteResult.isSuccess() || CollUtil.isEmpty(passengerRemoteResultList = passengerRemoteResult.getData())) {
-                throw new RemoteException("用户服务远程调用查询乘车人相信信息错误");
-            }
-        } catch (Throwable ex) {
-            if (ex instanceof RemoteException) {
-                log.error("用户服务远程调用查询乘车人相信信息错误，当前用户：{}，请求参数：{}", UserContext.getUsername(), passengerIds);
-            } else {
-                log.error("用户服务远程调用查询乘车人相信信息错误，当前用户：{}，请求参数：{}", UserContext.getUsername(), passengerIds, ex);
-            }
-            throw ex;
-        }
+        // 乘车人信息读取本地快照，避免持有购票锁期间每次远程调用用户服务
+        Map<String, PassengerRespDTO> passengerMap = passengerSnapshotCache.listPassenger(UserContext.getUsername(), passengerIds);
+        // 票价在购票事务内按乘车人获取，使用本地票价矩阵避免每个乘车人一次数据库查询
+        TrainFareMatrix fareMatrix = trainFareMatrixManager.getFareMatrix(requestParam.getTrainId());
         actualResult.forEach(each -> {
             String passengerId = each.getPassengerId();
-            passengerRemoteResultList.stream()
-                    .filter(item -> Objects.equals(item.getId(), passengerId))
-                    .findFirst()
+            Optional.ofNullable(passengerMap.get(passengerId))
                     .ifPresent(passenger -> {
                         each.setIdCard(passenger.getIdCard());
                         each.setPhone(passenger.getPhone());
@@ -127,31 +117,46 @@ public final class TrainSeatTypeSelector {
                         each.setIdType(passenger.getIdType());
                         each.setRealName(passenger.getRealName());
                     });
-            LambdaQueryWrapper<TrainStationPriceDO> lambdaQueryWrapper = Wrappers.lambdaQuery(TrainStationPriceDO.class)
-                    .eq(TrainStationPriceDO::getTrainId, requestParam.getTrainId())
-                    .eq(TrainStationPriceDO::getDeparture, requestParam.getDeparture())
-                    .eq(TrainStationPriceDO::getArrival, requestParam.getArrival())
-                    .eq(TrainStationPriceDO::getSeatType, each.getSeatType())
-                    .select(TrainStationPriceDO::getPrice);
-            TrainStationPriceDO trainStationPriceDO = trainStationPriceMapper.selectOne(lambdaQueryWrapper);
-            each.setAmount(trainStationPriceDO.getPrice());
+            int price = fareMatrix.getPrice(requestParam.getDeparture(), requestParam.getArrival(), each.getSeatType());
+            if (price == TrainFareMatrix.ABSENT) {
+                throw new ServiceException("列车站点票价不存在");
+            }
+            each.setAmount(price);
         });
         // 购买列车中间站点余票如何更新？详细查看：https://nageoffer.com/12306/question
         seatService.lockSeat(requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), actualResult);
         return actualResult;
     }
 
-    private List<TrainPurchaseTicketRespDTO> distributeSeats(Integer trainType, Integer seatType, PurchaseTicketReqDTO requestParam, List<PurchaseTicketPassengerDetailDTO> passengerSeatDetails) {
+    private List<TrainPurchaseTicketRespDTO> distributeSeats(Integer trainType, Integer seatType, PurchaseTicketReqDTO requestParam, List<PurchaseTicketPassengerDetailDTO> passengerSeatDetails, SelectSeatCompensation compensations) {
         String buildStrategyKey = VehicleTypeEnum.findNameByCode(trainType) + VehicleSeatTypeEnum.findNameByCode(seatType);
         SelectSeatDTO selectSeatDTO = SelectSeatDTO.builder()
                 .seatType(seatType)
                 .passengerSeatDetails(passengerSeatDetails)
                 .requestParam(requestParam)
+                .compensations(compensations)
                 .build();
+        // 仅策略未定义时提示列车类型未适配，选座过程中的异常（如余票不足）原样抛出
+        AbstractExecuteStrategy<SelectSeatDTO, List<TrainPurchaseTicketRespDTO>> executeStrategy;
         try {
-            return abstractStrategyChoose.chooseAndExecuteResp(buildStrategyKey, selectSeatDTO);//这里会进入executeResp这个方法
+            executeStrategy = abstractStrategyChoose.choose(buildStrategyKey, null);
         } catch (ServiceException ex) {
             throw new ServiceException("当前车次列车类型暂未适配，请购买G35或G39车次");
         }
+        return executeStrategy.executeResp(selectSeatDTO);//这里会进入executeResp这个方法
+    }
+
+    /**
+     * 购票事务未提交时执行补偿动作，同步回调注册在调用线程，并行选座的工作线程无需感知事务
+     */
+    private void registerCompensationOnRollback(SelectSeatCompensation compensations) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    compensations.compensate();
+                }
+            }
+        });
     }
 }
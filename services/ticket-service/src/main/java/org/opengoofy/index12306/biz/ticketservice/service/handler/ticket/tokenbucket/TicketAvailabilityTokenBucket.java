@@ -17,6 +17,7 @@
 
 package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket;
 
+import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson2.JSONArray;
@@ -30,34 +31,47 @@ import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainMapper;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteSeatTypeCountDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.SeatTypeCountDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.SegmentSeatTypeCountDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
 import org.opengoofy.index12306.biz.ticketservice.remote.dto.TicketOrderDetailRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.remote.dto.TicketOrderPassengerDetailRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.bases.Singleton;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.opengoofy.index12306.framework.starter.common.toolkit.Assert;
 import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.Index12306Constant.ADVANCE_TICKET_DAY;
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.LOCK_TICKET_AVAILABILITY_TOKEN_BUCKET;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET;
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_AVAILABILITY_TOKEN_BUCKET;
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_INFO;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_REMAINING_TICKET;
 
 /**
  * 列车车票余量令牌桶，应对海量并发场景下满足并行、限流以及防超卖等场景
@@ -74,9 +88,36 @@ public final class TicketAvailabilityTokenBucket {
     private final RedissonClient redissonClient;
     private final SeatMapper seatMapper;
     private final TrainMapper trainMapper;
+    private final TicketAvailabilityTokenSubBucketManager ticketAvailabilityTokenSubBucketManager;
+    private final TicketSoldOutRegistry ticketSoldOutRegistry;
+    private final ThreadPoolExecutor preSaleWarmupThreadPoolExecutor;
 
     private static final String LUA_TICKET_AVAILABILITY_TOKEN_BUCKET_PATH = "lua/ticket_availability_token_bucket.lua";
     private static final String LUA_TICKET_AVAILABILITY_ROLLBACK_TOKEN_BUCKET_PATH = "lua/ticket_availability_rollback_token_bucket.lua";
+    private static final String LUA_TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET_PATH = "lua/ticket_availability_segment_token_bucket.lua";
+    private static final String LUA_TICKET_AVAILABILITY_SEGMENT_ROLLBACK_TOKEN_BUCKET_PATH = "lua/ticket_availability_segment_rollback_token_bucket.lua";
+    private static final String LUA_TICKET_AVAILABILITY_TOKEN_BUCKET_SPLIT_PATH = "lua/ticket_availability_token_bucket_split.lua";
+    private static final String LUA_TICKET_AVAILABILITY_TOKEN_BUCKET_BORROW_PATH = "lua/ticket_availability_token_bucket_borrow.lua";
+
+    /**
+     * 令牌桶模式：route 按站点对存储令牌，segment 按相邻站点基本区间存储令牌
+     */
+    @Value("${ticket.token-bucket.mode:route}")
+    private String tokenBucketMode;
+
+    /**
+     * 是否在扣减令牌的同一 Lua 脚本中预占站点余票，开启后选座成功不再单独扣减站点余票缓存
+     */
+    @Value("${ticket.token-bucket.reserve-remaining-ticket:false}")
+    private boolean reserveRemainingTicket;
+    @Value("${ticket.availability.cache-update.type:}")
+    private String ticketAvailabilityCacheUpdateType;
+    @Value("${ticket.remaining-ticket.mode:route}")
+    private String remainingTicketMode;
+    @Value("${ticket.token-bucket.provision.batch-size:100}")
+    private int provisionBatchSize;
+    @Value("${framework.cache.redis.prefix:}")
+    private String cacheRedisPrefix;
 
     /**
      * 获取车站间令牌桶中的令牌访问
@@ -87,6 +128,32 @@ public final class TicketAvailabilityTokenBucket {
      * @return 是否获取列车车票余量令牌桶中的令牌，{@link Boolean#TRUE} or {@link Boolean#FALSE}
      */
     public boolean takeTokenFromBucket(PurchaseTicketReqDTO requestParam) {
+        boolean result = doTakeTokenFromBucket(requestParam);
+        if (!result) {
+            markSoldOut(requestParam);
+        }
+        return result;
+    }
+
+    /**
+     * 获取令牌失败后逐个座位类型查询剩余令牌，剩余为 0 时登记售罄，购票人数多于剩余令牌的情况不登记
+     */
+    private void markSoldOut(PurchaseTicketReqDTO requestParam) {
+        if (!ticketSoldOutRegistry.isEnabled()) {
+            return;
+        }
+        requestParam.getPassengers().stream()
+                .map(PurchaseTicketPassengerDetailDTO::getSeatType)
+                .distinct()
+                .forEach(seatType -> {
+                    Integer remainingToken = getRemainingToken(requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), seatType);
+                    if (remainingToken != null && remainingToken <= 0) {
+                        ticketSoldOutRegistry.markSoldOut(requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), seatType);
+                    }
+                });
+    }
+
+    private boolean doTakeTokenFromBucket(PurchaseTicketReqDTO requestParam) {
         // 获取列车信息
         TrainDO trainDO = distributedCache.safeGet(
                 TRAIN_INFO + requestParam.getTrainId(),
@@ -94,35 +161,33 @@ public final class TicketAvailabilityTokenBucket {
                 () -> trainMapper.selectById(requestParam.getTrainId()),
                 ADVANCE_TICKET_DAY,
                 TimeUnit.DAYS);
+        if (isSegmentMode()) {
+            return takeTokenFromSegmentBucket(requestParam, trainDO);
+        }
         // 获取列车经停站之间的数据集合，因为一旦失效要读取整个列车的令牌并重新赋值
         List<RouteDTO> routeDTOList = trainStationService
                 .listTrainStationRoute(requestParam.getTrainId(), trainDO.getStartStation(), trainDO.getEndStation());
         StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        // 热门列车令牌拆分到多个子桶，分散单个令牌桶所在分片的请求压力
+        int subBucketCount = resolveSubBucketCount(requestParam.getTrainId(), trainDO, routeDTOList);
         // 令牌容器是个 Hash 结构，组装令牌 Hash Key
-        String actualHashKey = TICKET_AVAILABILITY_TOKEN_BUCKET + requestParam.getTrainId();
+        String actualHashKey = TICKET_AVAILABILITY_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(requestParam.getTrainId());
         // 判断令牌容器是否存在
-        Boolean hasKey = distributedCache.hasKey(actualHashKey);
-        if (!hasKey) {
+        if (subBucketCount == 0 && !distributedCache.hasKey(actualHashKey)) {
             // 如果令牌容器 Hash 数据结构不存在了，执行加载流程
             RLock lock = redissonClient.getLock(String.format(LOCK_TICKET_AVAILABILITY_TOKEN_BUCKET, requestParam.getTrainId()));
             lock.lock();
             try {
                 //缓存双重判定
                 Boolean hasKeyTwo = distributedCache.hasKey(actualHashKey);
-                if (!hasKeyTwo) {
-                    List<Integer> seatTypes = VehicleTypeEnum.findSeatTypesByCode(trainDO.getTrainType());
-                    Map<String, String> ticketAvailabilityTokenMap = new HashMap<>();
-                    for (RouteDTO each : routeDTOList) {
-                        List<SeatTypeCountDTO> seatTypeCountDTOList = seatMapper.listSeatTypeCount(Long.parseLong(requestParam.getTrainId()), each.getStartStation(), each.getEndStation(), seatTypes);
-                        for (SeatTypeCountDTO eachSeatTypeCountDTO : seatTypeCountDTOList) {
-                            // 组装 Hash 数据结构内部的 Key
-                            String buildCacheKey = StrUtil.join("_", each.getStartStation(), each.getEndStation(), eachSeatTypeCountDTO.getSeatType());
-                            // 一个 Hash 结构下有很多 Key，为了避免多次网络 IO，这里组装成一个本地 Map，通过 putAll 方法请求一次 Redis
-                            ticketAvailabilityTokenMap.put(buildCacheKey, String.valueOf(eachSeatTypeCountDTO.getSeatCount()));
-                        }
-                    }
+                // 其它节点已将令牌拆分到子桶时不再加载列车令牌桶
+                if (!hasKeyTwo && ticketAvailabilityTokenSubBucketManager.isEnabled()) {
+                    subBucketCount = ticketAvailabilityTokenSubBucketManager.refreshSubBucketCount(requestParam.getTrainId());
+                }
+                if (!hasKeyTwo && subBucketCount == 0) {
+                    Map<String, String> ticketAvailabilityTokenMap = buildRouteTokenMap(requestParam.getTrainId(), trainDO, routeDTOList);
                     // 将组装好的 Map 数据，赋值到 Redis
-                    stringRedisTemplate.opsForHash().putAll(TICKET_AVAILABILITY_TOKEN_BUCKET + requestParam.getTrainId(), ticketAvailabilityTokenMap);
+                    stringRedisTemplate.opsForHash().putAll(TICKET_AVAILABILITY_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(requestParam.getTrainId()), ticketAvailabilityTokenMap);
                 }
             } finally {
                 lock.unlock();
@@ -145,14 +210,7 @@ public final class TicketAvailabilityTokenBucket {
         Map<Integer, Long> seatTypeCountMap = requestParam.getPassengers().stream()
                 .collect(Collectors.groupingBy(PurchaseTicketPassengerDetailDTO::getSeatType, Collectors.counting()));
         // 最终结构就是拆分为一个 Map，Key 是座位类型，value 是该座位类型的购票人数
-        JSONArray seatTypeCountArray = seatTypeCountMap.entrySet().stream()
-                .map(entry -> {
-                    JSONObject jsonObject = new JSONObject();
-                    jsonObject.put("seatType", String.valueOf(entry.getKey()));
-                    jsonObject.put("count", String.valueOf(entry.getValue()));
-                    return jsonObject;
-                })
-                .collect(Collectors.toCollection(JSONArray::new));
+        JSONArray seatTypeCountArray = buildSeatTypeCountArray(seatTypeCountMap);
         // 获取需要判断扣减的站点
         List<RouteDTO> takeoutRouteDTOList = trainStationService
                 .listTakeoutTrainStationRoute(requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival());
@@ -162,27 +220,145 @@ public final class TicketAvailabilityTokenBucket {
         //● luaScriptKey：用户购买的出发站点和到达站点，比如北京南_南京南。
         //● seatTypeCountArray：需要扣减的座位类型以及对应数量。
         //● takeoutRouteDTOList 需要扣减的相关列车站点。
-        Long result = stringRedisTemplate.execute(actual, Lists.newArrayList(actualHashKey, luaScriptKey), JSON.toJSONString(seatTypeCountArray), JSON.toJSONString(takeoutRouteDTOList));
+        Object[] args = {JSON.toJSONString(seatTypeCountArray), JSON.toJSONString(takeoutRouteDTOList), luaScriptKey};
+        if (subBucketCount > 0) {
+            return takeTokenFromSubBucket(requestParam.getTrainId(), trainDO, routeDTOList, subBucketCount, actual, args, seatTypeCountMap);
+        }
+        List<String> keys = buildReserveKeys(actualHashKey, requestParam.getTrainId(), takeoutRouteDTOList);
+        Long result = stringRedisTemplate.execute(actual, keys, args);
+        // 令牌桶在加载之后被其它节点拆分到子桶
+        if (Objects.equals(result, 2L) && ticketAvailabilityTokenSubBucketManager.isEnabled()
+                && (subBucketCount = ticketAvailabilityTokenSubBucketManager.refreshSubBucketCount(requestParam.getTrainId())) > 0) {
+            return takeTokenFromSubBucket(requestParam.getTrainId(), trainDO, routeDTOList, subBucketCount, actual, args, seatTypeCountMap);
+        }
         return result != null && Objects.equals(result, 0L);
     }
 
     /**
-     * 回滚列车余量令牌，一般为订单取消或长时间未支付触发
+     * 从 t_seat 统计列车全部站点对的座位数量，组装令牌桶 Hash 数据
+     */
+    private Map<String, String> buildRouteTokenMap(String trainId, TrainDO trainDO, List<RouteDTO> routeDTOList) {
+        List<Integer> seatTypes = VehicleTypeEnum.findSeatTypesByCode(trainDO.getTrainType());
+        Map<String, String> ticketAvailabilityTokenMap = new HashMap<>();
+        for (RouteDTO each : routeDTOList) {
+            List<SeatTypeCountDTO> seatTypeCountDTOList = seatMapper.listSeatTypeCount(Long.parseLong(trainId), each.getStartStation(), each.getEndStation(), seatTypes);
+            for (SeatTypeCountDTO eachSeatTypeCountDTO : seatTypeCountDTOList) {
+                // 组装 Hash 数据结构内部的 Key
+                String buildCacheKey = StrUtil.join("_", each.getStartStation(), each.getEndStation(), eachSeatTypeCountDTO.getSeatType());
+                // 一个 Hash 结构下有很多 Key，为了避免多次网络 IO，这里组装成一个本地 Map，通过 putAll 方法请求一次 Redis
+                ticketAvailabilityTokenMap.put(buildCacheKey, String.valueOf(eachSeatTypeCountDTO.getSeatCount()));
+            }
+        }
+        return ticketAvailabilityTokenMap;
+    }
+
+    /**
+     * 获取列车子桶数量，配置的热门列车或请求速率超过阈值的列车在首次访问时拆分令牌桶
      *
-     * @param requestParam 回滚列车余量令牌入参
+     * @return 子桶数量，0 代表使用列车令牌桶
      */
-    public void rollbackInBucket(TicketOrderDetailRespDTO requestParam) {
-        DefaultRedisScript<Long> actual = Singleton.get(LUA_TICKET_AVAILABILITY_ROLLBACK_TOKEN_BUCKET_PATH, () -> {
+    private int resolveSubBucketCount(String trainId, TrainDO trainDO, List<RouteDTO> routeDTOList) {
+        if (!ticketAvailabilityTokenSubBucketManager.isEnabled()) {
+            return 0;
+        }
+        int subBucketCount = ticketAvailabilityTokenSubBucketManager.getSubBucketCount(trainId);
+        if (subBucketCount > 0) {
+            return subBucketCount;
+        }
+        int splitCount = ticketAvailabilityTokenSubBucketManager.acquireSplitCount(trainId);
+        return splitCount > 0 ? splitBucket(trainId, trainDO, routeDTOList, splitCount) : 0;
+    }
+
+    /**
+     * 子桶获取令牌，优先扣减用户所属子桶，令牌不足时依次尝试其它子桶整单扣减；
+     * 单个子桶都无法满足时跨子桶借用，逐个子桶扣减可用部分，凑齐前全部子桶耗尽则归还已借用的令牌并判定无余票
+     */
+    private boolean takeTokenFromSubBucket(String trainId, TrainDO trainDO, List<RouteDTO> routeDTOList, int subBucketCount,
+                                           DefaultRedisScript<Long> actual, Object[] args, Map<Integer, Long> seatTypeCountMap) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        int startIndex = ticketAvailabilityTokenSubBucketManager.selectSubBucket(subBucketCount);
+        for (int i = 0; i < subBucketCount; i++) {
+            List<String> keys = Lists.newArrayList(ticketAvailabilityTokenSubBucketManager.buildSubBucketKey(trainId, (startIndex + i) % subBucketCount));
+            Long result = stringRedisTemplate.execute(actual, keys, args);
+            if (Objects.equals(result, 2L)) {
+                loadSubBucket(trainId, trainDO, routeDTOList, subBucketCount);
+                result = stringRedisTemplate.execute(actual, keys, args);
+            }
+            if (Objects.equals(result, 0L)) {
+                return true;
+            }
+        }
+        return subBucketCount > 1 && borrowTokenFromSubBuckets(trainId, subBucketCount, startIndex, (String) args[1], (String) args[2], seatTypeCountMap);
+    }
+
+    /**
+     * 跨子桶借用令牌，子桶之间不在同一分片无法在一个 Lua 脚本内完成，逐个子桶扣减后失败时逐个归还
+     */
+    private boolean borrowTokenFromSubBuckets(String trainId, int subBucketCount, int startIndex, String takeoutRoutes, String luaScriptKey, Map<Integer, Long> seatTypeCountMap) {
+        DefaultRedisScript<List> borrowScript = Singleton.get(LUA_TICKET_AVAILABILITY_TOKEN_BUCKET_BORROW_PATH, () -> {
+            DefaultRedisScript<List> redisScript = new DefaultRedisScript<>();
+            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TICKET_AVAILABILITY_TOKEN_BUCKET_BORROW_PATH)));
+            redisScript.setResultType(List.class);
+            return redisScript;
+        });
+        Assert.notNull(borrowScript);
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        Map<Integer, Long> remaining = new LinkedHashMap<>(seatTypeCountMap);
+        // 子桶下标 -> 该子桶实际借出的座位类型数量
+        Map<Integer, Map<Integer, Long>> borrowed = new LinkedHashMap<>();
+        for (int i = 0; i < subBucketCount && !remaining.isEmpty(); i++) {
+            int subBucketIndex = (startIndex + i) % subBucketCount;
+            List<Integer> seatTypes = new ArrayList<>(remaining.keySet());
+            List<?> taken = stringRedisTemplate.execute(
+                    borrowScript,
+                    Lists.newArrayList(ticketAvailabilityTokenSubBucketManager.buildSubBucketKey(trainId, subBucketIndex)),
+                    JSON.toJSONString(buildSeatTypeCountArray(remaining)),
+                    takeoutRoutes,
+                    luaScriptKey);
+            for (int j = 0; taken != null && j < taken.size() && j < seatTypes.size(); j++) {
+                long count = ((Number) taken.get(j)).longValue();
+                if (count <= 0) {
+                    continue;
+                }
+                Integer seatType = seatTypes.get(j);
+                borrowed.computeIfAbsent(subBucketIndex, key -> new HashMap<>()).put(seatType, count);
+                long left = remaining.get(seatType) - count;
+                if (left > 0) {
+                    remaining.put(seatType, left);
+                } else {
+                    remaining.remove(seatType);
+                }
+            }
+        }
+        if (remaining.isEmpty()) {
+            return true;
+        }
+        borrowed.forEach((subBucketIndex, seatTypeCount) -> returnBorrowedToken(trainId, subBucketIndex, takeoutRoutes, seatTypeCount));
+        return false;
+    }
+
+    private void returnBorrowedToken(String trainId, int subBucketIndex, String takeoutRoutes, Map<Integer, Long> seatTypeCount) {
+        DefaultRedisScript<Long> rollbackScript = Singleton.get(LUA_TICKET_AVAILABILITY_ROLLBACK_TOKEN_BUCKET_PATH, () -> {
             DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
             redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TICKET_AVAILABILITY_ROLLBACK_TOKEN_BUCKET_PATH)));
             redisScript.setResultType(Long.class);
             return redisScript;
         });
-        Assert.notNull(actual);
-        List<TicketOrderPassengerDetailRespDTO> passengerDetails = requestParam.getPassengerDetails();
-        Map<Integer, Long> seatTypeCountMap = passengerDetails.stream()
-                .collect(Collectors.groupingBy(TicketOrderPassengerDetailRespDTO::getSeatType, Collectors.counting()));
-        JSONArray seatTypeCountArray = seatTypeCountMap.entrySet().stream()
+        Assert.notNull(rollbackScript);
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        try {
+            stringRedisTemplate.execute(
+                    rollbackScript,
+                    Lists.newArrayList(ticketAvailabilityTokenSubBucketManager.buildSubBucketKey(trainId, subBucketIndex)),
+                    JSON.toJSONString(buildSeatTypeCountArray(seatTypeCount)),
+                    takeoutRoutes);
+        } catch (Throwable ex) {
+            log.error("跨子桶借用令牌失败后归还令牌失败，列车 ID：{}，子桶：{}，座位类型数量：{}", trainId, subBucketIndex, seatTypeCount, ex);
+        }
+    }
+
+    private JSONArray buildSeatTypeCountArray(Map<Integer, Long> seatTypeCountMap) {
+        return seatTypeCountMap.entrySet().stream()
                 .map(entry -> {
                     JSONObject jsonObject = new JSONObject();
                     jsonObject.put("seatType", String.valueOf(entry.getKey()));
@@ -190,22 +366,477 @@ public final class TicketAvailabilityTokenBucket {
                     return jsonObject;
                 })
                 .collect(Collectors.toCollection(JSONArray::new));
+    }
+
+    /**
+     * 将列车令牌桶拆分到子桶，令牌桶未加载时直接从 t_seat 加载到子桶
+     */
+    private int splitBucket(String trainId, TrainDO trainDO, List<RouteDTO> routeDTOList, int splitCount) {
+        RLock lock = redissonClient.getLock(String.format(LOCK_TICKET_AVAILABILITY_TOKEN_BUCKET, trainId));
+        lock.lock();
+        try {
+            int subBucketCount = ticketAvailabilityTokenSubBucketManager.refreshSubBucketCount(trainId);
+            if (subBucketCount > 0) {
+                return subBucketCount;
+            }
+            DefaultRedisScript<List> actual = Singleton.get(LUA_TICKET_AVAILABILITY_TOKEN_BUCKET_SPLIT_PATH, () -> {
+                DefaultRedisScript<List> redisScript = new DefaultRedisScript<>();
+                redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TICKET_AVAILABILITY_TOKEN_BUCKET_SPLIT_PATH)));
+                redisScript.setResultType(List.class);
+                return redisScript;
+            });
+            Assert.notNull(actual);
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            List<String> keys = Lists.newArrayList(
+                    TICKET_AVAILABILITY_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId),
+                    ticketAvailabilityTokenSubBucketManager.buildSubBucketCountKey(trainId));
+            List<?> tokens = stringRedisTemplate.execute(actual, keys, String.valueOf(splitCount));
+            Map<String, String> tokenMap = new HashMap<>();
+            for (int i = 0; tokens != null && i + 1 < tokens.size(); i += 2) {
+                tokenMap.put(String.valueOf(tokens.get(i)), String.valueOf(tokens.get(i + 1)));
+            }
+            if (tokenMap.isEmpty()) {
+                tokenMap = buildRouteTokenMap(trainId, trainDO, routeDTOList);
+            }
+            putSubBuckets(trainId, tokenMap, splitCount);
+            log.info("列车 {} 令牌桶拆分为 {} 个子桶", trainId, splitCount);
+            return ticketAvailabilityTokenSubBucketManager.refreshSubBucketCount(trainId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 子桶缺失时从 t_seat 重新加载全部子桶
+     */
+    private void loadSubBucket(String trainId, TrainDO trainDO, List<RouteDTO> routeDTOList, int subBucketCount) {
+        RLock lock = redissonClient.getLock(String.format(LOCK_TICKET_AVAILABILITY_TOKEN_BUCKET, trainId));
+        lock.lock();
+        try {
+            boolean loaded = true;
+            for (int i = 0; i < subBucketCount && loaded; i++) {
+                loaded = distributedCache.hasKey(ticketAvailabilityTokenSubBucketManager.buildSubBucketKey(trainId, i));
+            }
+            if (loaded) {
+                return;
+            }
+            putSubBuckets(trainId, buildRouteTokenMap(trainId, trainDO, routeDTOList), subBucketCount);
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            stringRedisTemplate.opsForValue().set(ticketAvailabilityTokenSubBucketManager.buildSubBucketCountKey(trainId), String.valueOf(subBucketCount));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putSubBuckets(String trainId, Map<String, String> tokenMap, int subBucketCount) {
         StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
-        String actualHashKey = TICKET_AVAILABILITY_TOKEN_BUCKET + requestParam.getTrainId();
-        String luaScriptKey = StrUtil.join("_", requestParam.getDeparture(), requestParam.getArrival());
-        List<RouteDTO> takeoutRouteDTOList = trainStationService.listTakeoutTrainStationRoute(String.valueOf(requestParam.getTrainId()), requestParam.getDeparture(), requestParam.getArrival());
-        Long result = stringRedisTemplate.execute(actual, Lists.newArrayList(actualHashKey, luaScriptKey), JSON.toJSONString(seatTypeCountArray), JSON.toJSONString(takeoutRouteDTOList));
+        List<Map<String, String>> subBucketTokens = ticketAvailabilityTokenSubBucketManager.split(tokenMap, subBucketCount);
+        for (int i = 0; i < subBucketCount; i++) {
+            stringRedisTemplate.opsForHash().putAll(ticketAvailabilityTokenSubBucketManager.buildSubBucketKey(trainId, i), subBucketTokens.get(i));
+        }
+    }
+
+    /**
+     * 列车是否在令牌桶 Lua 脚本中同时扣减以及回滚站点余票
+     * <p>
+     * 仅站点对令牌桶模式、站点余票缓存由应用维护且余票缓存为站点对 Hash 模式时生效；
+     * 已拆分子桶的列车子桶与站点余票不在同一分片，站点余票由应用单独扣减以及回滚
+     *
+     * @param trainId 列车 ID
+     */
+    public boolean isReserveRemainingTicket(String trainId) {
+        return reserveRemainingTicket
+                && !StrUtil.equals(ticketAvailabilityCacheUpdateType, "binlog")
+                && StrUtil.equals(remainingTicketMode, "route")
+                && isRouteBucket(trainId);
+    }
+
+    /**
+     * 列车令牌是否存放在站点对令牌桶 Hash 中，基本区间模式以及已拆分子桶的列车返回 false
+     *
+     * @param trainId 列车 ID
+     */
+    public boolean isRouteBucket(String trainId) {
+        return !isSegmentMode() && ticketAvailabilityTokenSubBucketManager.getSubBucketCount(trainId) == 0;
+    }
+
+    /**
+     * 回滚购票请求已扣减的列车余量令牌，开启预占站点余票时同时回滚预占的站点余票；
+     * 一般为购票失败或异步购票排队请求未执行触发
+     *
+     * @param requestParam 购票请求参数入参
+     */
+    public void rollbackInBucket(PurchaseTicketReqDTO requestParam) {
+        ticketSoldOutRegistry.clear(requestParam.getTrainId());
+        Map<Integer, Long> seatTypeCountMap = requestParam.getPassengers().stream()
+                .collect(Collectors.groupingBy(PurchaseTicketPassengerDetailDTO::getSeatType, Collectors.counting()));
+        if (isSegmentMode()) {
+            rollbackInSegmentBucket(requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), seatTypeCountMap);
+            return;
+        }
+        rollbackInRouteBucket(requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), seatTypeCountMap);
+    }
+
+    /**
+     * 回滚列车余量令牌，一般为订单取消或长时间未支付触发
+     *
+     * @param requestParam 回滚列车余量令牌入参
+     */
+    public void rollbackInBucket(TicketOrderDetailRespDTO requestParam) {
+        ticketSoldOutRegistry.clear(String.valueOf(requestParam.getTrainId()));
+        List<TicketOrderPassengerDetailRespDTO> passengerDetails = requestParam.getPassengerDetails();
+        Map<Integer, Long> seatTypeCountMap = passengerDetails.stream()
+                .collect(Collectors.groupingBy(TicketOrderPassengerDetailRespDTO::getSeatType, Collectors.counting()));
+        if (isSegmentMode()) {
+            rollbackInSegmentBucket(String.valueOf(requestParam.getTrainId()), requestParam.getDeparture(), requestParam.getArrival(), seatTypeCountMap);
+            return;
+        }
+        rollbackInRouteBucket(String.valueOf(requestParam.getTrainId()), requestParam.getDeparture(), requestParam.getArrival(), seatTypeCountMap);
+    }
+
+    private void rollbackInRouteBucket(String trainId, String departure, String arrival, Map<Integer, Long> seatTypeCountMap) {
+        DefaultRedisScript<Long> actual = Singleton.get(LUA_TICKET_AVAILABILITY_ROLLBACK_TOKEN_BUCKET_PATH, () -> {
+            DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TICKET_AVAILABILITY_ROLLBACK_TOKEN_BUCKET_PATH)));
+            redisScript.setResultType(Long.class);
+            return redisScript;
+        });
+        Assert.notNull(actual);
+        JSONArray seatTypeCountArray = buildSeatTypeCountArray(seatTypeCountMap);
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<RouteDTO> takeoutRouteDTOList = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival);
+        int subBucketCount = ticketAvailabilityTokenSubBucketManager.getSubBucketCount(trainId);
+        if (subBucketCount > 0) {
+            // 子桶之间令牌可以互相借用，回滚到任一子桶即可
+            String subBucketKey = ticketAvailabilityTokenSubBucketManager.buildSubBucketKey(trainId, ThreadLocalRandom.current().nextInt(subBucketCount));
+            Long result = stringRedisTemplate.execute(actual, Lists.newArrayList(subBucketKey), JSON.toJSONString(seatTypeCountArray), JSON.toJSONString(takeoutRouteDTOList));
+            if (Objects.equals(result, 2L)) {
+                // 子桶未加载时无需回滚，下次获取令牌时以数据库座位状态为准重新加载
+                log.warn("列车 {} 令牌子桶未加载，跳过令牌回滚", trainId);
+                return;
+            }
+            if (result == null || !Objects.equals(result, 0L)) {
+                log.error("回滚列车余票令牌子桶失败，列车 ID：{}，出发站：{}，到达站：{}，座位类型数量：{}", trainId, departure, arrival, seatTypeCountMap);
+                throw new ServiceException("回滚列车余票令牌失败");
+            }
+            return;
+        }
+        String actualHashKey = TICKET_AVAILABILITY_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId);
+        List<String> keys = buildReserveKeys(actualHashKey, trainId, takeoutRouteDTOList);
+        Long result = stringRedisTemplate.execute(actual, keys, JSON.toJSONString(seatTypeCountArray), JSON.toJSONString(takeoutRouteDTOList));
+        if (result == null || !Objects.equals(result, 0L)) {
+            log.error("回滚列车余票令牌失败，列车 ID：{}，出发站：{}，到达站：{}，座位类型数量：{}", trainId, departure, arrival, seatTypeCountMap);
+            throw new ServiceException("回滚列车余票令牌失败");
+        }
+    }
+
+    /**
+     * 构建令牌桶 Lua 脚本 Key 集合，开启预占站点余票时追加途经站点余票 Key，与途经站点一一对应
+     */
+    private List<String> buildReserveKeys(String actualHashKey, String trainId, List<RouteDTO> takeoutRouteDTOList) {
+        List<String> keys = Lists.newArrayList(actualHashKey);
+        if (isReserveRemainingTicket(trainId)) {
+            takeoutRouteDTOList.forEach(each -> keys.add(TRAIN_STATION_REMAINING_TICKET + TrainCacheKeyUtil.buildKeySuffix(trainId, each.getStartStation(), each.getEndStation())));
+        }
+        return keys;
+    }
+
+    /**
+     * 查询列车站点座位类型剩余令牌，仅读取不扣减
+     *
+     * @param trainId   列车 ID
+     * @param departure 出发站
+     * @param arrival   到达站
+     * @param seatType  座位类型
+     * @return 剩余令牌数量，令牌桶未加载或站点不合法时返回 null
+     */
+    public Integer getRemainingToken(String trainId, String departure, String arrival, Integer seatType) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        if (!isSegmentMode()) {
+            String hashKey = StrUtil.join("_", departure, arrival, seatType);
+            int subBucketCount = ticketAvailabilityTokenSubBucketManager.getSubBucketCount(trainId);
+            if (subBucketCount > 0) {
+                int total = 0;
+                for (int i = 0; i < subBucketCount; i++) {
+                    Object token = stringRedisTemplate.opsForHash().get(ticketAvailabilityTokenSubBucketManager.buildSubBucketKey(trainId, i), hashKey);
+                    if (token == null) {
+                        return null;
+                    }
+                    total += Integer.parseInt(token.toString());
+                }
+                return total;
+            }
+            Object token = stringRedisTemplate.opsForHash().get(TICKET_AVAILABILITY_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId), hashKey);
+            return token == null ? null : Integer.parseInt(token.toString());
+        }
+        TrainDO trainDO = distributedCache.safeGet(
+                TRAIN_INFO + trainId,
+                TrainDO.class,
+                () -> trainMapper.selectById(trainId),
+                ADVANCE_TICKET_DAY,
+                TimeUnit.DAYS);
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        int seatTypeIndex = VehicleTypeEnum.findSeatTypesByCode(trainDO.getTrainType()).indexOf(seatType);
+        int startIndex = stations.indexOf(departure);
+        int endIndex = stations.indexOf(arrival);
+        if (seatTypeIndex < 0 || startIndex < 0 || endIndex <= startIndex) {
+            return null;
+        }
+        int segmentCount = stations.size() - 1;
+        BitFieldSubCommands subCommands = BitFieldSubCommands.create();
+        for (int segment = startIndex; segment < endIndex; segment++) {
+            subCommands = subCommands.get(BitFieldSubCommands.BitFieldType.signed(32))
+                    .valueAt(BitFieldSubCommands.Offset.offset(seatTypeIndex * segmentCount + segment).multipliedByTypeLength());
+        }
+        // 令牌桶未加载时 BITFIELD 读取结果全部为 0，无法与售罄区分，返回空由调用方自行处理
+        String actualKey = TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId);
+        List<Long> tokens = distributedCache.hasKey(actualKey) ? stringRedisTemplate.opsForValue().bitField(actualKey, subCommands) : null;
+        return CollUtil.isEmpty(tokens) ? null : tokens.stream().mapToInt(Long::intValue).min().orElse(0);
+    }
+
+    private boolean isSegmentMode() {
+        return StrUtil.equals(tokenBucketMode, "segment");
+    }
+
+    /**
+     * 基本区间令牌桶获取令牌，Lua 脚本内一次 BITFIELD 读取途经基本区间令牌取最小值判断，一次 BITFIELD 扣减，
+     * 脚本执行的 Redis 命令数量与途经站点数量无关
+     */
+    private boolean takeTokenFromSegmentBucket(PurchaseTicketReqDTO requestParam, TrainDO trainDO) {
+        List<String> stations = trainStationService.listTrainStationName(requestParam.getTrainId());
+        List<Integer> seatTypes = VehicleTypeEnum.findSeatTypesByCode(trainDO.getTrainType());
+        Map<Integer, Long> seatTypeCountMap = requestParam.getPassengers().stream()
+                .collect(Collectors.groupingBy(PurchaseTicketPassengerDetailDTO::getSeatType, Collectors.counting()));
+        List<String> args = buildSegmentScriptArgs(stations, seatTypes, requestParam.getDeparture(), requestParam.getArrival(), seatTypeCountMap);
+        if (args == null) {
+            return false;
+        }
+        DefaultRedisScript<Long> actual = Singleton.get(LUA_TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET_PATH, () -> {
+            DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET_PATH)));
+            redisScript.setResultType(Long.class);
+            return redisScript;
+        });
+        Assert.notNull(actual);
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<String> keys = Lists.newArrayList(TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(requestParam.getTrainId()));
+        Long result = stringRedisTemplate.execute(actual, keys, args.toArray());
+        if (Objects.equals(result, 2L)) {
+            // 令牌桶未加载，加载完成后重新执行一次
+            loadSegmentBucket(requestParam.getTrainId(), stations, seatTypes);
+            result = stringRedisTemplate.execute(actual, keys, args.toArray());
+        }
+        return result != null && Objects.equals(result, 0L);
+    }
+
+    private void rollbackInSegmentBucket(String trainId, String departure, String arrival, Map<Integer, Long> seatTypeCountMap) {
+        TrainDO trainDO = distributedCache.safeGet(
+                TRAIN_INFO + trainId,
+                TrainDO.class,
+                () -> trainMapper.selectById(trainId),
+                ADVANCE_TICKET_DAY,
+                TimeUnit.DAYS);
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        List<Integer> seatTypes = VehicleTypeEnum.findSeatTypesByCode(trainDO.getTrainType());
+        List<String> args = buildSegmentScriptArgs(stations, seatTypes, departure, arrival, seatTypeCountMap);
+        if (args == null) {
+            log.error("回滚列车余票令牌失败，站点或座位类型不合法，列车 ID：{}，出发站：{}，到达站：{}，座位类型数量：{}", trainId, departure, arrival, seatTypeCountMap);
+            throw new ServiceException("回滚列车余票令牌失败");
+        }
+        DefaultRedisScript<Long> actual = Singleton.get(LUA_TICKET_AVAILABILITY_SEGMENT_ROLLBACK_TOKEN_BUCKET_PATH, () -> {
+            DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(LUA_TICKET_AVAILABILITY_SEGMENT_ROLLBACK_TOKEN_BUCKET_PATH)));
+            redisScript.setResultType(Long.class);
+            return redisScript;
+        });
+        Assert.notNull(actual);
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        Long result = stringRedisTemplate.execute(actual, Lists.newArrayList(TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId)), args.toArray());
+        if (Objects.equals(result, 2L)) {
+            // 令牌桶未加载时无需回滚，下次获取令牌时以数据库座位状态为准重新加载
+            log.warn("列车 {} 基本区间令牌桶未加载，跳过令牌回滚", trainId);
+            return;
+        }
         if (result == null || !Objects.equals(result, 0L)) {
-            log.error("回滚列车余票令牌失败，订单信息：{}", JSON.toJSONString(requestParam));
+            log.error("回滚列车余票令牌失败，列车 ID：{}，出发站：{}，到达站：{}，座位类型数量：{}", trainId, departure, arrival, seatTypeCountMap);
             throw new ServiceException("回滚列车余票令牌失败");
         }
     }
 
-    public void putTokenInBucket() {
+    /**
+     * 组装基本区间令牌桶 Lua 脚本参数：基本区间数量、出发站下标、到达站下标，以及座位类型下标与数量对
+     *
+     * @return 脚本参数，站点或座位类型不属于该列车时返回 null
+     */
+    private List<String> buildSegmentScriptArgs(List<String> stations, List<Integer> seatTypes, String departure, String arrival, Map<Integer, Long> seatTypeCountMap) {
+        int startIndex = stations.indexOf(departure);
+        int endIndex = stations.indexOf(arrival);
+        if (startIndex < 0 || endIndex <= startIndex || CollUtil.isEmpty(seatTypes)) {
+            return null;
+        }
+        List<String> args = new ArrayList<>(3 + seatTypeCountMap.size() * 2);
+        args.add(String.valueOf(stations.size() - 1));
+        args.add(String.valueOf(startIndex));
+        args.add(String.valueOf(endIndex));
+        for (Map.Entry<Integer, Long> entry : seatTypeCountMap.entrySet()) {
+            int seatTypeIndex = seatTypes.indexOf(entry.getKey());
+            if (seatTypeIndex < 0) {
+                return null;
+            }
+            args.add(String.valueOf(seatTypeIndex));
+            args.add(String.valueOf(entry.getValue()));
+        }
+        return args;
+    }
 
+    /**
+     * 从 t_seat 加载列车基本区间令牌，一次 BITFIELD 命令写入全部计数器
+     *
+     * @return 是否写入令牌，令牌桶已存在时返回 false
+     */
+    private boolean loadSegmentBucket(String trainId, List<String> stations, List<Integer> seatTypes) {
+        String actualKey = TICKET_AVAILABILITY_SEGMENT_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId);
+        RLock lock = redissonClient.getLock(String.format(LOCK_TICKET_AVAILABILITY_TOKEN_BUCKET, trainId));
+        lock.lock();
+        try {
+            if (distributedCache.hasKey(actualKey)) {
+                return false;
+            }
+            int segmentCount = stations.size() - 1;
+            List<RouteDTO> segmentRoutes = new ArrayList<>(segmentCount);
+            Map<String, Integer> stationIndexMap = new HashMap<>();
+            for (int i = 0; i < segmentCount; i++) {
+                segmentRoutes.add(new RouteDTO(stations.get(i), stations.get(i + 1)));
+                stationIndexMap.put(stations.get(i), i);
+            }
+            int[] tokens = new int[seatTypes.size() * segmentCount];
+            List<SegmentSeatTypeCountDTO> segmentSeatTypeCounts = seatMapper.listSegmentSeatTypeCount(Long.parseLong(trainId), segmentRoutes);
+            for (SegmentSeatTypeCountDTO each : segmentSeatTypeCounts) {
+                Integer segment = stationIndexMap.get(each.getStartStation());
+                int seatTypeIndex = seatTypes.indexOf(each.getSeatType());
+                if (segment != null && seatTypeIndex >= 0) {
+                    tokens[seatTypeIndex * segmentCount + segment] = each.getSeatCount();
+                }
+            }
+            BitFieldSubCommands subCommands = BitFieldSubCommands.create();
+            for (int i = 0; i < tokens.length; i++) {
+                subCommands = subCommands.set(BitFieldSubCommands.BitFieldType.signed(32))
+                        .valueAt(BitFieldSubCommands.Offset.offset(i).multipliedByTypeLength())
+                        .to(tokens[i]);
+            }
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            stringRedisTemplate.opsForValue().bitField(actualKey, subCommands);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量写入一批列车的令牌桶，{@link #initializeTokens(List)} 与开售前缓存预热共用
+     *
+     * @param trains 列车集合
+     * @return 实际写入令牌的列车数量
+     */
+    public int putTokenInBucket(List<TrainDO> trains) {
+        if (CollUtil.isEmpty(trains) || isSegmentMode()) {
+            return putTokenInBucket(trains, null);
+        }
+        List<Long> trainIds = trains.stream().map(TrainDO::getId).collect(Collectors.toList());
+        Map<Long, List<RouteSeatTypeCountDTO>> routeSeatTypeCountMap = seatMapper.listRouteSeatTypeCount(trainIds).stream()
+                .collect(Collectors.groupingBy(RouteSeatTypeCountDTO::getTrainId));
+        return putTokenInBucket(trains, routeSeatTypeCountMap);
     }
 
-    public void initializeTokens() {
+    /**
+     * 批量写入一批列车的令牌桶
+     * <p>
+     * 使用调用方已分组查询的站点对余票组装令牌 Map，持有全部列车令牌桶加载锁后确认未拆分子桶，再通过一次 Pipeline 写入，
+     * 避免与拆分子桶并发导致令牌同时存在于列车令牌桶和子桶；使用 HSETNX 只补齐缺失的令牌，不覆盖已被购票扣减的令牌。
+     * 基本区间模式逐列车分组加载，忽略站点对余票
+     *
+     * @param trains                列车集合
+     * @param routeSeatTypeCountMap 列车 ID -> 全部站点对座位类型余票
+     * @return 实际写入令牌的列车数量，令牌桶已完整存在或已拆分子桶的列车不计入
+     */
+    public int putTokenInBucket(List<TrainDO> trains, Map<Long, List<RouteSeatTypeCountDTO>> routeSeatTypeCountMap) {
+        if (CollUtil.isEmpty(trains)) {
+            return 0;
+        }
+        if (isSegmentMode()) {
+            return (int) trains.stream()
+                    .filter(each -> loadSegmentBucket(
+                            String.valueOf(each.getId()),
+                            trainStationService.listTrainStationName(String.valueOf(each.getId())),
+                            VehicleTypeEnum.findSeatTypesByCode(each.getTrainType())))
+                    .count();
+        }
+        RLock lock = redissonClient.getMultiLock(trains.stream()
+                .map(each -> redissonClient.getLock(String.format(LOCK_TICKET_AVAILABILITY_TOKEN_BUCKET, each.getId())))
+                .toArray(RLock[]::new));
+        lock.lock();
+        try {
+            Map<Long, Map<String, String>> tokenMaps = new LinkedHashMap<>();
+            for (TrainDO each : trains) {
+                String trainId = String.valueOf(each.getId());
+                // 持锁后以 Redis 中的子桶数量为准，本地缓存可能尚未感知其它节点的拆分
+                if (ticketAvailabilityTokenSubBucketManager.isEnabled() && ticketAvailabilityTokenSubBucketManager.refreshSubBucketCount(trainId) > 0) {
+                    continue;
+                }
+                Map<String, String> tokenMap = new HashMap<>();
+                routeSeatTypeCountMap.getOrDefault(each.getId(), List.of()).forEach(route -> tokenMap.put(
+                        StrUtil.join("_", route.getStartStation(), route.getEndStation(), route.getSeatType()),
+                        String.valueOf(route.getSeatCount())));
+                if (!tokenMap.isEmpty()) {
+                    tokenMaps.put(each.getId(), tokenMap);
+                }
+            }
+            if (tokenMaps.isEmpty()) {
+                return 0;
+            }
+            long expireSeconds = TimeUnit.DAYS.toSeconds(ADVANCE_TICKET_DAY);
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<String>) connection -> {
+                tokenMaps.forEach((trainId, tokenMap) -> {
+                    byte[] actualHashKey = (cacheRedisPrefix + TICKET_AVAILABILITY_TOKEN_BUCKET + TrainCacheKeyUtil.hashTag(trainId)).getBytes();
+                    tokenMap.forEach((field, token) -> connection.hashCommands().hSetNX(actualHashKey, field.getBytes(), token.getBytes()));
+                    connection.keyCommands().expire(actualHashKey, expireSeconds);
+                });
+                return null;
+            });
+            // Pipeline 结果按命令顺序返回，每个列车为若干 HSETNX 结果加一个 EXPIRE 结果
+            int provisioned = 0;
+            int offset = 0;
+            for (Map<String, String> tokenMap : tokenMaps.values()) {
+                if (results.subList(offset, offset + tokenMap.size()).contains(Boolean.TRUE)) {
+                    provisioned++;
+                }
+                offset += tokenMap.size() + 1;
+            }
+            return provisioned;
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * 初始化列车令牌桶，按批次拆分后并行执行 {@link #putTokenInBucket(List)}
+     *
+     * @param trains 列车集合，通常为某一出发日期的全部列车
+     * @return 写入令牌桶的列车数量
+     */
+    public int initializeTokens(List<TrainDO> trains) {
+        List<CompletableFuture<Integer>> futures = Lists.partition(trains, provisionBatchSize).stream()
+                .map(each -> CompletableFuture.supplyAsync(() -> putTokenInBucket(each), preSaleWarmupThreadPoolExecutor))
+                .collect(Collectors.toList());
+        int provisioned = 0;
+        for (CompletableFuture<Integer> each : futures) {
+            try {
+                provisioned += each.join();
+            } catch (Throwable ex) {
+                log.error("批量初始化列车令牌桶失败", ex);
+            }
+        }
+        return provisioned;
     }
 }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
+import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.opengoofy.index12306.frameworks.starter.user.core.UserContext;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_AVAILABILITY_TOKEN_SUB_BUCKET;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_AVAILABILITY_TOKEN_SUB_BUCKET_COUNT;
+
+/**
+ * 热门列车令牌子桶管理器
+ * <p>
+ * 开售时单个列车令牌桶 Hash 承接全部购票请求，所在分片 CPU 容易被打满。热门列车的令牌按站点对均分到 K 个子桶，
+ * 子桶使用 {列车ID_子桶下标} 作为 Hash Tag 分散到不同槽位，请求按用户名哈希选择子桶，子桶令牌不足时依次尝试其它子桶。
+ * 子桶数量通过 ticket.token-bucket.sub-bucket.trains 按列车配置，或在单节点单列车每秒请求数超过 auto-split-qps 时自动拆分。
+ * 子桶与站点余票不在同一槽位，开启预占站点余票时不拆分子桶
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TicketAvailabilityTokenSubBucketManager implements InitializingBean {
+
+    private final DistributedCache distributedCache;
+
+    @Value("${ticket.token-bucket.mode:route}")
+    private String tokenBucketMode;
+    @Value("${ticket.token-bucket.reserve-remaining-ticket:false}")
+    private boolean reserveRemainingTicket;
+    @Value("${ticket.token-bucket.sub-bucket.trains:}")
+    private String trains;
+    @Value("${ticket.token-bucket.sub-bucket.auto-split-qps:0}")
+    private long autoSplitQps;
+    @Value("${ticket.token-bucket.sub-bucket.auto-split-count:4}")
+    private int autoSplitCount;
+
+    /**
+     * 列车 ID -> 配置的子桶数量
+     */
+    private final Map<String, Integer> configuredSubBucketCounts = new HashMap<>();
+
+    /**
+     * 列车 ID -> 子桶数量，0 代表未拆分，短时间过期以感知其它节点的拆分
+     */
+    private final Cache<String, Integer> subBucketCounts = Caffeine.newBuilder()
+            .expireAfterWrite(10, TimeUnit.SECONDS)
+            .maximumSize(10000)
+            .build();
+
+    /**
+     * 列车 ID -> 本节点请求速率统计窗口
+     */
+    private final Cache<String, RateWindow> rateWindows = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+
+    private boolean enabled;
+
+    @Override
+    public void afterPropertiesSet() {
+        for (String each : StrUtil.split(trains, ',', true, true)) {
+            List<String> parts = StrUtil.split(each, ':', true, true);
+            int count = parts.size() == 2 ? Integer.parseInt(parts.get(1)) : autoSplitCount;
+            if (count > 1) {
+                configuredSubBucketCounts.put(parts.get(0), count);
+            }
+        }
+        boolean configured = !configuredSubBucketCounts.isEmpty() || (autoSplitQps > 0 && autoSplitCount > 1);
+        if (configured && reserveRemainingTicket) {
+            log.warn("热门列车令牌子桶与预占站点余票互斥，已开启预占站点余票，不拆分令牌子桶");
+        }
+        enabled = configured && !reserveRemainingTicket && StrUtil.equals(tokenBucketMode, "route");
+    }
+
+    /**
+     * 是否开启热门列车令牌子桶
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取列车当前子桶数量
+     *
+     * @param trainId 列车 ID
+     * @return 子桶数量，0 代表列车令牌未拆分
+     */
+    public int getSubBucketCount(String trainId) {
+        if (!enabled) {
+            return 0;
+        }
+        return subBucketCounts.get(trainId, this::loadSubBucketCount);
+    }
+
+    /**
+     * 从 Redis 读取列车子桶数量并刷新本地缓存，用于持有加载锁后的双重判定
+     *
+     * @param trainId 列车 ID
+     * @return 子桶数量，0 代表列车令牌未拆分
+     */
+    public int refreshSubBucketCount(String trainId) {
+        int count = loadSubBucketCount(trainId);
+        subBucketCounts.put(trainId, count);
+        return count;
+    }
+
+    /**
+     * 统计列车购票请求并判断是否需要拆分子桶
+     *
+     * @param trainId 列车 ID
+     * @return 需要拆分时返回子桶数量，否则返回 0
+     */
+    public int acquireSplitCount(String trainId) {
+        Integer configured = configuredSubBucketCounts.get(trainId);
+        if (configured != null) {
+            return configured;
+        }
+        if (autoSplitQps <= 0 || autoSplitCount <= 1) {
+            return 0;
+        }
+        RateWindow rateWindow = rateWindows.get(trainId, key -> new RateWindow());
+        return rateWindow.incrementAndGet() > autoSplitQps ? autoSplitCount : 0;
+    }
+
+    /**
+     * 按用户名哈希选择子桶，同一用户固定命中同一子桶，未登录上下文时随机选择
+     *
+     * @param subBucketCount 子桶数量
+     * @return 子桶下标
+     */
+    public int selectSubBucket(int subBucketCount) {
+        String username = UserContext.getUsername();
+        return StrUtil.isBlank(username)
+                ? ThreadLocalRandom.current().nextInt(subBucketCount)
+                : Math.floorMod(username.hashCode(), subBucketCount);
+    }
+
+    public String buildSubBucketKey(String trainId, int index) {
+        return TICKET_AVAILABILITY_TOKEN_SUB_BUCKET + TrainCacheKeyUtil.hashTag(trainId + "_" + index);
+    }
+
+    public String buildSubBucketCountKey(String trainId) {
+        return TICKET_AVAILABILITY_TOKEN_SUB_BUCKET_COUNT + TrainCacheKeyUtil.hashTag(trainId);
+    }
+
+    /**
+     * 将站点对令牌均分到子桶，余数依次分配给下标较小的子桶
+     *
+     * @param tokenMap       站点对令牌，Key 为 出发站_到达站_座位类型
+     * @param subBucketCount 子桶数量
+     * @return 每个子桶的令牌
+     */
+    public List<Map<String, String>> split(Map<String, String> tokenMap, int subBucketCount) {
+        List<Map<String, String>> result = new ArrayList<>(subBucketCount);
+        for (int i = 0; i < subBucketCount; i++) {
+            result.add(new HashMap<>(tokenMap.size() * 2));
+        }
+        tokenMap.forEach((field, value) -> {
+            long token = Math.max(Long.parseLong(value), 0L);
+            long base = token / subBucketCount;
+            long remainder = token % subBucketCount;
+            for (int i = 0; i < subBucketCount; i++) {
+                result.get(i).put(field, String.valueOf(base + (i < remainder ? 1 : 0)));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 删除列车子桶以及子桶数量标识
+     *
+     * @param trainId 列车 ID
+     */
+    public void delete(String trainId) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        int count = loadSubBucketCount(trainId);
+        for (int i = 0; i < count; i++) {
+            stringRedisTemplate.delete(buildSubBucketKey(trainId, i));
+        }
+        stringRedisTemplate.delete(buildSubBucketCountKey(trainId));
+        subBucketCounts.invalidate(trainId);
+    }
+
+    private int loadSubBucketCount(String trainId) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        String count = stringRedisTemplate.opsForValue().get(buildSubBucketCountKey(trainId));
+        return StrUtil.isBlank(count) ? 0 : Integer.parseInt(count);
+    }
+
+    /**
+     * 秒级请求计数窗口，窗口切换存在并发误差，仅用于判断是否达到拆分阈值
+     */
+    private static final class RateWindow {
+
+        private volatile long windowStart = System.currentTimeMillis();
+        private final AtomicLong count = new AtomicLong();
+
+        private long incrementAndGet() {
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= 1000L) {
+                windowStart = now;
+                count.set(0L);
+            }
+            return count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.route.TrainRouteIndex;
+import org.opengoofy.index12306.biz.ticketservice.service.route.TrainRouteIndexManager;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TICKET_SOLD_OUT_TOPIC;
+
+/**
+ * 列车站点座位类型售罄登记表
+ * <p>
+ * 获取令牌失败且剩余令牌为 0 时登记 列车 + 出发站 + 到达站 + 座位类型 已售罄，并通过 Redis 发布订阅广播到所有节点，
+ * 后续同一站点座位类型的购票请求在本地位图中判断后直接拒绝，不再执行责任链、加载列车信息以及调用 Lua 脚本。
+ * 令牌回滚时清除列车全部售罄标识，登记信息写入后 expireSeconds 过期，过期后由下一次获取令牌重新校验
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TicketSoldOutRegistry implements InitializingBean {
+
+    /**
+     * 单个站点对预留的座位类型位数，座位类型编码超出时不登记
+     */
+    private static final int SEAT_TYPE_SLOTS = 16;
+
+    private final TrainRouteIndexManager trainRouteIndexManager;
+    private final RedissonClient redissonClient;
+
+    @Value("${ticket.sold-out.enabled:false}")
+    private boolean enabled;
+    @Value("${ticket.sold-out.expire-seconds:30}")
+    private long expireSeconds;
+
+    /**
+     * 列车 ID -> 售罄位图，位下标 = (出发站序号 * 站点数量 + 到达站序号) * SEAT_TYPE_SLOTS + 座位类型
+     */
+    private Cache<String, SoldOutBitmap> soldOutCache;
+
+    private RTopic soldOutTopic;
+
+    @Override
+    public void afterPropertiesSet() {
+        soldOutCache = Caffeine.newBuilder()
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .maximumSize(10000)
+                .build();
+        if (!enabled) {
+            return;
+        }
+        soldOutTopic = redissonClient.getTopic(TICKET_SOLD_OUT_TOPIC);
+        soldOutTopic.addListener(String.class, (channel, message) -> onMessage(message));
+    }
+
+    /**
+     * 是否开启售罄登记表
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 判断购票请求的站点座位类型是否已售罄，任一座位类型售罄即整单无法获取令牌
+     *
+     * @param requestParam 购票请求参数
+     * @return 是否已售罄
+     */
+    public boolean isSoldOut(PurchaseTicketReqDTO requestParam) {
+        if (!enabled || StrUtil.isBlank(requestParam.getTrainId()) || CollUtil.isEmpty(requestParam.getPassengers())) {
+            return false;
+        }
+        SoldOutBitmap bitmap = soldOutCache.getIfPresent(requestParam.getTrainId());
+        if (bitmap == null) {
+            return false;
+        }
+        for (PurchaseTicketPassengerDetailDTO each : requestParam.getPassengers()) {
+            int index = bitIndex(bitmap.routeIndex, requestParam.getDeparture(), requestParam.getArrival(), each.getSeatType());
+            if (index >= 0 && bitmap.get(index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 登记站点座位类型售罄并广播到所有节点
+     */
+    public void markSoldOut(String trainId, String departure, String arrival, Integer seatType) {
+        if (!enabled) {
+            return;
+        }
+        mark(trainId, departure, arrival, seatType);
+        publish(StrUtil.join(",", trainId, departure, arrival, seatType));
+    }
+
+    /**
+     * 清除列车全部售罄标识并广播到所有节点，令牌回滚后调用
+     *
+     * @param trainId 列车 ID
+     */
+    public void clear(String trainId) {
+        if (!enabled) {
+            return;
+        }
+        soldOutCache.invalidate(trainId);
+        publish(trainId);
+    }
+
+    private void mark(String trainId, String departure, String arrival, Integer seatType) {
+        SoldOutBitmap bitmap = soldOutCache.get(trainId, key -> new SoldOutBitmap(trainRouteIndexManager.getRouteIndex(key)));
+        int index = bitIndex(bitmap.routeIndex, departure, arrival, seatType);
+        if (index >= 0) {
+            bitmap.set(index);
+        }
+    }
+
+    private void onMessage(String message) {
+        List<String> parts = StrUtil.split(message, ',');
+        if (parts.size() == 1) {
+            soldOutCache.invalidate(parts.get(0));
+        } else if (parts.size() == 4) {
+            mark(parts.get(0), parts.get(1), parts.get(2), Integer.parseInt(parts.get(3)));
+        }
+    }
+
+    private void publish(String message) {
+        try {
+            soldOutTopic.publish(message);
+        } catch (Throwable ex) {
+            // 其它节点仍然通过 Lua 脚本判断余票，仅损失短路效果
+            log.error("发布列车售罄通知失败，消息：{}", message, ex);
+        }
+    }
+
+    private static int bitIndex(TrainRouteIndex routeIndex, String departure, String arrival, Integer seatType) {
+        int departureOrdinal = routeIndex.ordinal(departure);
+        int arrivalOrdinal = routeIndex.ordinal(arrival);
+        if (departureOrdinal < 0 || arrivalOrdinal <= departureOrdinal || seatType == null || seatType < 0 || seatType >= SEAT_TYPE_SLOTS) {
+            return -1;
+        }
+        return (departureOrdinal * routeIndex.getStations().size() + arrivalOrdinal) * SEAT_TYPE_SLOTS + seatType;
+    }
+
+    /**
+     * 列车售罄位图，与构建时的列车路线索引绑定，站点序号以该索引为准
+     */
+    private static final class SoldOutBitmap {
+
+        private final TrainRouteIndex routeIndex;
+        private final AtomicLongArray words;
+
+        private SoldOutBitmap(TrainRouteIndex routeIndex) {
+            int size = routeIndex.getStations().size();
+            this.routeIndex = routeIndex;
+            this.words = new AtomicLongArray((size * size * SEAT_TYPE_SLOTS + Long.SIZE - 1) / Long.SIZE);
+        }
+
+        private boolean get(int index) {
+            return (words.get(index >>> 6) & (1L << index)) != 0L;
+        }
+
+        private void set(int index) {
+            int wordIndex = index >>> 6;
+            long mask = 1L << index;
+            long word;
+            do {
+                word = words.get(wordIndex);
+            } while ((word & mask) == 0L && !words.compareAndSet(wordIndex, word, word | mask));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.waiting;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseRespDTO;
+
+/**
+ * 异步购票排队记录，存储于 Redis，包含排队所属用户用于查询鉴权
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseTicketWaitingRecord {
+
+    /**
+     * 排队号
+     */
+    private String ticketId;
+
+    /**
+     * 用户名
+     */
+    private String username;
+
+    /**
+     * 列车 ID
+     */
+    private String trainId;
+
+    /**
+     * 列车入队序号
+     */
+    private Long sequence;
+
+    /**
+     * 排队状态
+     */
+    private Integer status;
+
+    /**
+     * 购票结果
+     */
+    private TicketPurchaseRespDTO result;
+
+    /**
+     * 失败原因
+     */
+    private String failReason;
+}
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.waiting;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.PurchaseTicketWaitingStatusEnum;
+import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseWaitingRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.mq.event.PurchaseTicketWaitingEvent;
+import org.opengoofy.index12306.biz.ticketservice.mq.produce.PurchaseTicketWaitingSendProduce;
+import org.opengoofy.index12306.biz.ticketservice.service.TicketService;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenBucket;
+import org.opengoofy.index12306.framework.starter.bases.ApplicationContextHolder;
+import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.opengoofy.index12306.framework.starter.convention.exception.AbstractException;
+import org.opengoofy.index12306.framework.starter.convention.exception.ClientException;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+import org.opengoofy.index12306.framework.starter.distributedid.toolkit.SnowflakeIdUtil;
+import org.opengoofy.index12306.frameworks.starter.user.core.UserContext;
+import org.opengoofy.index12306.frameworks.starter.user.core.UserInfoDTO;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.Index12306Constant.ADVANCE_TICKET_DAY;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.PURCHASE_TICKET_WAITING_CLAIM;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.PURCHASE_TICKET_WAITING_ENQUEUE_SEQUENCE;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.PURCHASE_TICKET_WAITING_NOTIFY_TOPIC;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.PURCHASE_TICKET_WAITING_PROCESSED_SEQUENCE;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.PURCHASE_TICKET_WAITING_RESULT;
+
+/**
+ * 异步购票候车室
+ * <p>
+ * 购票请求校验并扣减令牌后入队，立即返回排队号以及前方排队人数，不再占用 Web 容器线程等待选座与创建订单；
+ * 队列支持 RocketMQ（ticket.purchase-waiting.mode=mq）以及本地线程池（local）两种实现。
+ * 购票完成后通过 Redis 发布订阅通知所有节点，唤醒本节点上等待该排队号的长轮询请求
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PurchaseTicketWaitingRoom implements InitializingBean {
+
+    private final DistributedCache distributedCache;
+    private final RedissonClient redissonClient;
+    private final PurchaseTicketWaitingSendProduce purchaseTicketWaitingSendProduce;
+    private final ThreadPoolExecutor purchaseTicketWaitingThreadPoolExecutor;
+    private final TicketAvailabilityTokenBucket ticketAvailabilityTokenBucket;
+
+    @Value("${ticket.purchase-waiting.mode:mq}")
+    private String purchaseWaitingMode;
+    @Value("${ticket.purchase-waiting.result-timeout-minutes:30}")
+    private long resultTimeoutMinutes;
+    @Value("${ticket.purchase-waiting.max-wait-ms:10000}")
+    private long maxWaitMs;
+
+    /**
+     * 排队号 -> 本节点长轮询等待集合
+     */
+    private final Map<String, Queue<CompletableFuture<TicketPurchaseWaitingRespDTO>>> waiters = new ConcurrentHashMap<>();
+
+    private RTopic notifyTopic;
+
+    @Override
+    public void afterPropertiesSet() {
+        notifyTopic = redissonClient.getTopic(PURCHASE_TICKET_WAITING_NOTIFY_TOPIC);
+        notifyTopic.addListener(String.class, (channel, ticketId) -> wakeUp(ticketId));
+    }
+
+    /**
+     * 购票请求入队，调用方需完成参数校验以及令牌扣减，入队失败时归还令牌
+     *
+     * @param requestParam 购票请求入参
+     * @return 排队号以及前方排队人数
+     */
+    public TicketPurchaseWaitingRespDTO enqueue(PurchaseTicketReqDTO requestParam) {
+        String trainId = requestParam.getTrainId();
+        String ticketId = SnowflakeIdUtil.nextIdStr();
+        PurchaseTicketWaitingRecord record = null;
+        try {
+            Long sequence = increment(PURCHASE_TICKET_WAITING_ENQUEUE_SEQUENCE + trainId);
+            record = PurchaseTicketWaitingRecord.builder()
+                    .ticketId(ticketId)
+                    .username(UserContext.getUsername())
+                    .trainId(trainId)
+                    .sequence(sequence)
+                    .status(PurchaseTicketWaitingStatusEnum.WAITING.getCode())
+                    .build();
+            distributedCache.put(PURCHASE_TICKET_WAITING_RESULT + ticketId, record, resultTimeoutMinutes, TimeUnit.MINUTES);
+            PurchaseTicketWaitingEvent event = PurchaseTicketWaitingEvent.builder()
+                    .ticketId(ticketId)
+                    .sequence(sequence)
+                    .requestParam(requestParam)
+                    .userId(UserContext.getUserId())
+                    .username(UserContext.getUsername())
+                    .realName(UserContext.getRealName())
+                    .token(UserContext.getToken())
+                    .build();
+            if (StrUtil.equals(purchaseWaitingMode, "local")) {
+                purchaseTicketWaitingThreadPoolExecutor.execute(() -> process(event));
+            } else {
+                purchaseTicketWaitingSendProduce.sendMessage(event);
+            }
+        } catch (RejectedExecutionException ex) {
+            abortEnqueue(requestParam, record);
+            throw new ServiceException("当前购票人数过多，请稍后重试");
+        } catch (Throwable ex) {
+            log.error("购票请求入队失败，列车ID：{}", trainId, ex);
+            abortEnqueue(requestParam, record);
+            throw new ServiceException("购票排队失败，请稍后重试");
+        }
+        return toResp(record);
+    }
+
+    /**
+     * 入队失败时将排队记录置为失败并归还令牌。消息发送超时时消息可能已投递，先抢占处理权：
+     * 抢占失败说明消费者已在处理，由消费者负责购票结果、令牌以及已处理序号；抢占成功后消费者读取到处理权已被占用直接跳过
+     */
+    private void abortEnqueue(PurchaseTicketReqDTO requestParam, PurchaseTicketWaitingRecord record) {
+        if (record != null) {
+            if (!claim(record.getTicketId())) {
+                return;
+            }
+            record.setStatus(PurchaseTicketWaitingStatusEnum.FAILED.getCode());
+            record.setFailReason("购票排队失败，请稍后重试");
+            try {
+                distributedCache.put(PURCHASE_TICKET_WAITING_RESULT + record.getTicketId(), record, resultTimeoutMinutes, TimeUnit.MINUTES);
+                // 入队序号已分配，推进已处理序号，避免同列车后续排队人数被永久多算
+                increment(PURCHASE_TICKET_WAITING_PROCESSED_SEQUENCE + record.getTrainId());
+            } catch (Throwable ex) {
+                log.error("购票请求入队失败更新排队记录失败，排队号：{}", record.getTicketId(), ex);
+            }
+        }
+        rollbackToken(requestParam);
+    }
+
+    /**
+     * 抢占排队记录处理权，MQ 重复投递或入队失败与消费并发时仅抢占成功的一方执行购票、归还令牌以及推进已处理序号
+     *
+     * @param ticketId 排队号
+     * @return 是否抢占成功
+     */
+    private boolean claim(String ticketId) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        // 有效期不短于排队记录，记录过期前重复投递的消息均无法再次抢占
+        Boolean claimed = stringRedisTemplate.opsForValue().setIfAbsent(PURCHASE_TICKET_WAITING_CLAIM + ticketId, "1", resultTimeoutMinutes * 2, TimeUnit.MINUTES);
+        return Boolean.TRUE.equals(claimed);
+    }
+
+    private void rollbackToken(PurchaseTicketReqDTO requestParam) {
+        try {
+            ticketAvailabilityTokenBucket.rollbackInBucket(requestParam);
+        } catch (Throwable ex) {
+            log.error("异步购票未执行归还列车令牌失败，列车 ID：{}，出发站：{}，到达站：{}", requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), ex);
+        }
+    }
+
+    /**
+     * 执行排队中的购票请求，由 RocketMQ 消费者或本地线程池调用
+     *
+     * @param event 异步购票排队事件
+     */
+    public void process(PurchaseTicketWaitingEvent event) {
+        String ticketId = event.getTicketId();
+        if (!claim(ticketId)) {
+            log.warn("异步购票排队记录已被处理，排队号：{}", ticketId);
+            return;
+        }
+        PurchaseTicketWaitingRecord record = distributedCache.get(PURCHASE_TICKET_WAITING_RESULT + ticketId, PurchaseTicketWaitingRecord.class);
+        if (record == null) {
+            // 排队超过记录有效期，用户已无法查询结果，不再购票并归还入队前扣减的令牌
+            log.warn("异步购票排队记录已过期，排队号：{}", ticketId);
+            rollbackToken(event.getRequestParam());
+            increment(PURCHASE_TICKET_WAITING_PROCESSED_SEQUENCE + event.getRequestParam().getTrainId());
+            return;
+        }
+        if (!Objects.equals(record.getStatus(), PurchaseTicketWaitingStatusEnum.WAITING.getCode())) {
+            // 处理权由首个抢占方持有并负责推进已处理序号，此处仅兜底处理权过期后的重复投递
+            log.warn("异步购票排队记录已处理，排队号：{}", ticketId);
+            return;
+        }
+        UserContext.setUser(new UserInfoDTO(event.getUserId(), event.getUsername(), event.getRealName(), event.getToken()));
+        try {
+            TicketPurchaseRespDTO result = ApplicationContextHolder.getBean(TicketService.class).executeWaitingPurchaseTickets(event.getRequestParam());
+            record.setStatus(PurchaseTicketWaitingStatusEnum.SUCCESS.getCode());
+            record.setResult(result);
+        } catch (AbstractException ex) {
+            record.setStatus(PurchaseTicketWaitingStatusEnum.FAILED.getCode());
+            record.setFailReason(ex.getErrorMessage());
+        } catch (Throwable ex) {
+            log.error("异步购票执行失败，排队号：{}", ticketId, ex);
+            record.setStatus(PurchaseTicketWaitingStatusEnum.FAILED.getCode());
+            record.setFailReason("购票失败，请稍后重试");
+        } finally {
+            UserContext.removeUser();
+        }
+        distributedCache.put(PURCHASE_TICKET_WAITING_RESULT + ticketId, record, resultTimeoutMinutes, TimeUnit.MINUTES);
+        increment(PURCHASE_TICKET_WAITING_PROCESSED_SEQUENCE + record.getTrainId());
+        notifyTopic.publish(ticketId);
+    }
+
+    /**
+     * 查询排队结果，排队中时最多等待 waitMs 毫秒，期间购票完成立即返回
+     *
+     * @param ticketId 排队号
+     * @param waitMs   长轮询等待时间，小于等于 0 时立即返回
+     * @return 排队结果
+     */
+    public CompletableFuture<TicketPurchaseWaitingRespDTO> query(String ticketId, long waitMs) {
+        PurchaseTicketWaitingRecord record = distributedCache.get(PURCHASE_TICKET_WAITING_RESULT + ticketId, PurchaseTicketWaitingRecord.class);
+        if (record == null || !Objects.equals(record.getUsername(), UserContext.getUsername())) {
+            throw new ClientException("排队记录不存在或已过期");
+        }
+        if (waitMs <= 0 || !Objects.equals(record.getStatus(), PurchaseTicketWaitingStatusEnum.WAITING.getCode())) {
+            return CompletableFuture.completedFuture(toResp(record));
+        }
+        CompletableFuture<TicketPurchaseWaitingRespDTO> future = new CompletableFuture<>();
+        waiters.computeIfAbsent(ticketId, each -> new ConcurrentLinkedQueue<>()).add(future);
+        // 注册后再次检查，避免查询与注册之间购票完成导致错过通知
+        wakeUpIfCompleted(ticketId);
+        CompletableFuture.delayedExecutor(Math.min(waitMs, maxWaitMs), TimeUnit.MILLISECONDS).execute(() -> {
+            if (!future.isDone()) {
+                removeWaiter(ticketId, future);
+                future.complete(loadResp(ticketId));
+            }
+        });
+        return future;
+    }
+
+    private void wakeUpIfCompleted(String ticketId) {
+        PurchaseTicketWaitingRecord record = distributedCache.get(PURCHASE_TICKET_WAITING_RESULT + ticketId, PurchaseTicketWaitingRecord.class);
+        if (record != null && !Objects.equals(record.getStatus(), PurchaseTicketWaitingStatusEnum.WAITING.getCode())) {
+            wakeUp(ticketId);
+        }
+    }
+
+    private void wakeUp(String ticketId) {
+        Queue<CompletableFuture<TicketPurchaseWaitingRespDTO>> futures = waiters.remove(ticketId);
+        if (futures == null || futures.isEmpty()) {
+            return;
+        }
+        TicketPurchaseWaitingRespDTO resp = loadResp(ticketId);
+        futures.forEach(each -> each.complete(resp));
+    }
+
+    private void removeWaiter(String ticketId, CompletableFuture<TicketPurchaseWaitingRespDTO> future) {
+        waiters.computeIfPresent(ticketId, (key, futures) -> {
+            futures.remove(future);
+            return futures.isEmpty() ? null : futures;
+        });
+    }
+
+    private TicketPurchaseWaitingRespDTO loadResp(String ticketId) {
+        PurchaseTicketWaitingRecord record = distributedCache.get(PURCHASE_TICKET_WAITING_RESULT + ticketId, PurchaseTicketWaitingRecord.class);
+        if (record == null) {
+            return TicketPurchaseWaitingRespDTO.builder()
+                    .ticketId(ticketId)
+                    .status(PurchaseTicketWaitingStatusEnum.FAILED.getCode())
+                    .failReason("排队记录不存在或已过期")
+                    .build();
+        }
+        return toResp(record);
+    }
+
+    private TicketPurchaseWaitingRespDTO toResp(PurchaseTicketWaitingRecord record) {
+        Long queuePosition = null;
+        if (Objects.equals(record.getStatus(), PurchaseTicketWaitingStatusEnum.WAITING.getCode())) {
+            StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+            long processed = Optional.ofNullable(stringRedisTemplate.opsForValue().get(PURCHASE_TICKET_WAITING_PROCESSED_SEQUENCE + record.getTrainId()))
+                    .map(Long::parseLong)
+                    .orElse(0L);
+            // 同一列车不同座位类型并行处理，排队人数为近似值
+            queuePosition = Math.max(record.getSequence() - processed - 1, 0L);
+        }
+        return TicketPurchaseWaitingRespDTO.builder()
+                .ticketId(record.getTicketId())
+                .status(record.getStatus())
+                .queuePosition(queuePosition)
+                .result(record.getResult())
+                .failReason(record.getFailReason())
+                .build();
+    }
+
+    private Long increment(String key) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        Long value = stringRedisTemplate.opsForValue().increment(key);
+        if (Objects.equals(value, 1L)) {
+            stringRedisTemplate.expire(key, ADVANCE_TICKET_DAY, TimeUnit.DAYS);
+        }
+        return value;
+    }
+}
@@ -24,6 +24,7 @@ import lombok.RequiredArgsConstructor;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.CarriageDO;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.CarriageMapper;
 import org.opengoofy.index12306.biz.ticketservice.service.CarriageService;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.opengoofy.index12306.framework.starter.cache.core.CacheLoader;
 import org.opengoofy.index12306.framework.starter.cache.toolkit.CacheUtil;
@@ -54,7 +55,7 @@ public class CarriageServiceImpl implements CarriageService {
 
     @Override
     public List<String> listCarriageNumber(String trainId, Integer carriageType) {
-        final String key = TRAIN_CARRIAGE + trainId;
+        final String key = TRAIN_CARRIAGE + TrainCacheKeyUtil.hashTag(trainId);
         return safeGetCarriageNumber(
                 trainId,
                 key,
@@ -20,23 +20,32 @@ package org.opengoofy.index12306.biz.ticketservice.service.impl;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatStatusEnum;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.SeatDO;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.SeatService;
 import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.allocation.SeatBitmapAllocator;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.inventory.SeatInventoryManager;
+import org.opengoofy.index12306.biz.ticketservice.service.inventory.TrainSeatInventory;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_CARRIAGE_REMAINING_TICKET;
@@ -46,6 +55,7 @@ import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKe
  *
  * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SeatServiceImpl extends ServiceImpl<SeatMapper, SeatDO> implements SeatService {
@@ -53,9 +63,18 @@ public class SeatServiceImpl extends ServiceImpl<SeatMapper, SeatDO> implements
     private final SeatMapper seatMapper;
     private final TrainStationService trainStationService;
     private final DistributedCache distributedCache;
+    private final SeatInventoryManager seatInventoryManager;
+    private final SeatBitmapAllocator seatBitmapAllocator;
+
+    @Value("${ticket.seat-inventory.mode:db}")
+    private String seatInventoryMode;
 
     @Override
     public List<String> listAvailableSeat(String trainId, String carriageNumber, Integer seatType, String departure, String arrival) {
+        TrainSeatInventory inventory = getSeatInventory(trainId, departure, arrival);
+        if (inventory != null) {
+            return inventory.listAvailableSeat(carriageNumber, seatType, departure, arrival);
+        }
         //SELECT seat_number
         //FROM seat
         //WHERE train_id = ?
@@ -78,7 +97,11 @@ public class SeatServiceImpl extends ServiceImpl<SeatMapper, SeatDO> implements
 
     @Override
     public List<Integer> listSeatRemainingTicket(String trainId, String departure, String arrival, List<String> trainCarriageList) {
-        String keySuffix = StrUtil.join("_", trainId, departure, arrival);
+        TrainSeatInventory inventory = getSeatInventory(trainId, departure, arrival);
+        if (inventory != null) {
+            return inventory.listSeatRemainingTicket(departure, arrival, trainCarriageList);
+        }
+        String keySuffix = TrainCacheKeyUtil.buildKeySuffix(trainId, departure, arrival);
         if (distributedCache.hasKey(TRAIN_STATION_CARRIAGE_REMAINING_TICKET + keySuffix)) {
             StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
             List<Object> trainStationCarriageRemainingTicket =
@@ -97,6 +120,10 @@ public class SeatServiceImpl extends ServiceImpl<SeatMapper, SeatDO> implements
 
     @Override
     public List<String> listUsableCarriageNumber(String trainId, Integer carriageType, String departure, String arrival) {
+        TrainSeatInventory inventory = getSeatInventory(trainId, departure, arrival);
+        if (inventory != null) {
+            return inventory.listUsableCarriageNumber(carriageType, departure, arrival);
+        }
         //SELECT carriage_number
         //FROM seat
         //WHERE train_id = ?
@@ -119,35 +146,87 @@ public class SeatServiceImpl extends ServiceImpl<SeatMapper, SeatDO> implements
 
     @Override
     public void lockSeat(String trainId, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketRespList) {
-        List<RouteDTO> routeList = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival);
-        trainPurchaseTicketRespList.forEach(each -> routeList.forEach(item -> {
-            LambdaUpdateWrapper<SeatDO> updateWrapper = Wrappers.lambdaUpdate(SeatDO.class)
-                    .eq(SeatDO::getTrainId, trainId)
-                    .eq(SeatDO::getCarriageNumber, each.getCarriageNumber())
-                    .eq(SeatDO::getStartStation, item.getStartStation())
-                    .eq(SeatDO::getEndStation, item.getEndStation())
-                    .eq(SeatDO::getSeatNumber, each.getSeatNumber());
-            SeatDO updateSeatDO = SeatDO.builder()
-                    .seatStatus(SeatStatusEnum.LOCKED.getCode())
-                    .build();
-            seatMapper.update(updateSeatDO, updateWrapper);
-        }));
+        TrainSeatInventory inventory = getSeatInventory(trainId, departure, arrival);
+        if (inventory != null) {
+            seatInventoryManager.lockSeat(inventory, departure, arrival, trainPurchaseTicketRespList,
+                    () -> persistSeatStatus(trainId, departure, arrival, trainPurchaseTicketRespList, SeatStatusEnum.AVAILABLE, SeatStatusEnum.LOCKED));
+            return;
+        }
+        // 选座与锁座之间座位被其他请求占用时，抛出异常回滚购票事务，避免覆盖已售座位
+        if (!transitSeatStatus(trainId, departure, arrival, trainPurchaseTicketRespList, SeatStatusEnum.AVAILABLE, SeatStatusEnum.LOCKED)) {
+            throw new ServiceException("选中座位已被占用，请重新购票");
+        }
     }
 
     @Override
     public void unlock(String trainId, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketResults) {
-        List<RouteDTO> routeList = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival);
-        trainPurchaseTicketResults.forEach(each -> routeList.forEach(item -> {
-            LambdaUpdateWrapper<SeatDO> updateWrapper = Wrappers.lambdaUpdate(SeatDO.class)
-                    .eq(SeatDO::getTrainId, trainId)
-                    .eq(SeatDO::getCarriageNumber, each.getCarriageNumber())
-                    .eq(SeatDO::getStartStation, item.getStartStation())
-                    .eq(SeatDO::getEndStation, item.getEndStation())
-                    .eq(SeatDO::getSeatNumber, each.getSeatNumber());
-            SeatDO updateSeatDO = SeatDO.builder()
-                    .seatStatus(SeatStatusEnum.AVAILABLE.getCode())
-                    .build();
-            seatMapper.update(updateSeatDO, updateWrapper);
-        }));
+        seatBitmapAllocator.release(trainId, departure, arrival, trainPurchaseTicketResults);
+        TrainSeatInventory inventory = getSeatInventory(trainId, departure, arrival);
+        if (inventory != null) {
+            seatInventoryManager.unlock(inventory, departure, arrival, trainPurchaseTicketResults,
+                    () -> persistSeatStatus(trainId, departure, arrival, trainPurchaseTicketResults, SeatStatusEnum.LOCKED, SeatStatusEnum.AVAILABLE));
+            return;
+        }
+        persistSeatStatus(trainId, departure, arrival, trainPurchaseTicketResults, SeatStatusEnum.LOCKED, SeatStatusEnum.AVAILABLE);
+    }
+
+    @Override
+    public boolean transitSeatStatus(String trainId, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketResults,
+                                     SeatStatusEnum expectStatus, SeatStatusEnum targetStatus) {
+        if (CollUtil.isEmpty(trainPurchaseTicketResults)) {
+            return true;
+        }
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        int startIndex = stations.indexOf(departure);
+        int endIndex = stations.indexOf(arrival);
+        if (startIndex < 0 || endIndex <= startIndex) {
+            return false;
+        }
+        List<RouteDTO> segmentRoutes = new ArrayList<>(endIndex - startIndex);
+        for (int i = startIndex; i < endIndex; i++) {
+            segmentRoutes.add(new RouteDTO(stations.get(i), stations.get(i + 1)));
+        }
+        List<SeatDO> seats = trainPurchaseTicketResults.stream()
+                .map(each -> SeatDO.builder()
+                        .carriageNumber(each.getCarriageNumber())
+                        .seatNumber(each.getSeatNumber())
+                        .build())
+                .collect(Collectors.toList());
+        // 行程内基本区间的状态即座位在本行程是否被占用，只校验并计数这部分记录
+        int affectedRows = seatMapper.updateSeatStatusBatch(Long.parseLong(trainId), seats, segmentRoutes, expectStatus.getCode(), targetStatus.getCode());
+        if (affectedRows != seats.size() * segmentRoutes.size()) {
+            return false;
+        }
+        // 其余重叠站点对可能因其他行程处于锁定或已售状态，不校验状态直接变更
+        Set<RouteDTO> segmentRouteSet = new HashSet<>(segmentRoutes);
+        List<RouteDTO> overlapRoutes = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival).stream()
+                .filter(each -> !segmentRouteSet.contains(each))
+                .collect(Collectors.toList());
+        if (!overlapRoutes.isEmpty()) {
+            seatMapper.updateSeatStatusBatch(Long.parseLong(trainId), seats, overlapRoutes, null, targetStatus.getCode());
+        }
+        return true;
+    }
+
+    /**
+     * 内存库存模式下获取列车座位内存库存，数据库模式或列车不支持时返回 null
+     */
+    private TrainSeatInventory getSeatInventory(String trainId, String departure, String arrival) {
+        if (!StrUtil.equals(seatInventoryMode, "memory")) {
+            return null;
+        }
+        TrainSeatInventory inventory = seatInventoryManager.getInventory(trainId);
+        return inventory != null && inventory.containsRoute(departure, arrival) ? inventory : null;
+    }
+
+    /**
+     * 座位状态以内存库存或订单状态为准时回写数据库，状态冲突仅记录日志，一般为消息重复投递
+     */
+    private void persistSeatStatus(String trainId, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketResults,
+                                   SeatStatusEnum expectStatus, SeatStatusEnum targetStatus) {
+        if (!transitSeatStatus(trainId, departure, arrival, trainPurchaseTicketResults, expectStatus, targetStatus)) {
+            log.warn("列车 {} 座位状态 {} -> {} 存在冲突，部分座位区间未变更，出发站：{}，到达站：{}",
+                    trainId, expectStatus, targetStatus, departure, arrival);
+        }
     }
 }
@@ -38,12 +38,10 @@ import org.opengoofy.index12306.biz.ticketservice.common.enums.VehicleTypeEnum;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.StationDO;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.TicketDO;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainDO;
-import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainStationPriceDO;
 import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainStationRelationDO;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.StationMapper;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TicketMapper;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainMapper;
-import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainStationPriceMapper;
 import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainStationRelationMapper;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
@@ -58,6 +56,7 @@ import org.opengoofy.index12306.biz.ticketservice.dto.resp.RefundTicketRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketOrderDetailRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPageQueryRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPurchaseWaitingRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.remote.PayRemoteService;
 import org.opengoofy.index12306.biz.ticketservice.remote.TicketOrderRemoteService;
 import org.opengoofy.index12306.biz.ticketservice.remote.dto.PayInfoRespDTO;
@@ -70,11 +69,22 @@ import org.opengoofy.index12306.biz.ticketservice.service.SeatService;
 import org.opengoofy.index12306.biz.ticketservice.service.TicketService;
 import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
 import org.opengoofy.index12306.biz.ticketservice.service.cache.SeatMarginCacheLoader;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.fare.TrainFareMatrix;
+import org.opengoofy.index12306.biz.ticketservice.service.fare.TrainFareMatrixManager;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.admission.PurchaseTicketAdmissionController;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.allocation.SeatBitmapAllocator;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.mailbox.PurchaseTicketMailboxDispatcher;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select.TrainSeatTypeSelector;
 import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketAvailabilityTokenBucket;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.tokenbucket.TicketSoldOutRegistry;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.waiting.PurchaseTicketWaitingRoom;
+import org.opengoofy.index12306.biz.ticketservice.service.query.TicketQueryViewManager;
 import org.opengoofy.index12306.biz.ticketservice.toolkit.DateUtil;
 import org.opengoofy.index12306.biz.ticketservice.toolkit.TimeStringComparator;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
 import org.opengoofy.index12306.framework.starter.bases.ApplicationContextHolder;
 import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
 import org.opengoofy.index12306.framework.starter.cache.toolkit.CacheUtil;
@@ -104,6 +114,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
@@ -116,7 +127,6 @@ import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKe
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.REGION_TRAIN_STATION;
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.REGION_TRAIN_STATION_MAPPING;
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_INFO;
-import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_PRICE;
 import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_REMAINING_TICKET;
 import static org.opengoofy.index12306.biz.ticketservice.toolkit.DateUtil.convertDateToLocalTime;
 
@@ -132,7 +142,8 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
 
     private final TrainMapper trainMapper;
     private final TrainStationRelationMapper trainStationRelationMapper;
-    private final TrainStationPriceMapper trainStationPriceMapper;
+    private final TrainFareMatrixManager trainFareMatrixManager;
+    private final TicketQueryViewManager ticketQueryViewManager;
     private final DistributedCache distributedCache;
     private final TicketOrderRemoteService ticketOrderRemoteService;
     private final PayRemoteService payRemoteService;
@@ -147,6 +158,13 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
     private final RedissonClient redissonClient;
     private final ConfigurableEnvironment environment;
     private final TicketAvailabilityTokenBucket ticketAvailabilityTokenBucket;
+    private final TicketSoldOutRegistry ticketSoldOutRegistry;
+    private final PurchaseTicketAdmissionController purchaseTicketAdmissionController;
+    private final SeatBitmapAllocator seatBitmapAllocator;
+    private final PurchaseTicketMailboxDispatcher purchaseTicketMailboxDispatcher;
+    private final PurchaseTicketWaitingRoom purchaseTicketWaitingRoom;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
     private TicketService ticketService;
 
     @Value("${ticket.availability.cache-update.type:}")
@@ -260,39 +278,33 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
         //开始对列车按照出发时间进行排序。
         seatResults = seatResults.stream().sorted(new TimeStringComparator()).toList();
         for (TicketListDTO each : seatResults) {
-            String trainStationPriceStr = distributedCache.safeGet(
-                    String.format(TRAIN_STATION_PRICE, each.getTrainId(), each.getDeparture(), each.getArrival()),
-                    String.class,
-                    () -> {
-//                        SELECT * FROM TrainStationPriceDO
-//                        WHERE departure = [each.getDeparture()]
-//                        AND arrival = [each.getArrival()]
-//                        AND train_id = [each.getTrainId()];
-                        LambdaQueryWrapper<TrainStationPriceDO> trainStationPriceQueryWrapper = Wrappers.lambdaQuery(TrainStationPriceDO.class)
-                                .eq(TrainStationPriceDO::getDeparture, each.getDeparture())
-                                .eq(TrainStationPriceDO::getArrival, each.getArrival())
-                                .eq(TrainStationPriceDO::getTrainId, each.getTrainId());
-                        return JSON.toJSONString(trainStationPriceMapper.selectList(trainStationPriceQueryWrapper));
-                    },
-                    ADVANCE_TICKET_DAY,
-                    TimeUnit.DAYS
-            );
-            //这行代码的作用是将一个JSON格式的字符串(trainStationPriceStr)(这个字符串由多个TrainStationPriceDO组成)解析为TrainStationPriceDO对象的列表 (List<TrainStationPriceDO>)。
-            List<TrainStationPriceDO> trainStationPriceDOList = JSON.parseArray(trainStationPriceStr, TrainStationPriceDO.class);
+            // 票价从本地票价矩阵读取，避免每个车次一次 Redis 查询以及 JSON 解析
+            TrainFareMatrix fareMatrix = trainFareMatrixManager.getFareMatrix(each.getTrainId());
             List<SeatClassDTO> seatClassList = new ArrayList<>();
-            trainStationPriceDOList.forEach(item -> {
-                String seatType = String.valueOf(item.getSeatType());
-                String keySuffix = StrUtil.join("_", each.getTrainId(), item.getDeparture(), item.getArrival());
+            Map<Integer, Integer> segmentRemainingTicket = trainSegmentRemainingTicketCache.isEnabled()
+                    ? trainSegmentRemainingTicketCache.listRemainingTicket(each.getTrainId(), each.getDeparture(), each.getArrival(), VehicleTypeEnum.findSeatTypesByCode(each.getTrainType()))
+                    : trainPackedRemainingTicketCache.isEnabled()
+                    ? trainPackedRemainingTicketCache.listRemainingTicket(each.getTrainId(), each.getDeparture(), each.getArrival(), VehicleTypeEnum.findSeatTypesByCode(each.getTrainType()))
+                    : null;
+            for (int item : fareMatrix.listSeatType(each.getDeparture(), each.getArrival())) {
+                BigDecimal price = new BigDecimal(fareMatrix.getPrice(each.getDeparture(), each.getArrival(), item)).divide(new BigDecimal("100"), 1, RoundingMode.HALF_UP);
+                if (segmentRemainingTicket != null) {
+                    int quantity = segmentRemainingTicket.getOrDefault(item, 0);
+                    seatClassList.add(new SeatClassDTO(item, quantity, price, false));
+                    continue;
+                }
+                String seatType = String.valueOf(item);
+                String keySuffix = TrainCacheKeyUtil.buildKeySuffix(each.getTrainId(), each.getDeparture(), each.getArrival());
                 Object quantityObj = stringRedisTemplate.opsForHash().get(TRAIN_STATION_REMAINING_TICKET + keySuffix, seatType);
                 int quantity = Optional.ofNullable(quantityObj)
                         .map(Object::toString)
                         .map(Integer::parseInt)
                         .orElseGet(() -> {
-                            Map<String, String> seatMarginMap = seatMarginCacheLoader.load(String.valueOf(each.getTrainId()), seatType, item.getDeparture(), item.getArrival());
-                            return Optional.ofNullable(seatMarginMap.get(String.valueOf(item.getSeatType()))).map(Integer::parseInt).orElse(0);
+                            Map<String, String> seatMarginMap = seatMarginCacheLoader.load(String.valueOf(each.getTrainId()), seatType, each.getDeparture(), each.getArrival());
+                            return Optional.ofNullable(seatMarginMap.get(seatType)).map(Integer::parseInt).orElse(0);
                         });
-                seatClassList.add(new SeatClassDTO(item.getSeatType(), quantity, new BigDecimal(item.getPrice()).divide(new BigDecimal("100"), 1, RoundingMode.HALF_UP), false));
-            });
+                seatClassList.add(new SeatClassDTO(item, quantity, price, false));
+            }
             each.setSeatClassList(seatClassList);
         }
         return TicketPageQueryRespDTO.builder()
@@ -314,7 +326,7 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
         StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
         // 列车查询逻辑较为复杂，详细解析文章查看 https://nageoffer.com/12306/question
         // v2 版本更符合企业级高并发真实场景解决方案，完美解决了 v1 版本性能深渊问题。通过 Jmeter 压测聚合报告得知，性能提升在 300% - 500%+
-        // 其实还能有 v3 版本，性能估计在原基础上还能进一步提升一倍。不过 v3 版本太过于复杂，不易读且不易扩展，就不写具体的代码了。面试中 v2 版本已经够和面试官吹的了
+        // v3 版本将地区对列车集合物化到本地内存，详见 pageListTicketQueryV3
         List<Object> stationDetails = stringRedisTemplate.opsForHash()
                 .multiGet(REGION_TRAIN_STATION_MAPPING, Lists.newArrayList(requestParam.getFromStation(), requestParam.getToStation()));
         String buildRegionTrainStationHashKey = String.format(REGION_TRAIN_STATION, stationDetails.get(0), stationDetails.get(1));
@@ -323,45 +335,68 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
                 .map(each -> JSON.parseObject(each.toString(), TicketListDTO.class))
                 .sorted(new TimeStringComparator())
                 .toList();
-        List<String> trainStationPriceKeys = seatResults.stream()
-                .map(each -> String.format(cacheRedisPrefix + TRAIN_STATION_PRICE, each.getTrainId(), each.getDeparture(), each.getArrival()))
+        // 票价从本地票价矩阵读取，省去每个车次的票价 Redis 查询以及 JSON 解析
+        List<TrainFareMatrix> fareMatrices = seatResults.stream()
+                .map(each -> trainFareMatrixManager.getFareMatrix(each.getTrainId()))
                 .toList();
-        //这行代码使用 Spring Data Redis 的 StringRedisTemplate 对象执行了一个 Redis 管道操作。这个操作通常用于在一个 Redis 连接中批量执行多个命令，从而提高性能。
-        //
-        //具体来说，它执行了一个管道操作，遍历了 trainStationPriceKeys 列表中的每个键（key），并在管道中执行了 GET 命令。这个操作是异步的，允许在一个请求中发送多个命令，而不需要等待每个命令的响应。
-        List<Object> trainStationPriceObjs = stringRedisTemplate.executePipelined((RedisCallback<String>) connection -> {
-            trainStationPriceKeys.forEach(each -> connection.stringCommands().get(each.getBytes()));
-            return null;
-        });
-        List<TrainStationPriceDO> trainStationPriceDOList = new ArrayList<>();
+        if (trainSegmentRemainingTicketCache.isEnabled() || trainPackedRemainingTicketCache.isEnabled()) {
+            // 基本区间余票模式下一次管道请求读取全部列车的途经基本区间余票，紧凑矩阵模式下每个列车一次 BITFIELD 读取
+            List<Map<Integer, Integer>> remainingTickets = trainPackedRemainingTicketCache.isEnabled()
+                    ? trainPackedRemainingTicketCache.batchListRemainingTicket(seatResults)
+                    : trainSegmentRemainingTicketCache.batchListRemainingTicket(seatResults);
+            for (int i = 0; i < seatResults.size(); i++) {
+                Map<Integer, Integer> remainingTicket = remainingTickets.get(i);
+                List<SeatClassDTO> seatClassList = new ArrayList<>();
+                TicketListDTO ticket = seatResults.get(i);
+                TrainFareMatrix fareMatrix = fareMatrices.get(i);
+                for (int item : fareMatrix.listSeatType(ticket.getDeparture(), ticket.getArrival())) {
+                    seatClassList.add(SeatClassDTO.builder()
+                            .type(item)
+                            .quantity(remainingTicket.getOrDefault(item, 0))
+                            .price(new BigDecimal(fareMatrix.getPrice(ticket.getDeparture(), ticket.getArrival(), item)).divide(new BigDecimal("100"), 1, RoundingMode.HALF_UP))
+                            .candidate(false)
+                            .build());
+                }
+                seatResults.get(i).setSeatClassList(seatClassList);
+            }
+            return TicketPageQueryRespDTO.builder()
+                    .trainList(seatResults)
+                    .departureStationList(buildDepartureStationList(seatResults))
+                    .arrivalStationList(buildArrivalStationList(seatResults))
+                    .trainBrandList(buildTrainBrandList(seatResults))
+                    .seatClassTypeList(buildSeatClassList(seatResults))
+                    .build();
+        }
+        List<int[]> seatTypesList = new ArrayList<>(seatResults.size());
         List<String> trainStationRemainingKeyList = new ArrayList<>();
-        for (Object each : trainStationPriceObjs) {
-            List<TrainStationPriceDO> trainStationPriceList = JSON.parseArray(each.toString(), TrainStationPriceDO.class);
-            trainStationPriceDOList.addAll(trainStationPriceList);
-            for (TrainStationPriceDO item : trainStationPriceList) {
-                String trainStationRemainingKey = cacheRedisPrefix + TRAIN_STATION_REMAINING_TICKET + StrUtil.join("_", item.getTrainId(), item.getDeparture(), item.getArrival());
+        List<String> trainStationRemainingFieldList = new ArrayList<>();
+        for (int i = 0; i < seatResults.size(); i++) {
+            TicketListDTO each = seatResults.get(i);
+            int[] seatTypes = fareMatrices.get(i).listSeatType(each.getDeparture(), each.getArrival());
+            seatTypesList.add(seatTypes);
+            String trainStationRemainingKey = cacheRedisPrefix + TRAIN_STATION_REMAINING_TICKET + TrainCacheKeyUtil.buildKeySuffix(each.getTrainId(), each.getDeparture(), each.getArrival());
+            for (int seatType : seatTypes) {
                 trainStationRemainingKeyList.add(trainStationRemainingKey);
+                trainStationRemainingFieldList.add(String.valueOf(seatType));
             }
         }
         List<Object> TrainStationRemainingObjs = stringRedisTemplate.executePipelined((RedisCallback<String>) connection -> {
             for (int i = 0; i < trainStationRemainingKeyList.size(); i++) {
-                connection.hashCommands().hGet(trainStationRemainingKeyList.get(i).getBytes(), trainStationPriceDOList.get(i).getSeatType().toString().getBytes());
+                connection.hashCommands().hGet(trainStationRemainingKeyList.get(i).getBytes(), trainStationRemainingFieldList.get(i).getBytes());
             }
             return null;
         });
-        for (TicketListDTO each : seatResults) {
-            List<Integer> seatTypesByCode = VehicleTypeEnum.findSeatTypesByCode(each.getTrainType());
-            List<Object> remainingTicket = new ArrayList<>(TrainStationRemainingObjs.subList(0, seatTypesByCode.size()));
-            List<TrainStationPriceDO> trainStationPriceDOSub = new ArrayList<>(trainStationPriceDOList.subList(0, seatTypesByCode.size()));
-            TrainStationRemainingObjs.subList(0, seatTypesByCode.size()).clear();
-            trainStationPriceDOList.subList(0, seatTypesByCode.size()).clear();
+        int remainingIndex = 0;
+        for (int i = 0; i < seatResults.size(); i++) {
+            TicketListDTO each = seatResults.get(i);
+            TrainFareMatrix fareMatrix = fareMatrices.get(i);
             List<SeatClassDTO> seatClassList = new ArrayList<>();
-            for (int i = 0; i < trainStationPriceDOSub.size(); i++) {
-                TrainStationPriceDO trainStationPriceDO = trainStationPriceDOSub.get(i);
+            for (int seatType : seatTypesList.get(i)) {
+                Object remainingTicket = TrainStationRemainingObjs.get(remainingIndex++);
                 SeatClassDTO seatClassDTO = SeatClassDTO.builder()
-                        .type(trainStationPriceDO.getSeatType())
-                        .quantity(Integer.parseInt(remainingTicket.get(i).toString()))
-                        .price(new BigDecimal(trainStationPriceDO.getPrice()).divide(new BigDecimal("100"), 1, RoundingMode.HALF_UP))
+                        .type(seatType)
+                        .quantity(remainingTicket == null ? 0 : Integer.parseInt(remainingTicket.toString()))
+                        .price(new BigDecimal(fareMatrix.getPrice(each.getDeparture(), each.getArrival(), seatType)).divide(new BigDecimal("100"), 1, RoundingMode.HALF_UP))
                         .candidate(false)
                         .build();
                 seatClassList.add(seatClassDTO);
@@ -377,6 +412,14 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
                 .build();
     }
 
+    @Override
+    public TicketPageQueryRespDTO pageListTicketQueryV3(TicketPageQueryReqDTO requestParam) {
+        // 责任链模式 验证城市名称是否存在、不存在加载缓存以及出发日期不能小于当前日期等等
+        ticketPageQueryAbstractChainContext.handler(TicketChainMarkEnum.TRAIN_QUERY_FILTER.name(), requestParam);
+        // 列车集合解析排序、票价关联在视图构建时完成一次，余票按刷新间隔批量读取，查询只需按下标组装结果
+        return ticketQueryViewManager.query(requestParam.getFromStation(), requestParam.getToStation());
+    }
+
     @Override
     public TicketPurchaseRespDTO purchaseTicketsV1(PurchaseTicketReqDTO requestParam) {
         // 责任链模式，验证 1：参数必填 2：参数正确性 3：乘客是否已买当前车次等...
@@ -384,11 +427,21 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
         // v1 版本购票存在 4 个较为严重的问题，v2 版本相比较 v1 版本更具有业务特点以及性能，整体提升较大
         // 写了详细的 v2 版本购票升级指南，欢迎查阅 https://nageoffer.com/12306/question
         //这里获取的是-xdujyhlaptopindex12306-ticket-service:lock:purchase_tickets_1_1类似的字符串（以V2版本为例子）
+        // 开启预占站点余票时选座后不再单独扣减站点余票，v1 版本同样需要先通过令牌桶预占
+        boolean reserved = ticketAvailabilityTokenBucket.isReserveRemainingTicket(requestParam.getTrainId());
+        if (reserved && !ticketAvailabilityTokenBucket.takeTokenFromBucket(requestParam)) {
+            throw new ServiceException("列车站点已无余票");
+        }
         String lockKey = environment.resolvePlaceholders(String.format(LOCK_PURCHASE_TICKETS, requestParam.getTrainId()));
         RLock lock = redissonClient.getLock(lockKey);
         lock.lock();
         try {
             return ticketService.executePurchaseTickets(requestParam);
+        } catch (Throwable ex) {
+            if (reserved) {
+                rollbackReservation(requestParam);
+            }
+            throw ex;
         } finally {
             lock.unlock();
         }
@@ -403,14 +456,75 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
 
     @Override
     public TicketPurchaseRespDTO purchaseTicketsV2(PurchaseTicketReqDTO requestParam) {
+        // 站点座位类型已售罄时本地直接拒绝，无需执行责任链以及令牌桶 Lua 脚本
+        if (ticketSoldOutRegistry.isSoldOut(requestParam)) {
+            throw new ServiceException("列车站点已无余票");
+        }
         // 责任链模式，验证 1：参数必填 2：参数正确性 3：乘客是否已买当前车次等...
         purchaseTicketAbstractChainContext.handler(TicketChainMarkEnum.TRAIN_PURCHASE_TICKET_FILTER.name(), requestParam);
+        // 获取令牌以及购票锁之前按列车 ID + 座位类型准入，积压时提前拒绝，避免请求在公平锁上集体超时
+        try (PurchaseTicketAdmissionController.Admission ignored = purchaseTicketAdmissionController.tryAdmit(requestParam)) {
+            boolean tokenResult = ticketAvailabilityTokenBucket.takeTokenFromBucket(requestParam);
+            if (!tokenResult) {
+                throw new ServiceException("列车站点已无余票");
+            }
+            // v1 版本购票存在 4 个较为严重的问题，v2 版本相比较 v1 版本更具有业务特点以及性能，整体提升较大
+            // 写了详细的 v2 版本购票升级指南，欢迎查阅 https://nageoffer.com/12306/question
+            return purchaseTicketsWithReservation(requestParam);
+        }
+    }
+
+    @Override
+    public TicketPurchaseWaitingRespDTO purchaseTicketsV3(PurchaseTicketReqDTO requestParam) {
+        if (ticketSoldOutRegistry.isSoldOut(requestParam)) {
+            throw new ServiceException("列车站点已无余票");
+        }
+        // 与 v2 版本一致，入队前完成责任链校验以及令牌扣减，令牌不足的请求直接拒绝，不进入排队
+        purchaseTicketAbstractChainContext.handler(TicketChainMarkEnum.TRAIN_PURCHASE_TICKET_FILTER.name(), requestParam);
         boolean tokenResult = ticketAvailabilityTokenBucket.takeTokenFromBucket(requestParam);
         if (!tokenResult) {
             throw new ServiceException("列车站点已无余票");
         }
-        // v1 版本购票存在 4 个较为严重的问题，v2 版本相比较 v1 版本更具有业务特点以及性能，整体提升较大
-        // 写了详细的 v2 版本购票升级指南，欢迎查阅 https://nageoffer.com/12306/question
+        return purchaseTicketWaitingRoom.enqueue(requestParam);
+    }
+
+    @Override
+    public CompletableFuture<TicketPurchaseWaitingRespDTO> queryPurchaseTicketsV3Result(String ticketId, long waitMs) {
+        return purchaseTicketWaitingRoom.query(ticketId, waitMs);
+    }
+
+    @Override
+    public TicketPurchaseRespDTO executeWaitingPurchaseTickets(PurchaseTicketReqDTO requestParam) {
+        return purchaseTicketsWithReservation(requestParam);
+    }
+
+    /**
+     * 已扣减令牌的购票请求执行购票，开启预占站点余票时购票失败同时回滚令牌以及站点余票
+     */
+    private TicketPurchaseRespDTO purchaseTicketsWithReservation(PurchaseTicketReqDTO requestParam) {
+        if (!ticketAvailabilityTokenBucket.isReserveRemainingTicket(requestParam.getTrainId())) {
+            return purchaseTicketsWithLock(requestParam);
+        }
+        try {
+            return purchaseTicketsWithLock(requestParam);
+        } catch (Throwable ex) {
+            rollbackReservation(requestParam);
+            throw ex;
+        }
+    }
+
+    private void rollbackReservation(PurchaseTicketReqDTO requestParam) {
+        try {
+            ticketAvailabilityTokenBucket.rollbackInBucket(requestParam);
+        } catch (Throwable ex) {
+            log.error("购票失败回滚列车令牌以及站点余票失败，列车 ID：{}，出发站：{}，到达站：{}", requestParam.getTrainId(), requestParam.getDeparture(), requestParam.getArrival(), ex);
+        }
+    }
+
+    /**
+     * 获取列车 ID + 座位类型维度的锁后执行购票
+     */
+    private TicketPurchaseRespDTO purchaseTicketsWithLock(PurchaseTicketReqDTO requestParam) {
         // 存储本次请求需要获取的本地锁的集合
         List<ReentrantLock> localLockList = new ArrayList<>();
         // 存储本次请求需要获取的分布式锁的集合
@@ -418,6 +532,23 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
         // 按照座位类型进行分组
         Map<Integer, List<PurchaseTicketPassengerDetailDTO>> seatTypeMap = requestParam.getPassengers().stream()
                 .collect(Collectors.groupingBy(PurchaseTicketPassengerDetailDTO::getSeatType));
+        // Redis 位图选座在 Lua 脚本中原子完成选座与占座，无需列车维度的本地锁以及分布式公平锁
+        if (seatTypeMap.keySet().stream().allMatch(seatBitmapAllocator::supports)) {
+            return ticketService.executePurchaseTickets(requestParam);
+        }
+        // 单一座位类型的购票请求投递到列车 ID + 座位类型维度的邮箱串行执行，邮箱批量消费时只获取一次分布式锁；
+        // 多座位类型订单跨多个邮箱 Key，不进入邮箱，继续按座位类型获取本地锁以及分布式公平锁
+        if (seatTypeMap.size() == 1 && purchaseTicketMailboxDispatcher.isEnabled()) {
+            Integer seatType = seatTypeMap.keySet().iterator().next();
+            String lockKey = environment.resolvePlaceholders(String.format(LOCK_PURCHASE_TICKETS_V2, requestParam.getTrainId(), seatType));
+            // 请求未执行即被邮箱拒绝时归还令牌，开启预占站点余票时由外层统一回滚令牌以及站点余票
+            boolean reserved = ticketAvailabilityTokenBucket.isReserveRemainingTicket(requestParam.getTrainId());
+            return purchaseTicketMailboxDispatcher.dispatch(lockKey, () -> ticketService.executePurchaseTickets(requestParam), () -> {
+                if (!reserved) {
+                    rollbackReservation(requestParam);
+                }
+            });
+        }
         seatTypeMap.forEach((searType, count) -> {
             // 构建锁 Key，相比较上个版本，增加了座位类型
             String lockKey = environment.resolvePlaceholders(String.format(LOCK_PURCHASE_TICKETS_V2, requestParam.getTrainId(), searType));
@@ -582,14 +713,25 @@ public class TicketServiceImpl extends ServiceImpl<TicketMapper, TicketDO> imple
                 StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
                 Map<Integer, List<TicketOrderPassengerDetailRespDTO>> seatTypeMap = trainPurchaseTicketResults.stream()
                         .collect(Collectors.groupingBy(TicketOrderPassengerDetailRespDTO::getSeatType));
-                List<RouteDTO> routeDTOList = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival);
-                routeDTOList.forEach(each -> {
-                    String keySuffix = StrUtil.join("_", trainId, each.getStartStation(), each.getEndStation());
-                    seatTypeMap.forEach((seatType, ticketOrderPassengerDetailRespDTOList) -> {
-                        stringRedisTemplate.opsForHash()
-                                .increment(TRAIN_STATION_REMAINING_TICKET + keySuffix, String.valueOf(seatType), ticketOrderPassengerDetailRespDTOList.size());
+                if (trainSegmentRemainingTicketCache.isEnabled()) {
+                    Map<Integer, Integer> seatTypeCount = new HashMap<>();
+                    seatTypeMap.forEach((seatType, ticketOrderPassengerDetailRespDTOList) -> seatTypeCount.put(seatType, ticketOrderPassengerDetailRespDTOList.size()));
+                    trainSegmentRemainingTicketCache.increase(trainId, departure, arrival, seatTypeCount);
+                } else if (trainPackedRemainingTicketCache.isEnabled()) {
+                    Map<Integer, Integer> seatTypeCount = new HashMap<>();
+                    seatTypeMap.forEach((seatType, ticketOrderPassengerDetailRespDTOList) -> seatTypeCount.put(seatType, ticketOrderPassengerDetailRespDTOList.size()));
+                    trainPackedRemainingTicketCache.increase(trainId, departure, arrival, seatTypeCount);
+                } else if (!ticketAvailabilityTokenBucket.isReserveRemainingTicket(trainId)) {
+                    // 开启预占站点余票时，站点余票已随令牌在同一 Lua 脚本中回滚
+                    List<RouteDTO> routeDTOList = trainStationService.listTakeoutTrainStationRoute(trainId, departure, arrival);
+                    routeDTOList.forEach(each -> {
+                        String keySuffix = TrainCacheKeyUtil.buildKeySuffix(trainId, each.getStartStation(), each.getEndStation());
+                        seatTypeMap.forEach((seatType, ticketOrderPassengerDetailRespDTOList) -> {
+                            stringRedisTemplate.opsForHash()
+                                    .increment(TRAIN_STATION_REMAINING_TICKET + keySuffix, String.valueOf(seatType), ticketOrderPassengerDetailRespDTOList.size());
+                        });
                     });
-                });
+                }
             } catch (Throwable ex) {
                 log.error("[取消关闭订单] 订单号：{} 回滚列车Cache余票失败", requestParam.getOrderSn(), ex);
                 throw ex;
@@ -25,12 +25,11 @@ import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainStationMapper;
 import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
 import org.opengoofy.index12306.biz.ticketservice.dto.resp.TrainStationQueryRespDTO;
 import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
-import org.opengoofy.index12306.biz.ticketservice.toolkit.StationCalculateUtil;
+import org.opengoofy.index12306.biz.ticketservice.service.route.TrainRouteIndexManager;
 import org.opengoofy.index12306.framework.starter.common.toolkit.BeanUtil;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 列车站点接口实现层
@@ -42,6 +41,7 @@ import java.util.stream.Collectors;
 public class TrainStationServiceImpl implements TrainStationService {
 
     private final TrainStationMapper trainStationMapper;
+    private final TrainRouteIndexManager trainRouteIndexManager;
 
     @Override
     public List<TrainStationQueryRespDTO> listTrainStationQuery(String trainId) {
@@ -51,24 +51,18 @@ public class TrainStationServiceImpl implements TrainStationService {
         return BeanUtil.convert(trainStationDOList, TrainStationQueryRespDTO.class);
     }
 
+    @Override
+    public List<String> listTrainStationName(String trainId) {
+        return trainRouteIndexManager.getRouteIndex(trainId).getStations();
+    }
+
     @Override
     public List<RouteDTO> listTrainStationRoute(String trainId, String departure, String arrival) {
-        //SELECT departure FROM train_station WHERE train_id = {trainId};获取到了这辆车的所有站
-        LambdaQueryWrapper<TrainStationDO> queryWrapper = Wrappers.lambdaQuery(TrainStationDO.class)
-                .eq(TrainStationDO::getTrainId, trainId)
-                .select(TrainStationDO::getDeparture);
-        List<TrainStationDO> trainStationDOList = trainStationMapper.selectList(queryWrapper);
-        List<String> trainStationAllList = trainStationDOList.stream().map(TrainStationDO::getDeparture).collect(Collectors.toList());
-        return StationCalculateUtil.throughStation(trainStationAllList, departure, arrival);
+        return trainRouteIndexManager.getRouteIndex(trainId).listThroughRoute(departure, arrival);
     }
 
     @Override
     public List<RouteDTO> listTakeoutTrainStationRoute(String trainId, String departure, String arrival) {
-        LambdaQueryWrapper<TrainStationDO> queryWrapper = Wrappers.lambdaQuery(TrainStationDO.class)
-                .eq(TrainStationDO::getTrainId, trainId)
-                .select(TrainStationDO::getDeparture);
-        List<TrainStationDO> trainStationDOList = trainStationMapper.selectList(queryWrapper);
-        List<String> trainStationAllList = trainStationDOList.stream().map(TrainStationDO::getDeparture).collect(Collectors.toList());
-        return StationCalculateUtil.takeoutStation(trainStationAllList, departure, arrival);
+        return trainRouteIndexManager.getRouteIndex(trainId).listTakeoutRoute(departure, arrival);
     }
 }
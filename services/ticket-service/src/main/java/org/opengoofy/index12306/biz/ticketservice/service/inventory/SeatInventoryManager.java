@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.inventory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatStatusEnum;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.SeatDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.SeatMapper;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.TrainStationService;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.Index12306Constant.ADVANCE_TICKET_DAY;
+
+/**
+ * 列车座位内存库存管理器
+ * <p>
+ * 开启方式：ticket.seat-inventory.mode=memory，默认 db 仍然走 t_seat 查询。
+ * 内存库存以本节点为准，座位状态变更在事务提交后异步回写 t_seat，事务回滚时释放内存占用；
+ * 同一车次的购票请求需要路由到同一节点，多节点混部时请保持 db 模式
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SeatInventoryManager {
+
+    private final SeatMapper seatMapper;
+    private final TrainStationService trainStationService;
+    private final ThreadPoolExecutor seatInventoryPersistThreadPoolExecutor;
+
+    /**
+     * 列车 ID -> 座位内存库存，无法构建（如站点超过位图容量）的列车缓存空值，调用方回退数据库
+     */
+    private final Cache<String, Optional<TrainSeatInventory>> inventoryCache = Caffeine.newBuilder()
+            .expireAfterAccess(ADVANCE_TICKET_DAY, TimeUnit.DAYS)
+            .maximumSize(10000)
+            .build();
+
+    /**
+     * 获取列车座位内存库存
+     *
+     * @param trainId 列车 ID
+     * @return 列车座位内存库存，列车无法使用内存库存时返回 null
+     */
+    public TrainSeatInventory getInventory(String trainId) {
+        return inventoryCache.get(trainId, this::loadInventory).orElse(null);
+    }
+
+    /**
+     * 锁定座位内存库存，并在事务提交后异步回写数据库
+     *
+     * @param inventory                   列车座位内存库存
+     * @param departure                   出发站
+     * @param arrival                     到达站
+     * @param trainPurchaseTicketRespList 乘车人以及座位信息
+     * @param persistTask                 回写 t_seat 任务
+     */
+    public void lockSeat(TrainSeatInventory inventory, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketRespList, Runnable persistTask) {
+        List<String> seatKeys = buildSeatKeys(trainPurchaseTicketRespList);
+        if (!inventory.tryOccupy(seatKeys, departure, arrival)) {
+            throw new ServiceException("站点余票不足，请尝试更换座位类型或选择其它站点");
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        asyncPersist(persistTask);
+                    } else {
+                        inventory.release(seatKeys, departure, arrival);
+                    }
+                }
+            });
+            return;
+        }
+        asyncPersist(persistTask);
+    }
+
+    /**
+     * 释放座位内存库存，并在事务提交后异步回写数据库
+     *
+     * @param inventory                  列车座位内存库存
+     * @param departure                  出发站
+     * @param arrival                    到达站
+     * @param trainPurchaseTicketResults 乘车人以及座位信息
+     * @param persistTask                回写 t_seat 任务
+     */
+    public void unlock(TrainSeatInventory inventory, String departure, String arrival, List<TrainPurchaseTicketRespDTO> trainPurchaseTicketResults, Runnable persistTask) {
+        List<String> seatKeys = buildSeatKeys(trainPurchaseTicketResults);
+        // 解锁在事务提交后生效，避免事务回滚时座位已被其他请求占用
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    inventory.release(seatKeys, departure, arrival);
+                    asyncPersist(persistTask);
+                }
+            });
+            return;
+        }
+        inventory.release(seatKeys, departure, arrival);
+        asyncPersist(persistTask);
+    }
+
+    /**
+     * 失效列车座位内存库存，下次访问时重新从数据库加载
+     *
+     * @param trainId 列车 ID
+     */
+    public void invalidate(String trainId) {
+        inventoryCache.invalidate(trainId);
+    }
+
+    private void asyncPersist(Runnable persistTask) {
+        // 单线程顺序回写，保证同一座位先锁定后解锁的执行顺序
+        seatInventoryPersistThreadPoolExecutor.execute(() -> {
+            try {
+                persistTask.run();
+            } catch (Throwable ex) {
+                log.error("座位内存库存回写数据库失败", ex);
+            }
+        });
+    }
+
+    private Optional<TrainSeatInventory> loadInventory(String trainId) {
+        List<String> stations = trainStationService.listTrainStationName(trainId);
+        if (stations.size() < 2 || stations.size() - 1 > TrainSeatInventory.MAX_SEGMENT_SIZE) {
+            log.warn("列车 {} 站点数量 {} 不支持座位内存库存，回退数据库查询", trainId, stations.size());
+            return Optional.empty();
+        }
+        List<RouteDTO> segmentRoutes = new ArrayList<>(stations.size() - 1);
+        for (int i = 0; i < stations.size() - 1; i++) {
+            segmentRoutes.add(new RouteDTO(stations.get(i), stations.get(i + 1)));
+        }
+        TrainSeatInventory inventory = new TrainSeatInventory(stations);
+        List<SeatDO> segmentSeats = seatMapper.listSeatSegmentStatus(Long.parseLong(trainId), segmentRoutes);
+        segmentSeats.forEach(each -> inventory.register(
+                each.getCarriageNumber(),
+                each.getSeatNumber(),
+                each.getSeatType(),
+                each.getStartStation(),
+                !Objects.equals(each.getSeatStatus(), SeatStatusEnum.AVAILABLE.getCode())
+        ));
+        inventory.seal();
+        return Optional.of(inventory);
+    }
+
+    private List<String> buildSeatKeys(List<TrainPurchaseTicketRespDTO> trainPurchaseTicketResults) {
+        return trainPurchaseTicketResults.stream()
+                .map(each -> TrainSeatInventory.buildSeatKey(each.getCarriageNumber(), each.getSeatNumber()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.inventory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 列车座位内存库存
+ * <p>
+ * 每个物理座位维护一个 long 位图，第 i 位代表第 i 个站点到第 i + 1 个站点的基本区间是否被占用，
+ * 判断座位在 [出发站, 到达站) 是否可售只需要一次掩码与运算，替代 t_seat 中每个座位 N² 行的区间记录
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public final class TrainSeatInventory {
+
+    /**
+     * 单个 long 位图最多支持的基本区间数量
+     */
+    public static final int MAX_SEGMENT_SIZE = Long.SIZE;
+
+    /**
+     * 列车站点顺序集合
+     */
+    private final List<String> stations;
+
+    /**
+     * 站点名称 -> 站点序号
+     */
+    private final Map<String, Integer> stationIndexMap;
+
+    /**
+     * 座位类型 -> 车厢号 -> 座位集合，车厢号以及座位号均有序
+     */
+    private final Map<Integer, TreeMap<String, List<SeatSlot>>> seatTypeCarriageMap = new HashMap<>();
+
+    /**
+     * 车厢号_座位号 -> 座位
+     */
+    private final Map<String, SeatSlot> seatSlotMap = new HashMap<>();
+
+    public TrainSeatInventory(List<String> stations) {
+        if (stations.size() - 1 > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Train station size exceeds inventory bitmap capacity: " + stations.size());
+        }
+        this.stations = List.copyOf(stations);
+        Map<String, Integer> indexMap = new HashMap<>(stations.size() * 2);
+        for (int i = 0; i < stations.size(); i++) {
+            indexMap.put(stations.get(i), i);
+        }
+        this.stationIndexMap = indexMap;
+    }
+
+    /**
+     * 加载阶段登记座位基本区间占用状态，仅在构建完成发布前调用
+     *
+     * @param carriageNumber 车厢号
+     * @param seatNumber     座位号
+     * @param seatType       座位类型
+     * @param startStation   基本区间起始站
+     * @param occupied       基本区间是否已被占用
+     */
+    void register(String carriageNumber, String seatNumber, Integer seatType, String startStation, boolean occupied) {
+        SeatSlot seatSlot = seatSlotMap.computeIfAbsent(buildSeatKey(carriageNumber, seatNumber), key -> {
+            SeatSlot slot = new SeatSlot(seatNumber);
+            seatTypeCarriageMap.computeIfAbsent(seatType, each -> new TreeMap<>())
+                    .computeIfAbsent(carriageNumber, each -> new ArrayList<>())
+                    .add(slot);
+            return slot;
+        });
+        Integer startIndex = stationIndexMap.get(startStation);
+        if (occupied && startIndex != null) {
+            seatSlot.occupied |= 1L << startIndex;
+        }
+    }
+
+    /**
+     * 座位注册完成后按座位号排序，保证选座结果与数据库查询顺序一致
+     */
+    void seal() {
+        seatTypeCarriageMap.values().forEach(carriageMap -> carriageMap.values().forEach(each -> each.sort((o1, o2) -> o1.seatNumber.compareTo(o2.seatNumber))));
+    }
+
+    /**
+     * 是否包含出发站与到达站
+     */
+    public boolean containsRoute(String departure, String arrival) {
+        Integer startIndex = stationIndexMap.get(departure);
+        Integer endIndex = stationIndexMap.get(arrival);
+        return startIndex != null && endIndex != null && startIndex < endIndex;
+    }
+
+    /**
+     * 获取列车车厢中可用的座位集合
+     */
+    public List<String> listAvailableSeat(String carriageNumber, Integer seatType, String departure, String arrival) {
+        long mask = routeMask(departure, arrival);
+        List<SeatSlot> seatSlots = seatTypeCarriageMap.getOrDefault(seatType, new TreeMap<>()).get(carriageNumber);
+        if (seatSlots == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(seatSlots.size());
+        for (SeatSlot each : seatSlots) {
+            if ((each.occupied & mask) == 0L) {
+                result.add(each.seatNumber);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 查询列车有余票的车厢号集合
+     */
+    public List<String> listUsableCarriageNumber(Integer seatType, String departure, String arrival) {
+        long mask = routeMask(departure, arrival);
+        TreeMap<String, List<SeatSlot>> carriageMap = seatTypeCarriageMap.get(seatType);
+        if (carriageMap == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        carriageMap.forEach((carriageNumber, seatSlots) -> {
+            for (SeatSlot each : seatSlots) {
+                if ((each.occupied & mask) == 0L) {
+                    result.add(carriageNumber);
+                    return;
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 获取列车车厢余票集合，车厢无余票时不返回，与数据库 group by 查询语义保持一致
+     */
+    public List<Integer> listSeatRemainingTicket(String departure, String arrival, List<String> trainCarriageList) {
+        long mask = routeMask(departure, arrival);
+        List<Integer> result = new ArrayList<>(trainCarriageList.size());
+        for (String carriageNumber : trainCarriageList) {
+            int count = 0;
+            for (TreeMap<String, List<SeatSlot>> carriageMap : seatTypeCarriageMap.values()) {
+                List<SeatSlot> seatSlots = carriageMap.get(carriageNumber);
+                if (seatSlots == null) {
+                    continue;
+                }
+                for (SeatSlot each : seatSlots) {
+                    if ((each.occupied & mask) == 0L) {
+                        count++;
+                    }
+                }
+            }
+            if (count > 0) {
+                result.add(count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 锁定座位区间，任一座位在区间内已被占用则全部不锁定
+     *
+     * @param seatKeys  车厢号_座位号集合
+     * @param departure 出发站
+     * @param arrival   到达站
+     * @return 是否锁定成功
+     */
+    public synchronized boolean tryOccupy(List<String> seatKeys, String departure, String arrival) {
+        long mask = routeMask(departure, arrival);
+        List<SeatSlot> seatSlots = new ArrayList<>(seatKeys.size());
+        for (String each : seatKeys) {
+            SeatSlot seatSlot = seatSlotMap.get(each);
+            if (seatSlot == null || (seatSlot.occupied & mask) != 0L) {
+                return false;
+            }
+            seatSlots.add(seatSlot);
+        }
+        seatSlots.forEach(each -> each.occupied |= mask);
+        return true;
+    }
+
+    /**
+     * 释放座位区间
+     *
+     * @param seatKeys  车厢号_座位号集合
+     * @param departure 出发站
+     * @param arrival   到达站
+     */
+    public synchronized void release(List<String> seatKeys, String departure, String arrival) {
+        long mask = routeMask(departure, arrival);
+        for (String each : seatKeys) {
+            SeatSlot seatSlot = seatSlotMap.get(each);
+            if (seatSlot != null) {
+                seatSlot.occupied &= ~mask;
+            }
+        }
+    }
+
+    /**
+     * 构建 [出发站, 到达站) 覆盖的基本区间掩码
+     */
+    private long routeMask(String departure, String arrival) {
+        Integer startIndex = stationIndexMap.get(departure);
+        Integer endIndex = stationIndexMap.get(arrival);
+        if (startIndex == null || endIndex == null || startIndex >= endIndex) {
+            throw new IllegalArgumentException(String.format("Illegal route %s -> %s", departure, arrival));
+        }
+        int width = endIndex - startIndex;
+        long bits = width == Long.SIZE ? -1L : (1L << width) - 1;
+        return bits << startIndex;
+    }
+
+    public List<String> getStations() {
+        return stations;
+    }
+
+    public static String buildSeatKey(String carriageNumber, String seatNumber) {
+        return carriageNumber + "_" + seatNumber;
+    }
+
+    /**
+     * 物理座位
+     */
+    private static final class SeatSlot {
+
+        private final String seatNumber;
+
+        /**
+         * 基本区间占用位图，写操作在 {@link TrainSeatInventory} 的对象锁内完成
+         */
+        private volatile long occupied;
+
+        private SeatSlot(String seatNumber) {
+            this.seatNumber = seatNumber;
+        }
+    }
+}
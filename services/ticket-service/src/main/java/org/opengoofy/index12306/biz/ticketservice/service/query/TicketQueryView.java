@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.query;
+
+import cn.hutool.core.util.StrUtil;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.SeatClassDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.TicketListDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPageQueryRespDTO;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 地区对车票查询物化视图
+ * <p>
+ * 列车静态字段构建时按出发时间排好序后拆分为列式数组，构建后不再变更；
+ * 余票单独存放在余票快照中，由查询线程按刷新间隔整体替换，查询时只需按下标组装返回结果
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public final class TicketQueryView {
+
+    private final int size;
+    private final String[] trainIds;
+    private final String[] trainNumbers;
+    private final String[] departureTimes;
+    private final String[] arrivalTimes;
+    private final String[] durations;
+    private final Integer[] daysArrived;
+    private final String[] departures;
+    private final String[] arrivals;
+    private final Boolean[] departureFlags;
+    private final Boolean[] arrivalFlags;
+    private final Integer[] trainTypes;
+    private final String[] saleTimes;
+    private final Integer[] saleStatuses;
+    private final List<List<String>> trainTags;
+    private final String[] trainBrands;
+
+    /**
+     * 每个列车出发站到达站的座位类型以及票价，与余票快照下标一一对应
+     */
+    private final int[][] seatTypes;
+    private final BigDecimal[][] prices;
+
+    private final List<String> departureStationList;
+    private final List<String> arrivalStationList;
+    private final List<Integer> trainBrandList;
+    private final List<Integer> seatClassTypeList;
+
+    /**
+     * 构建视图的原始列车集合，仅用于按列车读取余票，不对外返回
+     */
+    private final List<TicketListDTO> trains;
+
+    private volatile RemainingTicketSnapshot snapshot;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    /**
+     * @param sortedTrains 按出发时间排序后的列车集合
+     * @param seatTypes    与列车集合顺序一致的座位类型
+     * @param prices       与座位类型一致的票价，单位元
+     */
+    public TicketQueryView(List<TicketListDTO> sortedTrains, int[][] seatTypes, BigDecimal[][] prices) {
+        this.size = sortedTrains.size();
+        this.trainIds = new String[size];
+        this.trainNumbers = new String[size];
+        this.departureTimes = new String[size];
+        this.arrivalTimes = new String[size];
+        this.durations = new String[size];
+        this.daysArrived = new Integer[size];
+        this.departures = new String[size];
+        this.arrivals = new String[size];
+        this.departureFlags = new Boolean[size];
+        this.arrivalFlags = new Boolean[size];
+        this.trainTypes = new Integer[size];
+        this.saleTimes = new String[size];
+        this.saleStatuses = new Integer[size];
+        this.trainBrands = new String[size];
+        List<List<String>> tags = new ArrayList<>(size);
+        Set<String> departureStations = new LinkedHashSet<>();
+        Set<String> arrivalStations = new LinkedHashSet<>();
+        Set<Integer> brands = new LinkedHashSet<>();
+        Set<Integer> seatClassTypes = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            TicketListDTO each = sortedTrains.get(i);
+            trainIds[i] = each.getTrainId();
+            trainNumbers[i] = each.getTrainNumber();
+            departureTimes[i] = each.getDepartureTime();
+            arrivalTimes[i] = each.getArrivalTime();
+            durations[i] = each.getDuration();
+            daysArrived[i] = each.getDaysArrived();
+            departures[i] = each.getDeparture();
+            arrivals[i] = each.getArrival();
+            departureFlags[i] = each.getDepartureFlag();
+            arrivalFlags[i] = each.getArrivalFlag();
+            trainTypes[i] = each.getTrainType();
+            saleTimes[i] = each.getSaleTime();
+            saleStatuses[i] = each.getSaleStatus();
+            trainBrands[i] = each.getTrainBrand();
+            tags.add(each.getTrainTags() == null ? null : List.copyOf(each.getTrainTags()));
+            departureStations.add(each.getDeparture());
+            arrivalStations.add(each.getArrival());
+            if (StrUtil.isNotBlank(each.getTrainBrand())) {
+                StrUtil.split(each.getTrainBrand(), ",").forEach(brand -> brands.add(Integer.parseInt(brand)));
+            }
+            for (int seatType : seatTypes[i]) {
+                seatClassTypes.add(seatType);
+            }
+        }
+        this.trainTags = tags;
+        this.seatTypes = seatTypes;
+        this.prices = prices;
+        this.departureStationList = List.copyOf(departureStations);
+        this.arrivalStationList = List.copyOf(arrivalStations);
+        this.trainBrandList = List.copyOf(brands);
+        this.seatClassTypeList = List.copyOf(seatClassTypes);
+        this.trains = List.copyOf(sortedTrains);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<TicketListDTO> getTrains() {
+        return trains;
+    }
+
+    public int[][] getSeatTypes() {
+        return seatTypes;
+    }
+
+    public RemainingTicketSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(RemainingTicketSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 抢占余票快照刷新权，同一视图同一时刻只有一个线程刷新
+     */
+    public boolean tryStartRefresh() {
+        return refreshing.compareAndSet(false, true);
+    }
+
+    public void finishRefresh() {
+        refreshing.set(false);
+    }
+
+    /**
+     * 按余票快照组装查询结果，列车以及座位类型对象每次新建，站点、品牌等汇总集合为视图共享的不可变集合
+     *
+     * @param remainingTickets 与座位类型下标一致的余票数量
+     */
+    public TicketPageQueryRespDTO toResponse(int[][] remainingTickets) {
+        List<TicketListDTO> trainList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TicketListDTO result = new TicketListDTO();
+            result.setTrainId(trainIds[i]);
+            result.setTrainNumber(trainNumbers[i]);
+            result.setDepartureTime(departureTimes[i]);
+            result.setArrivalTime(arrivalTimes[i]);
+            result.setDuration(durations[i]);
+            result.setDaysArrived(daysArrived[i]);
+            result.setDeparture(departures[i]);
+            result.setArrival(arrivals[i]);
+            result.setDepartureFlag(departureFlags[i]);
+            result.setArrivalFlag(arrivalFlags[i]);
+            result.setTrainType(trainTypes[i]);
+            result.setSaleTime(saleTimes[i]);
+            result.setSaleStatus(saleStatuses[i]);
+            result.setTrainTags(trainTags.get(i));
+            result.setTrainBrand(trainBrands[i]);
+            List<SeatClassDTO> seatClassList = new ArrayList<>(seatTypes[i].length);
+            for (int j = 0; j < seatTypes[i].length; j++) {
+                seatClassList.add(new SeatClassDTO(seatTypes[i][j], remainingTickets[i][j], prices[i][j], false));
+            }
+            result.setSeatClassList(seatClassList);
+            trainList.add(result);
+        }
+        return TicketPageQueryRespDTO.builder()
+                .trainList(trainList)
+                .departureStationList(departureStationList)
+                .arrivalStationList(arrivalStationList)
+                .trainBrandList(trainBrandList)
+                .seatClassTypeList(seatClassTypeList)
+                .build();
+    }
+
+    /**
+     * 余票快照，整体替换保证查询读取到的余票来自同一次刷新
+     */
+    public static final class RemainingTicketSnapshot {
+
+        private final int[][] remainingTickets;
+        private final long refreshTime;
+
+        public RemainingTicketSnapshot(int[][] remainingTickets, long refreshTime) {
+            this.remainingTickets = remainingTickets;
+            this.refreshTime = refreshTime;
+        }
+
+        public int[][] getRemainingTickets() {
+            return remainingTickets;
+        }
+
+        public long getRefreshTime() {
+            return refreshTime;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.query;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Lists;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.TicketListDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.resp.TicketPageQueryRespDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainPackedRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TrainSegmentRemainingTicketCache;
+import org.opengoofy.index12306.biz.ticketservice.service.fare.TrainFareMatrix;
+import org.opengoofy.index12306.biz.ticketservice.service.fare.TrainFareMatrixManager;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TimeStringComparator;
+import org.opengoofy.index12306.biz.ticketservice.toolkit.TrainCacheKeyUtil;
+import org.opengoofy.index12306.framework.starter.cache.DistributedCache;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.REGION_TRAIN_STATION;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.REGION_TRAIN_STATION_MAPPING;
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_STATION_REMAINING_TICKET;
+
+/**
+ * 车票查询物化视图管理器
+ * <p>
+ * 每个出发地区、到达地区对应一个本地物化视图，视图首次访问时从 Redis 读取列车集合、解析排序并关联票价后构建，过期时间兜底刷新；
+ * 余票快照超过刷新间隔后由抢到刷新权的查询线程通过一次 Pipeline 刷新，其余查询线程直接使用上一次快照，
+ * 查询热路径只有本地内存计算
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TicketQueryViewManager implements InitializingBean {
+
+    private final DistributedCache distributedCache;
+    private final TrainFareMatrixManager trainFareMatrixManager;
+    private final TrainSegmentRemainingTicketCache trainSegmentRemainingTicketCache;
+    private final TrainPackedRemainingTicketCache trainPackedRemainingTicketCache;
+
+    @Value("${ticket.query-view.expire-seconds:300}")
+    private long expireSeconds;
+    @Value("${ticket.query-view.remaining-refresh-ms:1000}")
+    private long remainingRefreshMs;
+    @Value("${framework.cache.redis.prefix:}")
+    private String cacheRedisPrefix;
+
+    /**
+     * 出发地区_到达地区 -> 车票查询物化视图
+     */
+    private Cache<String, TicketQueryView> viewCache;
+
+    /**
+     * 站点编码 -> 地区名称
+     */
+    private Cache<String, String> stationRegionCache;
+
+    @Override
+    public void afterPropertiesSet() {
+        viewCache = Caffeine.newBuilder()
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .maximumSize(100000)
+                .build();
+        stationRegionCache = Caffeine.newBuilder()
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .maximumSize(100000)
+                .build();
+    }
+
+    /**
+     * 查询出发站到到达站所在地区的列车以及余票
+     *
+     * @param fromStation 出发站编码
+     * @param toStation   到达站编码
+     * @return 查询车票返回结果
+     */
+    public TicketPageQueryRespDTO query(String fromStation, String toStation) {
+        List<String> regions = getRegions(fromStation, toStation);
+        String viewKey = StrUtil.join("_", regions.get(0), regions.get(1));
+        TicketQueryView view = viewCache.get(viewKey, key -> buildView(regions.get(0), regions.get(1)));
+        return view.toResponse(getRemainingTickets(view));
+    }
+
+    private List<String> getRegions(String fromStation, String toStation) {
+        String fromRegion = stationRegionCache.getIfPresent(fromStation);
+        String toRegion = stationRegionCache.getIfPresent(toStation);
+        if (fromRegion != null && toRegion != null) {
+            return List.of(fromRegion, toRegion);
+        }
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<Object> stationDetails = stringRedisTemplate.opsForHash()
+                .multiGet(REGION_TRAIN_STATION_MAPPING, Lists.newArrayList(fromStation, toStation));
+        // 与 v2 版本保持一致，站点不存在时按 null 拼接地区视图 Key，查询结果为空
+        fromRegion = String.valueOf(stationDetails.get(0));
+        toRegion = String.valueOf(stationDetails.get(1));
+        if (stationDetails.get(0) != null) {
+            stationRegionCache.put(fromStation, fromRegion);
+        }
+        if (stationDetails.get(1) != null) {
+            stationRegionCache.put(toStation, toRegion);
+        }
+        return List.of(fromRegion, toRegion);
+    }
+
+    private TicketQueryView buildView(String fromRegion, String toRegion) {
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        Map<Object, Object> regionTrainStationAllMap = stringRedisTemplate.opsForHash().entries(String.format(REGION_TRAIN_STATION, fromRegion, toRegion));
+        List<TicketListDTO> sortedTrains = regionTrainStationAllMap.values().stream()
+                .map(each -> JSON.parseObject(each.toString(), TicketListDTO.class))
+                .sorted(new TimeStringComparator())
+                .toList();
+        int[][] seatTypes = new int[sortedTrains.size()][];
+        BigDecimal[][] prices = new BigDecimal[sortedTrains.size()][];
+        for (int i = 0; i < sortedTrains.size(); i++) {
+            TicketListDTO each = sortedTrains.get(i);
+            TrainFareMatrix fareMatrix = trainFareMatrixManager.getFareMatrix(each.getTrainId());
+            seatTypes[i] = fareMatrix.listSeatType(each.getDeparture(), each.getArrival());
+            prices[i] = new BigDecimal[seatTypes[i].length];
+            for (int j = 0; j < seatTypes[i].length; j++) {
+                prices[i][j] = new BigDecimal(fareMatrix.getPrice(each.getDeparture(), each.getArrival(), seatTypes[i][j])).divide(new BigDecimal("100"), 1, RoundingMode.HALF_UP);
+            }
+        }
+        TicketQueryView view = new TicketQueryView(sortedTrains, seatTypes, prices);
+        view.setSnapshot(loadSnapshot(view));
+        return view;
+    }
+
+    private int[][] getRemainingTickets(TicketQueryView view) {
+        TicketQueryView.RemainingTicketSnapshot snapshot = view.getSnapshot();
+        if (System.currentTimeMillis() - snapshot.getRefreshTime() < remainingRefreshMs || !view.tryStartRefresh()) {
+            return snapshot.getRemainingTickets();
+        }
+        try {
+            snapshot = loadSnapshot(view);
+            view.setSnapshot(snapshot);
+        } catch (Throwable ex) {
+            // 刷新失败继续使用上一次快照，下一次查询重试
+            log.error("车票查询视图余票快照刷新失败", ex);
+        } finally {
+            view.finishRefresh();
+        }
+        return snapshot.getRemainingTickets();
+    }
+
+    private TicketQueryView.RemainingTicketSnapshot loadSnapshot(TicketQueryView view) {
+        List<TicketListDTO> trains = view.getTrains();
+        int[][] seatTypes = view.getSeatTypes();
+        int[][] remainingTickets = new int[trains.size()][];
+        if (trainSegmentRemainingTicketCache.isEnabled() || trainPackedRemainingTicketCache.isEnabled()) {
+            List<Map<Integer, Integer>> remainingTicketMaps = trainPackedRemainingTicketCache.isEnabled()
+                    ? trainPackedRemainingTicketCache.batchListRemainingTicket(trains)
+                    : trainSegmentRemainingTicketCache.batchListRemainingTicket(trains);
+            for (int i = 0; i < trains.size(); i++) {
+                remainingTickets[i] = new int[seatTypes[i].length];
+                for (int j = 0; j < seatTypes[i].length; j++) {
+                    remainingTickets[i][j] = remainingTicketMaps.get(i).getOrDefault(seatTypes[i][j], 0);
+                }
+            }
+            return new TicketQueryView.RemainingTicketSnapshot(remainingTickets, System.currentTimeMillis());
+        }
+        StringRedisTemplate stringRedisTemplate = (StringRedisTemplate) distributedCache.getInstance();
+        List<Object> remainingTicketObjs = stringRedisTemplate.executePipelined((RedisCallback<String>) connection -> {
+            for (int i = 0; i < trains.size(); i++) {
+                TicketListDTO each = trains.get(i);
+                byte[] cacheKey = (cacheRedisPrefix + TRAIN_STATION_REMAINING_TICKET + TrainCacheKeyUtil.buildKeySuffix(each.getTrainId(), each.getDeparture(), each.getArrival())).getBytes();
+                for (int seatType : seatTypes[i]) {
+                    connection.hashCommands().hGet(cacheKey, String.valueOf(seatType).getBytes());
+                }
+            }
+            return null;
+        });
+        int remainingIndex = 0;
+        for (int i = 0; i < trains.size(); i++) {
+            remainingTickets[i] = new int[seatTypes[i].length];
+            for (int j = 0; j < seatTypes[i].length; j++) {
+                Object remainingTicket = remainingTicketObjs.get(remainingIndex++);
+                remainingTickets[i][j] = remainingTicket == null ? 0 : Integer.parseInt(remainingTicket.toString());
+            }
+        }
+        return new TicketQueryView.RemainingTicketSnapshot(remainingTickets, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.route;
+
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.RouteDTO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 列车路线索引
+ * <p>
+ * 列车经停站加载后不可变，站点按停靠顺序分配序号，出发站与到达站之间的路线关系通过序号区间直接计算，
+ * 替代每次调用时查询 t_train_station 以及基于 indexOf 的双重循环；扣减路线以序号对 int 数组形式按出发站、到达站缓存
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public final class TrainRouteIndex {
+
+    /**
+     * 列车站点顺序集合
+     */
+    private final List<String> stations;
+
+    /**
+     * 站点名称 -> 站点序号
+     */
+    private final Map<String, Integer> stationOrdinalMap;
+
+    /**
+     * 站点序号对 -> 路线，仅上三角有值，所有路线计算结果共享同一批对象，调用方不可修改路线内容
+     */
+    private final RouteDTO[][] routeTable;
+
+    /**
+     * 出发站序号 * 站点数量 + 到达站序号 -> 扣减路线序号对，首次访问时计算并缓存
+     */
+    private final AtomicReferenceArray<int[]> takeoutRangeTable;
+
+    public TrainRouteIndex(List<String> stations) {
+        this.stations = List.copyOf(stations);
+        int size = stations.size();
+        Map<String, Integer> ordinalMap = new HashMap<>(size * 2);
+        RouteDTO[][] table = new RouteDTO[size][size];
+        for (int i = 0; i < size; i++) {
+            ordinalMap.putIfAbsent(stations.get(i), i);
+            for (int j = i + 1; j < size; j++) {
+                table[i][j] = new RouteDTO(stations.get(i), stations.get(j));
+            }
+        }
+        this.stationOrdinalMap = ordinalMap;
+        this.routeTable = table;
+        this.takeoutRangeTable = new AtomicReferenceArray<>(size * size);
+    }
+
+    /**
+     * 获取站点序号
+     *
+     * @param station 站点名称
+     * @return 站点序号，站点不属于该列车时返回 -1
+     */
+    public int ordinal(String station) {
+        Integer ordinal = stationOrdinalMap.get(station);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * 计算出发站和到达站之间的路线（包含出发站和到达站），与 {@code StationCalculateUtil#throughStation} 结果一致
+     */
+    public List<RouteDTO> listThroughRoute(String departure, String arrival) {
+        int startOrdinal = ordinal(departure);
+        int endOrdinal = ordinal(arrival);
+        if (startOrdinal < 0 || endOrdinal < 0 || startOrdinal >= endOrdinal) {
+            return new ArrayList<>();
+        }
+        int width = endOrdinal - startOrdinal;
+        List<RouteDTO> result = new ArrayList<>(width * (width + 1) / 2);
+        for (int i = startOrdinal; i < endOrdinal; i++) {
+            for (int j = i + 1; j <= endOrdinal; j++) {
+                result.add(routeTable[i][j]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计算出发站和到达站需要扣减余票的路线，与 {@code StationCalculateUtil#takeoutStation} 结果以及顺序一致
+     */
+    public List<RouteDTO> listTakeoutRoute(String departure, String arrival) {
+        int[] range = takeoutRange(departure, arrival);
+        List<RouteDTO> result = new ArrayList<>(range.length / 2);
+        for (int i = 0; i < range.length; i += 2) {
+            result.add(routeTable[range[i]][range[i + 1]]);
+        }
+        return result;
+    }
+
+    /**
+     * 计算出发站和到达站需要扣减余票的路线序号对，数组中每两个元素代表一条路线的起始站序号以及终点站序号
+     *
+     * @param departure 出发站
+     * @param arrival   到达站
+     * @return 扣减路线序号对，多次调用共享同一数组，调用方不可修改；站点不合法时返回空数组
+     */
+    public int[] takeoutRange(String departure, String arrival) {
+        int startOrdinal = ordinal(departure);
+        int endOrdinal = ordinal(arrival);
+        if (startOrdinal < 0 || endOrdinal < 0 || startOrdinal >= endOrdinal) {
+            return new int[0];
+        }
+        int size = stations.size();
+        int slot = startOrdinal * size + endOrdinal;
+        int[] result = takeoutRangeTable.get(slot);
+        if (result == null) {
+            result = computeTakeoutRange(startOrdinal, endOrdinal);
+            takeoutRangeTable.set(slot, result);
+        }
+        return result;
+    }
+
+    /**
+     * 扣减路线 [i, j) 与乘车区间 [出发站, 到达站) 存在交集，即 i < 到达站序号 且 j > 出发站序号
+     */
+    private int[] computeTakeoutRange(int startOrdinal, int endOrdinal) {
+        int size = stations.size();
+        int count = 0;
+        for (int i = 0; i < endOrdinal; i++) {
+            count += size - 1 - Math.max(i, startOrdinal);
+        }
+        int[] result = new int[count * 2];
+        int index = 0;
+        for (int i = 0; i < endOrdinal; i++) {
+            for (int j = Math.max(i, startOrdinal) + 1; j < size; j++) {
+                result[index++] = i;
+                result[index++] = j;
+            }
+        }
+        return result;
+    }
+
+    public List<String> getStations() {
+        return stations;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.route;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import lombok.RequiredArgsConstructor;
+import org.opengoofy.index12306.biz.ticketservice.dao.entity.TrainStationDO;
+import org.opengoofy.index12306.biz.ticketservice.dao.mapper.TrainStationMapper;
+import org.opengoofy.index12306.biz.ticketservice.service.cache.TopicInvalidatedLocalCache;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.opengoofy.index12306.biz.ticketservice.common.constant.RedisKeyConstant.TRAIN_ROUTE_INDEX_INVALIDATE_TOPIC;
+
+/**
+ * 列车路线索引管理器
+ * <p>
+ * 每个列车的经停站只查询一次数据库，构建不可变路线索引后缓存在本地；
+ * 列车经停站变更时由 Canal 监听 t_train_station Binlog 通过 Redis 发布订阅通知所有节点失效，过期时间兜底刷新
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+@Component
+@RequiredArgsConstructor
+public class TrainRouteIndexManager implements InitializingBean {
+
+    private final TrainStationMapper trainStationMapper;
+    private final RedissonClient redissonClient;
+
+    @Value("${ticket.route-index.expire-minutes:30}")
+    private long expireMinutes;
+
+    /**
+     * 列车 ID -> 列车路线索引
+     */
+    private TopicInvalidatedLocalCache<TrainRouteIndex> routeIndexCache;
+
+    @Override
+    public void afterPropertiesSet() {
+        routeIndexCache = new TopicInvalidatedLocalCache<>("路线索引", redissonClient, TRAIN_ROUTE_INDEX_INVALIDATE_TOPIC, expireMinutes, this::loadRouteIndex);
+    }
+
+    /**
+     * 获取列车路线索引
+     *
+     * @param trainId 列车 ID
+     * @return 列车路线索引
+     */
+    public TrainRouteIndex getRouteIndex(String trainId) {
+        return routeIndexCache.get(trainId);
+    }
+
+    /**
+     * 通知所有节点失效列车路线索引，下次访问时重新从数据库加载
+     *
+     * @param trainId 列车 ID
+     */
+    public void invalidate(String trainId) {
+        routeIndexCache.invalidate(trainId);
+    }
+
+    /**
+     * 注册路线索引失效回调，依赖站点下标构建的本地缓存随路线索引一起失效
+     *
+     * @param listener 回调，入参为列车 ID
+     */
+    public void onInvalidate(Consumer<String> listener) {
+        routeIndexCache.onInvalidate(listener);
+    }
+
+    private TrainRouteIndex loadRouteIndex(String trainId) {
+        LambdaQueryWrapper<TrainStationDO> queryWrapper = Wrappers.lambdaQuery(TrainStationDO.class)
+                .eq(TrainStationDO::getTrainId, trainId)
+                .select(TrainStationDO::getDeparture)
+                .orderByAsc(TrainStationDO::getSequence);
+        List<TrainStationDO> trainStationDOList = trainStationMapper.selectList(queryWrapper);
+        return new TrainRouteIndex(trainStationDOList.stream().map(TrainStationDO::getDeparture).collect(Collectors.toList()));
+    }
+}
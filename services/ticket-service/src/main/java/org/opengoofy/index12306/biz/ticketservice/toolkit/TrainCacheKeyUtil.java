@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.toolkit;
+
+import cn.hutool.core.util.StrUtil;
+
+/**
+ * 列车维度缓存 Key 工具类
+ * <p>
+ * 列车维度的令牌桶、站点余票、车厢等缓存 Key 统一使用 {列车ID} 作为 Redis Cluster Hash Tag，
+ * 同一列车的全部 Key 落在同一个槽位，Lua 脚本可以在一次调用内同时操作多个 Key
+ *
+ * @公众号：马丁玩编程，回复：加群，添加马哥微信（备注：12306）获取项目资料
+ */
+public final class TrainCacheKeyUtil {
+
+    private static final String SPLICING_OPERATOR = "_";
+
+    /**
+     * 构建列车 ID Hash Tag，格式为 {列车ID}
+     *
+     * @param trainId 列车 ID
+     * @return 列车 ID Hash Tag
+     */
+    public static String hashTag(Object trainId) {
+        return "{" + trainId + "}";
+    }
+
+    /**
+     * 构建列车维度缓存 Key 后缀，格式为 {列车ID}_参数1_参数2
+     *
+     * @param trainId 列车 ID
+     * @param keys    列车 ID 之后的拼接参数，例如出发站、到达站
+     * @return 缓存 Key 后缀
+     */
+    public static String buildKeySuffix(Object trainId, Object... keys) {
+        if (keys.length == 0) {
+            return hashTag(trainId);
+        }
+        return hashTag(trainId) + SPLICING_OPERATOR + StrUtil.join(SPLICING_OPERATOR, keys);
+    }
+}
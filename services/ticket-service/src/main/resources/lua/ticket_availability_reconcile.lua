@@ -0,0 +1,14 @@
+-- KEYS[1..N] 待修复的 Hash 结构，列车令牌桶以及站点余票，同一列车的 Key 使用相同 Hash Tag 位于同一槽位
+-- ARGV 每四个为一组：Key 下标、Hash Field、对账时读取到的缓存值、t_seat 统计的实际值
+-- 仅当 Field 当前值仍等于对账时读取到的值才写入实际值，期间被购票或退票修改过的 Field 放弃修复，返回修复的 Field 数量
+
+local repaired = 0
+for i = 1, #ARGV, 4 do
+    local key = KEYS[tonumber(ARGV[i])]
+    local current = redis.call('hget', key, ARGV[i + 1])
+    if current == ARGV[i + 2] then
+        redis.call('hset', key, ARGV[i + 1], ARGV[i + 3])
+        repaired = repaired + 1
+    end
+end
+return repaired
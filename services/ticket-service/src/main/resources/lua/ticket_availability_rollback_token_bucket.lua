@@ -1,8 +1,11 @@
-local inputString = KEYS[2]
-local actualKey = inputString
-local colonIndex = string.find(actualKey, ":")
-if colonIndex ~= nil then
-    actualKey = string.sub(actualKey, colonIndex + 1)
+-- KEYS[1] 列车购买令牌桶，Key Prefix + {列车ID}
+-- KEYS[2...N] 开启预占站点余票时传入，途经站点余票 Key，与 ARGV[2] 途经站点一一对应
+-- ARGV[1] 座位类型以及回滚数量
+-- ARGV[2] 需要回滚的途经站点
+-- 返回 0 代表回滚成功，2 代表令牌桶未加载
+
+if redis.call('exists', KEYS[1]) == 0 then
+    return 2
 end
 
 local jsonArrayStr = ARGV[1]
@@ -21,6 +24,10 @@ for index, jsonObj in ipairs(jsonArray) do
         if ticketSeatAvailabilityTokenValue >= 0 then
             redis.call('hincrby', KEYS[1], tostring(actualInnerHashKey), count)
         end
+        local remainingTicketKey = KEYS[indexTwo + 1]
+        if remainingTicketKey ~= nil and redis.call('hexists', remainingTicketKey, tostring(seatType)) == 1 then
+            redis.call('hincrby', remainingTicketKey, tostring(seatType), count)
+        end
     end
 end
 
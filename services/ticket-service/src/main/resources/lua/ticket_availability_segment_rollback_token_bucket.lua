@@ -0,0 +1,29 @@
+-- KEYS[1] 列车基本区间令牌桶，BITFIELD i32 计数器，计数器下标 = 座位类型下标 * 基本区间数量 + 基本区间下标
+-- ARGV[1] 基本区间数量
+-- ARGV[2] 出发站基本区间下标
+-- ARGV[3] 到达站基本区间下标（不包含）
+-- ARGV[4...] 座位类型下标、回滚数量，成对出现
+-- 令牌回滚成功返回 0，令牌桶未加载返回 2，下次获取令牌时从数据库重新加载
+
+if redis.call('exists', KEYS[1]) == 0 then
+    return 2
+end
+
+local segmentCount = tonumber(ARGV[1])
+local startIndex = tonumber(ARGV[2])
+local endIndex = tonumber(ARGV[3])
+
+local incrCommands = {}
+for i = 4, #ARGV, 2 do
+    local base = tonumber(ARGV[i]) * segmentCount
+    local count = tonumber(ARGV[i + 1])
+    for segment = startIndex, endIndex - 1 do
+        table.insert(incrCommands, 'INCRBY')
+        table.insert(incrCommands, 'i32')
+        table.insert(incrCommands, '#' .. (base + segment))
+        table.insert(incrCommands, count)
+    end
+end
+
+redis.call('bitfield', KEYS[1], unpack(incrCommands))
+return 0
@@ -0,0 +1,48 @@
+-- KEYS[1] 列车基本区间令牌桶，BITFIELD i32 计数器，计数器下标 = 座位类型下标 * 基本区间数量 + 基本区间下标
+-- ARGV[1] 基本区间数量
+-- ARGV[2] 出发站基本区间下标
+-- ARGV[3] 到达站基本区间下标（不包含）
+-- ARGV[4...] 座位类型下标、购票数量，成对出现
+-- 令牌扣减成功返回 0，途经基本区间令牌最小值不足返回 1，令牌桶未加载返回 2
+
+if redis.call('exists', KEYS[1]) == 0 then
+    return 2
+end
+
+local segmentCount = tonumber(ARGV[1])
+local startIndex = tonumber(ARGV[2])
+local endIndex = tonumber(ARGV[3])
+local width = endIndex - startIndex
+
+-- 一次 BITFIELD 读取全部途经基本区间令牌
+local getCommands = {}
+for i = 4, #ARGV, 2 do
+    local base = tonumber(ARGV[i]) * segmentCount
+    for segment = startIndex, endIndex - 1 do
+        table.insert(getCommands, 'GET')
+        table.insert(getCommands, 'i32')
+        table.insert(getCommands, '#' .. (base + segment))
+    end
+end
+local tokens = redis.call('bitfield', KEYS[1], unpack(getCommands))
+
+local incrCommands = {}
+local pairIndex = 0
+for i = 4, #ARGV, 2 do
+    local base = tonumber(ARGV[i]) * segmentCount
+    local count = tonumber(ARGV[i + 1])
+    for offset = 1, width do
+        if tokens[pairIndex * width + offset] < count then
+            return 1
+        end
+        table.insert(incrCommands, 'INCRBY')
+        table.insert(incrCommands, 'i32')
+        table.insert(incrCommands, '#' .. (base + startIndex + offset - 1))
+        table.insert(incrCommands, -count)
+    end
+    pairIndex = pairIndex + 1
+end
+
+-- 一次 BITFIELD 扣减全部途经基本区间令牌
+redis.call('bitfield', KEYS[1], unpack(incrCommands))
+return 0
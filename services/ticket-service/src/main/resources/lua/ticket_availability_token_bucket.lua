@@ -1,11 +1,17 @@
+-- KEYS[1] 列车购买令牌桶，Key Prefix + {列车ID}
+-- KEYS[2...N] 开启预占站点余票时传入，途经站点余票 Key，与 ARGV[2] 途经站点一一对应
+-- ARGV[1] 座位类型以及购票数量
+-- ARGV[2] 需要扣减的途经站点
+-- ARGV[3] 用户购买的出发站点_到达站点
+-- 所有 Key 使用相同的 {列车ID} Hash Tag，Redis Cluster 下位于同一槽位
+-- 返回 0 代表扣减成功，1 代表令牌不足，2 代表令牌桶未加载
 
-local inputString = KEYS[2]
-local actualKey = inputString
-local colonIndex = string.find(actualKey, ":")
-if colonIndex ~= nil then
-    actualKey = string.sub(actualKey, colonIndex + 1)
+if redis.call('exists', KEYS[1]) == 0 then
+    return 2
 end
 
+local actualKey = ARGV[3]
+
 local jsonArrayStr = ARGV[1]
 local jsonArray = cjson.decode(jsonArrayStr)
 
@@ -30,6 +36,11 @@ for index, jsonObj in ipairs(jsonArray) do
         local endStation = tostring(alongJsonObj.endStation)
         local actualInnerHashKey = startStation .. "_" .. endStation .. "_" .. seatType
         redis.call('hincrby', KEYS[1], tostring(actualInnerHashKey), -count)
+        -- 站点余票缓存未加载时不扣减，避免写入负数，由余票加载流程从数据库重建
+        local remainingTicketKey = KEYS[indexTwo + 1]
+        if remainingTicketKey ~= nil and redis.call('hexists', remainingTicketKey, tostring(seatType)) == 1 then
+            redis.call('hincrby', remainingTicketKey, tostring(seatType), -count)
+        end
     end
 end
 
@@ -0,0 +1,31 @@
+-- KEYS[1] 列车购买令牌子桶，Key Prefix + {列车ID_子桶下标}
+-- ARGV[1] 座位类型以及待借用数量
+-- ARGV[2] 需要扣减的途经站点
+-- ARGV[3] 用户购买的出发站点_到达站点
+-- 按座位类型扣减子桶剩余令牌与待借用数量中的较小值，子桶令牌不足时不整体失败
+-- 返回与 ARGV[1] 顺序一致的实际扣减数量，子桶未加载时返回空集合
+
+if redis.call('exists', KEYS[1]) == 0 then
+    return {}
+end
+
+local actualKey = ARGV[3]
+local jsonArray = cjson.decode(ARGV[1])
+local alongJsonArray = cjson.decode(ARGV[2])
+local taken = {}
+
+for index, jsonObj in ipairs(jsonArray) do
+    local seatType = tonumber(jsonObj.seatType)
+    local count = tonumber(jsonObj.count)
+    local available = tonumber(redis.call('hget', KEYS[1], actualKey .. "_" .. seatType)) or 0
+    local actualCount = math.min(math.max(available, 0), count)
+    if actualCount > 0 then
+        for indexTwo, alongJsonObj in ipairs(alongJsonArray) do
+            local actualInnerHashKey = tostring(alongJsonObj.startStation) .. "_" .. tostring(alongJsonObj.endStation) .. "_" .. seatType
+            redis.call('hincrby', KEYS[1], actualInnerHashKey, -actualCount)
+        end
+    end
+    taken[index] = actualCount
+end
+
+return taken
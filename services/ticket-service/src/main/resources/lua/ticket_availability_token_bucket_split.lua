@@ -0,0 +1,9 @@
+-- KEYS[1] 列车购买令牌桶，Key Prefix + {列车ID}
+-- KEYS[2] 列车购买令牌子桶数量，Key Prefix + {列车ID}
+-- ARGV[1] 子桶数量
+-- 取出并删除列车令牌桶，同时写入子桶数量标识，返回令牌桶全部 Field 与 Value，由调用方均分写入子桶
+
+local tokens = redis.call('hgetall', KEYS[1])
+redis.call('del', KEYS[1])
+redis.call('set', KEYS[2], ARGV[1])
+return tokens
@@ -0,0 +1,161 @@
+-- KEYS[1] 列车座位区间占用位图，偏移量 = (车厢下标 * 单节车厢座位数 + 车厢内座位下标) * 基本区间数量 + 基本区间下标
+-- ARGV[1] 基本区间数量
+-- ARGV[2] 出发站基本区间下标
+-- ARGV[3] 到达站基本区间下标（不包含）
+-- ARGV[4] 乘车人数量
+-- ARGV[5] 车厢数量
+-- ARGV[6] 车厢排数
+-- ARGV[7] 每排座位数
+-- ARGV[8] 选座模板，格式为 相对排号:列下标，多个使用逗号分隔，未选座传空字符串
+-- 返回选中座位的全局下标集合，无法满足时返回空集合
+-- 按车厢顺序逐节读取位图并选座，第一节可用座位数量满足乘车人数量的车厢内完成选座后立即结束，不扫描整列车
+
+local segmentCount = tonumber(ARGV[1])
+local startIndex = tonumber(ARGV[2])
+local endIndex = tonumber(ARGV[3])
+local passengerCount = tonumber(ARGV[4])
+local carriageCount = tonumber(ARGV[5])
+local rowCount = tonumber(ARGV[6])
+local columnCount = tonumber(ARGV[7])
+local seatCount = rowCount * columnCount
+local carriageBits = seatCount * segmentCount
+
+if redis.call('exists', KEYS[1]) == 0 then
+    return {}
+end
+
+local pattern = {}
+if ARGV[8] ~= nil and ARGV[8] ~= '' then
+    for rowOffset, column in string.gmatch(ARGV[8], '(-?%d+):(%d+)') do
+        table.insert(pattern, { tonumber(rowOffset), tonumber(column) })
+    end
+end
+
+-- 只读取当前车厢所在字节区间，返回车厢内可用座位以及可用标识
+local function scanCarriage(carriage)
+    local firstBit = carriage * carriageBits
+    local firstByte = math.floor(firstBit / 8)
+    local lastByte = math.floor((firstBit + carriageBits - 1) / 8)
+    local chunk = redis.call('getrange', KEYS[1], firstByte, lastByte)
+    local seats = {}
+    local flags = {}
+    for seat = 0, seatCount - 1 do
+        local base = firstBit + seat * segmentCount - firstByte * 8
+        local free = true
+        for segment = startIndex, endIndex - 1 do
+            local offset = base + segment
+            local byte = string.byte(chunk, math.floor(offset / 8) + 1)
+            if byte ~= nil and bit.band(byte, bit.lshift(1, 7 - offset % 8)) ~= 0 then
+                free = false
+                break
+            end
+        end
+        if free then
+            table.insert(seats, seat)
+            flags[seat] = true
+        end
+    end
+    return seats, flags
+end
+
+local function fillSameCarriage(freeSeats, chosen)
+    local chosenFlags = {}
+    for _, seat in ipairs(chosen) do
+        chosenFlags[seat] = true
+    end
+    for _, seat in ipairs(freeSeats) do
+        if #chosen >= passengerCount then
+            break
+        end
+        if not chosenFlags[seat] then
+            table.insert(chosen, seat)
+        end
+    end
+    return chosen
+end
+
+local function toGlobal(carriage, chosen)
+    local result = {}
+    for i = 1, passengerCount do
+        table.insert(result, carriage * seatCount + chosen[i])
+    end
+    return result
+end
+
+-- 车厢内选座：1. 满足用户选座模板，剩余乘车人同车厢补齐；2. 同一排相邻座位；3. 同车厢不相邻
+local function selectInCarriage(carriage, freeSeats, freeFlags)
+    if #pattern > 0 then
+        for row = 0, rowCount - 1 do
+            local chosen = {}
+            for _, each in ipairs(pattern) do
+                local actualRow = row + each[1]
+                local actualColumn = each[2]
+                if actualRow < 0 or actualRow >= rowCount or actualColumn >= columnCount then
+                    break
+                end
+                local seat = actualRow * columnCount + actualColumn
+                if not freeFlags[seat] then
+                    break
+                end
+                table.insert(chosen, seat)
+            end
+            if #chosen == #pattern then
+                return toGlobal(carriage, fillSameCarriage(freeSeats, chosen))
+            end
+        end
+    end
+    if passengerCount <= columnCount then
+        for row = 0, rowCount - 1 do
+            for column = 0, columnCount - passengerCount do
+                local chosen = {}
+                for offset = 0, passengerCount - 1 do
+                    local seat = row * columnCount + column + offset
+                    if not freeFlags[seat] then
+                        break
+                    end
+                    table.insert(chosen, seat)
+                end
+                if #chosen == passengerCount then
+                    return toGlobal(carriage, chosen)
+                end
+            end
+        end
+    end
+    return toGlobal(carriage, freeSeats)
+end
+
+local selected = {}
+-- 4. 不存在满足全部乘车人的车厢时，不同车厢不相邻，此时已扫描全部车厢
+local spread = {}
+for carriage = 0, carriageCount - 1 do
+    local freeSeats, freeFlags = scanCarriage(carriage)
+    if #freeSeats >= passengerCount then
+        selected = selectInCarriage(carriage, freeSeats, freeFlags)
+        break
+    end
+    for _, seat in ipairs(freeSeats) do
+        if #spread < passengerCount then
+            table.insert(spread, carriage * seatCount + seat)
+        end
+    end
+end
+if #selected == 0 then
+    if #spread < passengerCount then
+        return {}
+    end
+    selected = spread
+end
+
+local commands = {}
+for _, globalSeat in ipairs(selected) do
+    local base = globalSeat * segmentCount
+    for segment = startIndex, endIndex - 1 do
+        table.insert(commands, 'SET')
+        table.insert(commands, 'u1')
+        table.insert(commands, base + segment)
+        table.insert(commands, 1)
+    end
+end
+redis.call('bitfield', KEYS[1], unpack(commands))
+
+return selected
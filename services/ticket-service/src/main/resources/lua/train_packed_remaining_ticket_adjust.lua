@@ -0,0 +1,49 @@
+-- KEYS[1] 列车站点对余票紧凑矩阵，u16 计数器，下标 0 为已加载标识，站点对 (i, j) 座位类型下标 k 的计数器下标为 1 + 站点对下标 * 座位类型数量 + k
+-- ARGV[1] 站点数量
+-- ARGV[2] 座位类型数量
+-- ARGV[3] 出发站下标
+-- ARGV[4] 到达站下标
+-- ARGV[5] 1 代表变更与出发站到到达站重叠的全部站点对，0 代表仅变更出发站到到达站
+-- ARGV[6...] 座位类型下标、余票变更数量，成对出现
+-- 矩阵未加载时不做变更返回 0，下次读取时从数据库加载，变更成功返回 1；计数器饱和在 0 到 65535 之间，不会回绕
+
+local loaded = redis.call('bitfield', KEYS[1], 'GET', 'u16', '#0')
+if loaded[1] == 0 then
+    return 0
+end
+
+local stationCount = tonumber(ARGV[1])
+local seatTypeCount = tonumber(ARGV[2])
+local startIndex = tonumber(ARGV[3])
+local endIndex = tonumber(ARGV[4])
+local overlap = ARGV[5] == '1'
+
+local function pairIndex(i, j)
+    return i * (2 * stationCount - i - 1) / 2 + (j - i - 1)
+end
+
+local commands = { 'OVERFLOW', 'SAT' }
+local function appendIncr(i, j)
+    local base = 1 + pairIndex(i, j) * seatTypeCount
+    for n = 6, #ARGV, 2 do
+        table.insert(commands, 'INCRBY')
+        table.insert(commands, 'u16')
+        table.insert(commands, '#' .. (base + tonumber(ARGV[n])))
+        table.insert(commands, tonumber(ARGV[n + 1]))
+    end
+end
+
+if overlap then
+    for i = 0, endIndex - 1 do
+        for j = math.max(i, startIndex) + 1, stationCount - 1 do
+            appendIncr(i, j)
+        end
+    end
+else
+    appendIncr(startIndex, endIndex)
+end
+
+if #commands > 2 then
+    redis.call('bitfield', KEYS[1], unpack(commands))
+end
+return 1
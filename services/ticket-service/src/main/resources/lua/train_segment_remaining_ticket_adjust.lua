@@ -0,0 +1,20 @@
+-- KEYS[1] 列车基本区间余票 Hash，Field 为 座位类型_基本区间下标
+-- ARGV[1] 出发站基本区间下标
+-- ARGV[2] 到达站基本区间下标（不包含）
+-- ARGV[3...] 座位类型、余票变更数量，成对出现
+-- 余票 Hash 未加载时不做变更返回 0，下次读取时从数据库加载，变更成功返回 1
+
+if redis.call('exists', KEYS[1]) == 0 then
+    return 0
+end
+
+local startIndex = tonumber(ARGV[1])
+local endIndex = tonumber(ARGV[2])
+for i = 3, #ARGV, 2 do
+    local seatType = ARGV[i]
+    local delta = tonumber(ARGV[i + 1])
+    for segment = startIndex, endIndex - 1 do
+        redis.call('hincrby', KEYS[1], seatType .. '_' .. segment, delta)
+    end
+end
+return 1
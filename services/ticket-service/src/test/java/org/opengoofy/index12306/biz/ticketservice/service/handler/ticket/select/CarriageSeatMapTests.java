@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
+
+import org.junit.jupiter.api.Test;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CarriageSeatMapTests {
+
+    @Test
+    void testBuildIgnoresInvalidAndDuplicateSeats() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.SECOND_CLASS, List.of("01A", "01A", "19A", "01E", "X"));
+        assertEquals(1, seatMap.getFreeCount());
+    }
+
+    @Test
+    void testSelectAdjacentPrefersFirstMatchingRow() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.SECOND_CLASS, List.of("01A", "01C", "01D", "02A", "02B"));
+        int[] out = new int[2];
+        assertTrue(seatMap.selectAdjacent(2, out, 0));
+        assertEquals(List.of("01C", "01D"), toSeatNumbers(SeatLayoutEnum.SECOND_CLASS, out));
+        assertEquals(3, seatMap.getFreeCount());
+        // 已占用的座位不会被再次选中
+        assertTrue(seatMap.selectAdjacent(2, out, 0));
+        assertEquals(List.of("02A", "02B"), toSeatNumbers(SeatLayoutEnum.SECOND_CLASS, out));
+    }
+
+    @Test
+    void testSelectAdjacentNotFound() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.SECOND_CLASS, List.of("01A", "01C", "02B", "02D"));
+        assertFalse(seatMap.selectAdjacent(2, new int[2], 0));
+        assertFalse(seatMap.selectAdjacent(6, new int[6], 0));
+        assertEquals(4, seatMap.getFreeCount());
+    }
+
+    @Test
+    void testSelectPatternKeepsRelativeOffsets() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.FIRST_CLASS, List.of("01A", "02A", "03C"));
+        SeatChoosePattern pattern = SeatChoosePattern.parse(SeatLayoutEnum.FIRST_CLASS, List.of("A1", "C2"));
+        int[] out = new int[2];
+        // 01A 后一排的 02C 不可售，模板整体平移到第 2 排
+        assertTrue(seatMap.selectPattern(pattern, out, 0));
+        assertEquals(List.of("02A", "03C"), toSeatNumbers(SeatLayoutEnum.FIRST_CLASS, out));
+        assertEquals(1, seatMap.getFreeCount());
+    }
+
+    @Test
+    void testSelectPatternNotMatched() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.FIRST_CLASS, List.of("01A", "01D", "02C"));
+        SeatChoosePattern pattern = SeatChoosePattern.parse(SeatLayoutEnum.FIRST_CLASS, List.of("A1", "C1"));
+        assertFalse(seatMap.selectPattern(pattern, new int[2], 0));
+        assertEquals(3, seatMap.getFreeCount());
+    }
+
+    @Test
+    void testGroupSplittingSelectsAdjacentSeatsPerGroup() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.SECOND_CLASS, List.of("01A", "01B", "01C", "03C", "03D", "03F"));
+        int[] out = new int[6];
+        assertTrue(seatMap.selectAdjacent(3, out, 0));
+        assertTrue(seatMap.selectAdjacent(3, out, 3));
+        assertEquals(List.of("01A", "01B", "01C", "03C", "03D", "03F"), toSeatNumbers(SeatLayoutEnum.SECOND_CLASS, out));
+        assertEquals(0, seatMap.getFreeCount());
+    }
+
+    @Test
+    void testResetAfterGroupSplittingFailed() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.SECOND_CLASS, List.of("01A", "01B", "01C", "02A", "02C", "02F"));
+        int[] out = new int[6];
+        assertTrue(seatMap.selectAdjacent(3, out, 0));
+        assertFalse(seatMap.selectAdjacent(3, out, 3));
+        seatMap.reset();
+        assertEquals(6, seatMap.getFreeCount());
+        assertTrue(seatMap.selectAdjacent(3, out, 0));
+        assertArrayEquals(new int[]{0, 1, 2}, Arrays.copyOf(out, 3));
+    }
+
+    @Test
+    void testSelectRemainingFallsBackToNonAdjacentSeats() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.SECOND_CLASS, List.of("01A", "01C", "02B", "03F"));
+        int[] out = new int[3];
+        assertFalse(seatMap.selectAdjacent(2, new int[2], 0));
+        assertEquals(3, seatMap.selectRemaining(3, out, 0));
+        assertEquals(List.of("01A", "01C", "02B"), toSeatNumbers(SeatLayoutEnum.SECOND_CLASS, out));
+        assertEquals(1, seatMap.getFreeCount());
+    }
+
+    @Test
+    void testSelectRemainingReturnsActualCountWhenInsufficient() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.SECOND_CLASS, List.of("01A", "18F"));
+        int[] out = new int[5];
+        assertEquals(2, seatMap.selectRemaining(5, out, 1));
+        assertEquals(List.of("01A", "18F"), toSeatNumbers(SeatLayoutEnum.SECOND_CLASS, Arrays.copyOfRange(out, 1, 3)));
+        assertEquals(0, seatMap.getFreeCount());
+    }
+
+    @Test
+    void testBusinessClassLayout() {
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.BUSINESS_CLASS, List.of("01A", "01C", "01F", "02A", "02C", "02F", "03A", "01B"));
+        assertEquals(6, seatMap.getFreeCount());
+        int[] out = new int[3];
+        assertTrue(seatMap.selectAdjacent(3, out, 0));
+        assertEquals(List.of("01A", "01C", "01F"), toSeatNumbers(SeatLayoutEnum.BUSINESS_CLASS, out));
+        assertFalse(seatMap.selectAdjacent(4, new int[4], 0));
+    }
+
+    private List<String> toSeatNumbers(SeatLayoutEnum layout, int[] seatIndexes) {
+        return Arrays.stream(seatIndexes).mapToObj(layout::toSeatNumber).toList();
+    }
+}
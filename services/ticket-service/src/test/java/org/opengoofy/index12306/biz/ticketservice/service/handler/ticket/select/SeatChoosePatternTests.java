@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
+
+import org.junit.jupiter.api.Test;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SeatChoosePatternTests {
+
+    @Test
+    void testParseEmptyChooseSeats() {
+        assertNull(SeatChoosePattern.parse(SeatLayoutEnum.SECOND_CLASS, null));
+        assertNull(SeatChoosePattern.parse(SeatLayoutEnum.SECOND_CLASS, List.of()));
+    }
+
+    @Test
+    void testParseInvalidChooseSeats() {
+        assertNull(SeatChoosePattern.parse(SeatLayoutEnum.SECOND_CLASS, List.of("E1")));
+        assertNull(SeatChoosePattern.parse(SeatLayoutEnum.SECOND_CLASS, List.of("A")));
+        assertNull(SeatChoosePattern.parse(SeatLayoutEnum.SECOND_CLASS, List.of("Ax")));
+        assertNull(SeatChoosePattern.parse(SeatLayoutEnum.SECOND_CLASS, List.of("A-1")));
+        assertNull(SeatChoosePattern.parse(SeatLayoutEnum.BUSINESS_CLASS, List.of("D1")));
+    }
+
+    @Test
+    void testParseNormalizesRowOffsets() {
+        SeatChoosePattern pattern = SeatChoosePattern.parse(SeatLayoutEnum.FIRST_CLASS, List.of("C3", "A2", "F2"));
+        assertArrayEquals(new int[]{0, 1}, pattern.getRowOffsets());
+        // 一等座 ACDF，第一排 A、F 合并为一个列位图
+        assertArrayEquals(new long[]{0b1001L, 0b0010L}, pattern.getColumnMasks());
+        assertEquals(2, pattern.getRowSpan());
+        assertEquals(3, pattern.getSeatCount());
+    }
+
+    @Test
+    void testParseKeepsRowGap() {
+        SeatChoosePattern pattern = SeatChoosePattern.parse(SeatLayoutEnum.SECOND_CLASS, List.of("A1", "F3"));
+        assertArrayEquals(new int[]{0, 2}, pattern.getRowOffsets());
+        assertEquals(3, pattern.getRowSpan());
+        assertEquals(2, pattern.getSeatCount());
+    }
+
+    @Test
+    void testParseDuplicateSeatCountedOnce() {
+        SeatChoosePattern pattern = SeatChoosePattern.parse(SeatLayoutEnum.SECOND_CLASS, List.of("A1", "A1"));
+        assertEquals(1, pattern.getSeatCount());
+    }
+
+    @Test
+    void testBusinessClassRowsAreRelativeToFirstChosenRow() {
+        SeatChoosePattern pattern = SeatChoosePattern.parse(SeatLayoutEnum.BUSINESS_CLASS, List.of("A2", "C2"));
+        assertArrayEquals(new int[]{0}, pattern.getRowOffsets());
+        assertArrayEquals(new long[]{0b011L}, pattern.getColumnMasks());
+        // 排序号 2 不再代表车厢第 2 排，只要任一排 A、C 同时可售即可匹配
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.BUSINESS_CLASS, List.of("01A", "01C", "02F"));
+        int[] out = new int[2];
+        assertTrue(seatMap.selectPattern(pattern, out, 0));
+        assertEquals(List.of("01A", "01C"), Arrays.stream(out).mapToObj(SeatLayoutEnum.BUSINESS_CLASS::toSeatNumber).toList());
+    }
+
+    @Test
+    void testBusinessClassPatternSpanningTwoRows() {
+        SeatChoosePattern pattern = SeatChoosePattern.parse(SeatLayoutEnum.BUSINESS_CLASS, List.of("F1", "F2"));
+        assertEquals(2, pattern.getRowSpan());
+        CarriageSeatMap seatMap = CarriageSeatMap.build(SeatLayoutEnum.BUSINESS_CLASS, List.of("01F", "02F"));
+        int[] out = new int[2];
+        assertTrue(seatMap.selectPattern(pattern, out, 0));
+        assertEquals(List.of("01F", "02F"), Arrays.stream(out).mapToObj(SeatLayoutEnum.BUSINESS_CLASS::toSeatNumber).toList());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.select;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opengoofy.index12306.biz.ticketservice.common.enums.SeatLayoutEnum;
+import org.opengoofy.index12306.biz.ticketservice.dto.domain.PurchaseTicketPassengerDetailDTO;
+import org.opengoofy.index12306.biz.ticketservice.dto.req.PurchaseTicketReqDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.SeatService;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.SelectSeatDTO;
+import org.opengoofy.index12306.biz.ticketservice.service.handler.ticket.dto.TrainPurchaseTicketRespDTO;
+import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TrainSeatMapSelectorTests {
+
+    private static final String TRAIN_ID = "1";
+    private static final String DEPARTURE = "北京南";
+    private static final String ARRIVAL = "南京南";
+
+    private SeatService seatService;
+    private TrainSeatMapSelector trainSeatMapSelector;
+
+    @BeforeEach
+    void setUp() {
+        seatService = mock(SeatService.class);
+        trainSeatMapSelector = new TrainSeatMapSelector(seatService);
+    }
+
+    @Test
+    void testGroupSplittingWithinCarriage() {
+        mockCarriages(SeatLayoutEnum.SECOND_CLASS, Map.of("01", List.of("01A", "01B", "01C", "03C", "03D", "03F")));
+        List<TrainPurchaseTicketRespDTO> result = trainSeatMapSelector.select(buildSelectSeat(SeatLayoutEnum.SECOND_CLASS, 6, null), SeatLayoutEnum.SECOND_CLASS, 6, 3);
+        assertEquals(List.of("01A", "01B", "01C", "03C", "03D", "03F"), seatNumbers(result));
+        assertEquals(List.of("01"), carriageNumbers(result).stream().distinct().toList());
+    }
+
+    @Test
+    void testFallbackToSameCarriageNonAdjacent() {
+        mockCarriages(SeatLayoutEnum.SECOND_CLASS, Map.of("01", List.of("01A", "02C"), "02", List.of("05F")));
+        List<TrainPurchaseTicketRespDTO> result = trainSeatMapSelector.select(buildSelectSeat(SeatLayoutEnum.SECOND_CLASS, 2, null), SeatLayoutEnum.SECOND_CLASS, 6, 3);
+        assertEquals(List.of("01A", "02C"), seatNumbers(result));
+        assertEquals(List.of("01", "01"), carriageNumbers(result));
+    }
+
+    @Test
+    void testFallbackAcrossCarriages() {
+        mockCarriages(SeatLayoutEnum.SECOND_CLASS, Map.of("01", List.of("01A"), "02", List.of("05F")));
+        List<TrainPurchaseTicketRespDTO> result = trainSeatMapSelector.select(buildSelectSeat(SeatLayoutEnum.SECOND_CLASS, 2, null), SeatLayoutEnum.SECOND_CLASS, 6, 3);
+        assertEquals(List.of("01A", "05F"), seatNumbers(result));
+        assertEquals(List.of("01", "02"), carriageNumbers(result));
+    }
+
+    @Test
+    void testChooseSeatsFillRemainingInSameCarriage() {
+        mockCarriages(SeatLayoutEnum.SECOND_CLASS, Map.of("01", List.of("01A", "02F")));
+        List<TrainPurchaseTicketRespDTO> result = trainSeatMapSelector.select(buildSelectSeat(SeatLayoutEnum.SECOND_CLASS, 2, List.of("F1")), SeatLayoutEnum.SECOND_CLASS, 6, 3);
+        assertEquals(List.of("02F", "01A"), seatNumbers(result));
+    }
+
+    @Test
+    void testBusinessClassChooseSeatsRelativeRow() {
+        mockCarriages(SeatLayoutEnum.BUSINESS_CLASS, Map.of("01", List.of("01A", "01C", "02F")));
+        List<TrainPurchaseTicketRespDTO> result = trainSeatMapSelector.select(buildSelectSeat(SeatLayoutEnum.BUSINESS_CLASS, 2, List.of("A2", "C2")), SeatLayoutEnum.BUSINESS_CLASS, 3, 2);
+        assertEquals(List.of("01A", "01C"), seatNumbers(result));
+    }
+
+    @Test
+    void testBusinessClassGroupSplitting() {
+        mockCarriages(SeatLayoutEnum.BUSINESS_CLASS, Map.of("01", List.of("01A", "01C", "02C", "02F")));
+        List<TrainPurchaseTicketRespDTO> result = trainSeatMapSelector.select(buildSelectSeat(SeatLayoutEnum.BUSINESS_CLASS, 4, null), SeatLayoutEnum.BUSINESS_CLASS, 3, 2);
+        assertEquals(List.of("01A", "01C", "02C", "02F"), seatNumbers(result));
+    }
+
+    @Test
+    void testInsufficientRemainingTicket() {
+        mockCarriages(SeatLayoutEnum.SECOND_CLASS, Map.of("01", List.of("01A")));
+        SelectSeatDTO selectSeat = buildSelectSeat(SeatLayoutEnum.SECOND_CLASS, 2, null);
+        assertThrows(ServiceException.class, () -> trainSeatMapSelector.select(selectSeat, SeatLayoutEnum.SECOND_CLASS, 6, 3));
+    }
+
+    @Test
+    void testNoSeatsAfterRemainingTicketCheck() {
+        // 余票缓存与座位状态存在偏差时返回空集合，由上层判定余票不足
+        when(seatService.listUsableCarriageNumber(TRAIN_ID, SeatLayoutEnum.SECOND_CLASS.getSeatType(), DEPARTURE, ARRIVAL)).thenReturn(List.of("01"));
+        when(seatService.listSeatRemainingTicket(eq(TRAIN_ID), eq(DEPARTURE), eq(ARRIVAL), anyList())).thenReturn(List.of(2));
+        when(seatService.listAvailableSeat(anyString(), anyString(), any(), anyString(), anyString())).thenReturn(List.of("01A"));
+        List<TrainPurchaseTicketRespDTO> result = trainSeatMapSelector.select(buildSelectSeat(SeatLayoutEnum.SECOND_CLASS, 2, null), SeatLayoutEnum.SECOND_CLASS, 6, 3);
+        assertTrue(result.isEmpty());
+    }
+
+    private void mockCarriages(SeatLayoutEnum layout, Map<String, List<String>> carriageSeats) {
+        List<String> carriageNumbers = carriageSeats.keySet().stream().sorted().toList();
+        when(seatService.listUsableCarriageNumber(TRAIN_ID, layout.getSeatType(), DEPARTURE, ARRIVAL)).thenReturn(carriageNumbers);
+        when(seatService.listSeatRemainingTicket(TRAIN_ID, DEPARTURE, ARRIVAL, carriageNumbers))
+                .thenReturn(carriageNumbers.stream().map(each -> carriageSeats.get(each).size()).toList());
+        carriageSeats.forEach((carriageNumber, seats) ->
+                when(seatService.listAvailableSeat(TRAIN_ID, carriageNumber, layout.getSeatType(), DEPARTURE, ARRIVAL)).thenReturn(seats));
+    }
+
+    private SelectSeatDTO buildSelectSeat(SeatLayoutEnum layout, int passengerCount, List<String> chooseSeats) {
+        List<PurchaseTicketPassengerDetailDTO> passengers = new ArrayList<>(passengerCount);
+        for (int i = 0; i < passengerCount; i++) {
+            PurchaseTicketPassengerDetailDTO passenger = new PurchaseTicketPassengerDetailDTO();
+            passenger.setPassengerId(String.valueOf(i));
+            passenger.setSeatType(layout.getSeatType());
+            passengers.add(passenger);
+        }
+        PurchaseTicketReqDTO requestParam = new PurchaseTicketReqDTO();
+        requestParam.setTrainId(TRAIN_ID);
+        requestParam.setDeparture(DEPARTURE);
+        requestParam.setArrival(ARRIVAL);
+        requestParam.setPassengers(passengers);
+        requestParam.setChooseSeats(chooseSeats);
+        return SelectSeatDTO.builder()
+                .seatType(layout.getSeatType())
+                .passengerSeatDetails(passengers)
+                .requestParam(requestParam)
+                .build();
+    }
+
+    private List<String> seatNumbers(List<TrainPurchaseTicketRespDTO> result) {
+        return result.stream().map(TrainPurchaseTicketRespDTO::getSeatNumber).toList();
+    }
+
+    private List<String> carriageNumbers(List<TrainPurchaseTicketRespDTO> result) {
+        return result.stream().map(TrainPurchaseTicketRespDTO::getCarriageNumber).toList();
+    }
+}
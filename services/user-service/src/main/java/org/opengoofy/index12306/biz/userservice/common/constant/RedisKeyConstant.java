@@ -43,4 +43,9 @@ public final class RedisKeyConstant {
      * 用户乘车人列表，Key Prefix + 用户名
      */
     public static final String USER_PASSENGER_LIST = "index12306-user-service:user-passenger-list:";
+
+    /**
+     * 用户乘车人变更通知频道，消息内容为用户名，购票服务据此失效本地乘车人快照
+     */
+    public static final String USER_PASSENGER_INVALIDATE_TOPIC = "index12306-user-service:user-passenger-invalidate";
 }
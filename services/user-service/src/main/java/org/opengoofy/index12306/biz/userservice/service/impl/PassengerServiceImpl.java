@@ -39,6 +39,7 @@ import org.opengoofy.index12306.framework.starter.common.toolkit.BeanUtil;
 import org.opengoofy.index12306.framework.starter.convention.exception.ClientException;
 import org.opengoofy.index12306.framework.starter.convention.exception.ServiceException;
 import org.opengoofy.index12306.frameworks.starter.user.core.UserContext;
+import org.redisson.api.RedissonClient;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -52,6 +53,7 @@ import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static org.opengoofy.index12306.biz.userservice.common.constant.RedisKeyConstant.USER_PASSENGER_INVALIDATE_TOPIC;
 import static org.opengoofy.index12306.biz.userservice.common.constant.RedisKeyConstant.USER_PASSENGER_LIST;
 
 /**
@@ -67,6 +69,7 @@ public class PassengerServiceImpl implements PassengerService {
     private final PassengerMapper passengerMapper;
     private final PlatformTransactionManager transactionManager;
     private final DistributedCache distributedCache;
+    private final RedissonClient redissonClient;
 
     @Override
     public List<PassengerRespDTO> listPassengerQueryByUsername(String username) {
@@ -199,5 +202,11 @@ public class PassengerServiceImpl implements PassengerService {
 
     private void delUserPassengerCache(String username) {
         distributedCache.delete(USER_PASSENGER_LIST + username);
+        try {
+            // 通知购票服务失效本地乘车人快照
+            redissonClient.getTopic(USER_PASSENGER_INVALIDATE_TOPIC).publish(username);
+        } catch (Throwable ex) {
+            log.error("[{}] 发布乘车人变更通知失败", username, ex);
+        }
     }
 }